@@ -18,11 +18,16 @@
 package com.axelor.common.crypto;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
@@ -42,6 +47,8 @@ public class BytesEncryptor implements Encryptor<byte[], byte[]> {
   private static final int SALT_SIZE = 8;
   private static final int TAG_BIT_LENGTH = 128;
 
+  private static final int KEY_CACHE_SIZE = 100;
+
   static final String PREFIX = "$AES$";
   static final byte[] PREFIX_BYTES = PREFIX.getBytes();
 
@@ -54,12 +61,19 @@ public class BytesEncryptor implements Encryptor<byte[], byte[]> {
 
   private final int payloadSize;
 
+  // derived keys by salt, values are mostly encrypted with same salt
+  private final Cache<ByteBuffer, SecretKey> keys =
+      CacheBuilder.newBuilder().maximumSize(KEY_CACHE_SIZE).build();
+
+  private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(this::newCipher);
+
   public BytesEncryptor(OperationMode mode, PaddingScheme paddingScheme, String password) {
     this.mode = mode;
     this.password = password;
     this.transformation = String.format("%s/%s/%s", AES_ALGORITHM, mode, paddingScheme);
     this.encryptionSalt = generateRandomBytes(SALT_SIZE);
     this.encryptionKey = newSecretKey(password, this.encryptionSalt);
+    this.keys.put(ByteBuffer.wrap(this.encryptionSalt), this.encryptionKey);
     this.payloadSize =
         mode == OperationMode.CBC
             ? PREFIX_BYTES.length + SALT_SIZE
@@ -99,16 +113,32 @@ public class BytesEncryptor implements Encryptor<byte[], byte[]> {
     }
   }
 
+  private SecretKey getSecretKey(byte[] salt) {
+    try {
+      return keys.get(ByteBuffer.wrap(salt), () -> newSecretKey(password, salt));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new EncryptorException(e.getCause());
+    }
+  }
+
   private AlgorithmParameterSpec newParameterSpec(byte[] iv) {
     return this.mode == OperationMode.CBC
         ? new IvParameterSpec(iv)
         : new GCMParameterSpec(TAG_BIT_LENGTH, iv);
   }
 
-  private Cipher newCipher(int mode, SecretKey key, byte[] iv) {
+  private Cipher newCipher() {
+    try {
+      return Cipher.getInstance(this.transformation);
+    } catch (Exception e) {
+      throw new EncryptorException(e);
+    }
+  }
+
+  private Cipher getCipher(int mode, SecretKey key, byte[] iv) {
     try {
       final AlgorithmParameterSpec paramSpec = newParameterSpec(iv);
-      final Cipher cipher = Cipher.getInstance(this.transformation);
+      final Cipher cipher = ciphers.get();
       cipher.init(mode, key, paramSpec);
       return cipher;
     } catch (Exception e) {
@@ -142,7 +172,7 @@ public class BytesEncryptor implements Encryptor<byte[], byte[]> {
 
     final byte[] iv =
         this.mode == OperationMode.CBC ? new byte[IV_SIZE] : generateRandomBytes(IV_SIZE);
-    final Cipher cipher = newCipher(Cipher.ENCRYPT_MODE, this.encryptionKey, iv);
+    final Cipher cipher = getCipher(Cipher.ENCRYPT_MODE, this.encryptionKey, iv);
     final byte[] encrypted = doFinal(cipher, bytes);
 
     return this.mode == OperationMode.CBC
@@ -169,8 +199,8 @@ public class BytesEncryptor implements Encryptor<byte[], byte[]> {
       index += section.length;
     }
 
-    final SecretKey key = newSecretKey(password, salt);
-    final Cipher cipher = newCipher(Cipher.DECRYPT_MODE, key, iv);
+    final SecretKey key = getSecretKey(salt);
+    final Cipher cipher = getCipher(Cipher.DECRYPT_MODE, key, iv);
     return doFinal(cipher, data);
   }
 
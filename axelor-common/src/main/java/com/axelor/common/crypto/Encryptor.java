@@ -17,6 +17,9 @@
  */
 package com.axelor.common.crypto;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The {@link Encryptor} interface.
  *
@@ -48,4 +51,18 @@ public interface Encryptor<T, R> {
    * @return decrypted message
    */
   T decrypt(R encryptedMessage);
+
+  /**
+   * Decrypt the given list of encrypted messages.
+   *
+   * @param encryptedMessages the encrypted messages to decrypt
+   * @return list of decrypted messages in same order
+   */
+  default List<T> decrypt(List<R> encryptedMessages) {
+    final List<T> messages = new ArrayList<>(encryptedMessages.size());
+    for (R encryptedMessage : encryptedMessages) {
+      messages.add(decrypt(encryptedMessage));
+    }
+    return messages;
+  }
 }
@@ -18,7 +18,9 @@
 package com.axelor.common.crypto;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -72,6 +74,28 @@ public class TestEncryptors {
     testBytesEncryptor(BytesEncryptor.gcm(SECRET_KEY));
   }
 
+  @Test
+  public void testBatchDecrypt() {
+    final BytesEncryptor source = BytesEncryptor.gcm(SECRET_KEY);
+    final BytesEncryptor encryptor = BytesEncryptor.gcm(SECRET_KEY);
+    final List<byte[]> values = new ArrayList<>();
+    final List<byte[]> encrypted = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      values.add(generateRandomBytes(18));
+      encrypted.add(source.encrypt(values.get(i)));
+    }
+    encrypted.add(null);
+
+    final List<byte[]> decrypted = encryptor.decrypt(encrypted);
+
+    Assert.assertEquals(encrypted.size(), decrypted.size());
+    Assert.assertNull(decrypted.get(values.size()));
+    for (int i = 0; i < values.size(); i++) {
+      Assert.assertTrue(Arrays.equals(values.get(i), decrypted.get(i)));
+    }
+  }
+
   @Test
   public void testStringCBC() {
     testStringEncryptor(StringEncryptor.cbc(SECRET_KEY));
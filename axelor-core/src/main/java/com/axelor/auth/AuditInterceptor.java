@@ -19,6 +19,8 @@ package com.axelor.auth;
 
 import com.axelor.auth.db.AuditableModel;
 import com.axelor.auth.db.Group;
+import com.axelor.auth.db.Permission;
+import com.axelor.auth.db.Role;
 import com.axelor.auth.db.User;
 import com.axelor.db.EntityHelper;
 import com.axelor.db.JPA;
@@ -26,12 +28,26 @@ import com.axelor.db.JpaSequence;
 import com.axelor.db.Model;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
+import com.axelor.i18n.I18nBundle;
+import com.axelor.mail.db.MailFlags;
+import com.axelor.mail.service.MailCounters;
+import com.axelor.meta.MetaStore;
+import com.axelor.meta.db.MetaAction;
 import com.axelor.meta.db.MetaSequence;
+import com.axelor.meta.db.MetaTranslation;
+import com.axelor.meta.db.MetaView;
+import com.axelor.meta.db.MetaViewCustom;
+import com.axelor.meta.loader.XMLViews;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import javax.persistence.PersistenceException;
 import org.hibernate.EmptyInterceptor;
 import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
 import org.hibernate.type.Type;
 
 @SuppressWarnings("serial")
@@ -39,6 +55,9 @@ public class AuditInterceptor extends EmptyInterceptor {
 
   private final ThreadLocal<User> currentUser = new ThreadLocal<User>();
   private final ThreadLocal<AuditTracker> tracker = new ThreadLocal<>();
+  private final ThreadLocal<Boolean> permissionsChanged = new ThreadLocal<>();
+  private final ThreadLocal<List<String[]>> viewsChanged = new ThreadLocal<>();
+  private final ThreadLocal<List<String[]>> translationsChanged = new ThreadLocal<>();
 
   private static final String UPDATED_BY = "updatedBy";
   private static final String UPDATED_ON = "updatedOn";
@@ -57,8 +76,36 @@ public class AuditInterceptor extends EmptyInterceptor {
 
   @Override
   public void afterTransactionCompletion(Transaction tx) {
+    if (tracker.get() != null) {
+      tracker.get().afterComplete(tx);
+    }
     tracker.remove();
     currentUser.remove();
+    MailCounters.completed();
+    if (permissionsChanged.get() != null) {
+      permissionsChanged.remove();
+      AuthSecurity.invalidate();
+    }
+    final List<String[]> views = viewsChanged.get();
+    if (views != null) {
+      viewsChanged.remove();
+      for (String[] view : views) {
+        if (view[0] == null) {
+          MetaStore.invalidate(view[1]);
+        } else {
+          XMLViews.invalidate(view[1], view[2]);
+        }
+      }
+    }
+    final List<String[]> translations = translationsChanged.get();
+    if (translations != null) {
+      translationsChanged.remove();
+      if (tx.getStatus() == TransactionStatus.COMMITTED) {
+        for (String[] translation : translations) {
+          I18nBundle.update(translation[0], translation[1], translation[2]);
+        }
+      }
+    }
   }
 
   @Override
@@ -86,6 +133,87 @@ public class AuditInterceptor extends EmptyInterceptor {
     return user;
   }
 
+  private void checkPermissionsChanged(Object entity) {
+    if (entity instanceof Permission
+        || entity instanceof Role
+        || entity instanceof Group
+        || entity instanceof User) {
+      permissionsChanged.set(Boolean.TRUE);
+    }
+  }
+
+  private void checkViewsChanged(Object entity, String[] names, Object[] previousState) {
+    final String kind;
+    final String name;
+    final String model;
+    if (entity instanceof MetaView) {
+      kind = "view";
+      name = ((MetaView) entity).getName();
+      model = ((MetaView) entity).getModel();
+    } else if (entity instanceof MetaViewCustom) {
+      kind = "custom";
+      name = ((MetaViewCustom) entity).getName();
+      model = ((MetaViewCustom) entity).getModel();
+    } else if (entity instanceof MetaAction) {
+      kind = null;
+      name = ((MetaAction) entity).getName();
+      model = null;
+    } else {
+      return;
+    }
+
+    List<String[]> views = viewsChanged.get();
+    if (views == null) {
+      views = new ArrayList<>();
+      viewsChanged.set(views);
+    }
+    views.add(new String[] {kind, name, model});
+
+    // also invalidate with the old name if renamed
+    for (int i = 0; previousState != null && i < names.length; i++) {
+      if ("name".equals(names[i]) && previousState[i] != null && !previousState[i].equals(name)) {
+        views.add(new String[] {kind, (String) previousState[i], model});
+      }
+    }
+  }
+
+  private void checkTranslationsChanged(
+      Object entity, String[] names, Object[] state, Object[] previousState, boolean removed) {
+    if (!(entity instanceof MetaTranslation)) {
+      return;
+    }
+
+    List<String[]> translations = translationsChanged.get();
+    if (translations == null) {
+      translations = new ArrayList<>();
+      translationsChanged.set(translations);
+    }
+
+    final String[] current = translation(names, state);
+    final String[] previous = previousState == null ? null : translation(names, previousState);
+
+    // remove the old key if renamed
+    if (previous != null
+        && !(Objects.equals(previous[0], current[0]) && Objects.equals(previous[1], current[1]))) {
+      translations.add(new String[] {previous[0], previous[1], null});
+    }
+    translations.add(new String[] {current[0], current[1], removed ? null : current[2]});
+  }
+
+  private String[] translation(String[] names, Object[] state) {
+    final String[] translation = new String[3];
+    for (int i = 0; i < names.length; i++) {
+      if ("language".equals(names[i])) {
+        translation[0] = (String) state[i];
+      } else if ("key".equals(names[i])) {
+        translation[1] = (String) state[i];
+      } else if ("message".equals(names[i])) {
+        translation[2] = (String) state[i];
+      }
+    }
+    return translation;
+  }
+
   private boolean canUpdate(Object entity, String field, Object prevValue, Object newValue) {
     if (!(entity instanceof Model) || ((Model) entity).getId() == null) {
       return true;
@@ -147,6 +275,14 @@ public class AuditInterceptor extends EmptyInterceptor {
       String[] propertyNames,
       Type[] types) {
 
+    checkPermissionsChanged(entity);
+    checkViewsChanged(entity, propertyNames, previousState);
+    checkTranslationsChanged(entity, propertyNames, currentState, previousState, false);
+
+    if (entity instanceof MailFlags) {
+      MailCounters.flushing((Long) id, propertyNames, previousState);
+    }
+
     if (!(entity instanceof AuditableModel)) {
       return false;
     }
@@ -179,6 +315,14 @@ public class AuditInterceptor extends EmptyInterceptor {
   public boolean onSave(
       Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
 
+    checkPermissionsChanged(entity);
+    checkViewsChanged(entity, propertyNames, null);
+    checkTranslationsChanged(entity, propertyNames, state, null, false);
+
+    if (entity instanceof MailFlags) {
+      MailCounters.flushing((Long) id, propertyNames, null);
+    }
+
     boolean changed = updateSequence(entity, propertyNames, state);
     if (!(entity instanceof AuditableModel)) {
       return changed;
@@ -212,5 +356,24 @@ public class AuditInterceptor extends EmptyInterceptor {
       throw new PersistenceException(
           String.format("You can't delete: %s#%s", entity.getClass().getName(), id));
     }
+    checkPermissionsChanged(entity);
+    checkViewsChanged(entity, propertyNames, null);
+    checkTranslationsChanged(entity, propertyNames, state, null, true);
+  }
+
+  @Override
+  public void onCollectionRecreate(Object collection, Serializable key) {
+    checkPermissionsChanged(((PersistentCollection) collection).getOwner());
+  }
+
+  @Override
+  public void onCollectionRemove(Object collection, Serializable key) {
+    checkPermissionsChanged(((PersistentCollection) collection).getOwner());
+  }
+
+  @Override
+  public void onCollectionUpdate(Object collection, Serializable key) {
+    checkPermissionsChanged(((PersistentCollection) collection).getOwner());
+    checkViewsChanged(((PersistentCollection) collection).getOwner(), new String[] {}, null);
   }
 }
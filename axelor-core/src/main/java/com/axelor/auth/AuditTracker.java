@@ -19,17 +19,21 @@ package com.axelor.auth;
 
 import static com.axelor.common.StringUtils.isBlank;
 
+import com.axelor.app.AppSettings;
 import com.axelor.auth.db.AuditableModel;
 import com.axelor.auth.db.User;
 import com.axelor.common.Inflector;
 import com.axelor.common.StringUtils;
+import com.axelor.db.EntityHelper;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.db.annotations.Track;
 import com.axelor.db.annotations.TrackEvent;
 import com.axelor.db.annotations.TrackField;
 import com.axelor.db.annotations.TrackMessage;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
+import com.axelor.db.tenants.TenantModule;
 import com.axelor.inject.Beans;
 import com.axelor.mail.MailConstants;
 import com.axelor.mail.db.MailFollower;
@@ -37,46 +41,145 @@ import com.axelor.mail.db.MailMessage;
 import com.axelor.mail.db.repo.MailFollowerRepository;
 import com.axelor.mail.db.repo.MailMessageRepository;
 import com.axelor.script.CompositeScriptHelper;
+import com.axelor.script.GroovyScriptHelper;
 import com.axelor.script.ScriptBindings;
 import com.axelor.script.ScriptHelper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** This class provides change tracking for auditing and notifications. */
 final class AuditTracker {
 
+  private static final Logger log = LoggerFactory.getLogger(AuditTracker.class);
+
+  /** Whether to record the tracking messages after commit, by a background writer. */
+  static final String CONFIG_TRACKING_ASYNC = "audit.tracking.async";
+
+  /** Maximum number of committed transactions waiting for the background writer. */
+  static final String CONFIG_TRACKING_QUEUE = "audit.tracking.queue";
+
+  private static final int DEFAULT_TRACKING_QUEUE = 1000;
+
   private static final ThreadLocal<Map<String, EntityState>> STORE = new ThreadLocal<>();
 
+  /** The tracked classes with track conditions compiled. */
+  private static final Set<Class<?>> COMPILED = ConcurrentHashMap.newKeySet();
+
+  private static Boolean async;
+  private static ExecutorService writer;
+  private static Semaphore permits;
+
+  /** The changes of the current transaction to be recorded once committed. */
+  private Collection<EntityState> pending;
+
+  private Long pendingUser;
+  private Long pendingPoster;
+
+  /** The tracked state of an entity, values are kept as given by hibernate until processed. */
   private static class EntityState {
 
     private AuditableModel entity;
 
-    private Map<String, Object> values;
-    private Map<String, Object> oldValues;
+    private String[] names;
+    private Object[] values;
+    private Object[] oldValues;
 
     public static void create(
-        AuditableModel entity, Map<String, Object> values, Map<String, Object> oldValues) {
+        AuditableModel entity, String[] names, Object[] values, Object[] oldValues) {
       if (STORE.get() == null) {
-        STORE.set(new HashMap<String, EntityState>());
+        STORE.set(new LinkedHashMap<String, EntityState>());
       }
       String key = entity.getClass().getName() + ":" + entity.getId();
       EntityState state = STORE.get().get(key);
       if (state == null) {
         state = new EntityState();
         state.entity = entity;
+        state.names = names;
         state.values = values;
         state.oldValues = oldValues;
         STORE.get().put(key, state);
       } else {
-        state.values.putAll(values);
+        state.names = names;
+        state.values = values;
+      }
+    }
+
+    private Map<String, Object> values() {
+      return toMap(names, values);
+    }
+
+    private Map<String, Object> oldValues() {
+      return oldValues == null ? new HashMap<>() : toMap(names, oldValues);
+    }
+
+    private static Map<String, Object> toMap(String[] names, Object[] state) {
+      final Map<String, Object> map = new HashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        map.put(names[i], state[i]);
+      }
+      return map;
+    }
+
+    /** Attach the entity and its values to the current persistence context. */
+    private boolean attach() {
+      final Class<AuditableModel> klass = EntityHelper.getEntityClass(entity);
+      final AuditableModel found = JPA.em().find(klass, entity.getId());
+      if (found == null) {
+        return false;
+      }
+      entity = found;
+      values = attach(values);
+      oldValues = oldValues == null ? null : attach(oldValues);
+      return true;
+    }
+
+    private static Object[] attach(Object[] state) {
+      final Object[] attached = new Object[state.length];
+      for (int i = 0; i < state.length; i++) {
+        attached[i] = attach(state[i]);
+      }
+      return attached;
+    }
+
+    private static Object attach(Object value) {
+      if (value instanceof Model) {
+        final Model bean = (Model) value;
+        return bean.getId() == null
+            ? null
+            : JPA.em().find(EntityHelper.getEntityClass(bean), bean.getId());
+      }
+      if (value instanceof PersistentCollection
+          && !((PersistentCollection) value).wasInitialized()) {
+        return null;
+      }
+      if (value instanceof Collection) {
+        final List<Object> items = new ArrayList<>();
+        for (Object item : (Collection<?>) value) {
+          items.add(attach(item));
+        }
+        return items;
       }
+      return value;
     }
   }
 
@@ -97,7 +200,36 @@ final class AuditTracker {
     if (entity == null) {
       return null;
     }
-    return entity.getClass().getAnnotation(Track.class);
+    final Track track = entity.getClass().getAnnotation(Track.class);
+    if (track != null && COMPILED.add(entity.getClass())) {
+      compile(entity.getClass(), track);
+    }
+    return track;
+  }
+
+  /** Compile the track conditions of the given class in advance. */
+  private static void compile(Class<?> klass, Track track) {
+    final Set<String> scripts = new LinkedHashSet<>();
+    for (TrackField field : track.fields()) {
+      addScript(scripts, field.condition());
+    }
+    for (TrackMessage message : track.messages()) {
+      addScript(scripts, message.condition());
+    }
+    for (TrackMessage message : track.contents()) {
+      addScript(scripts, message.condition());
+    }
+    GroovyScriptHelper.compile(klass.getName(), scripts);
+  }
+
+  private static void addScript(Set<String> scripts, String condition) {
+    if (isBlank(condition)) {
+      return;
+    }
+    final String expr = condition.trim();
+    if (!(expr.startsWith("#{") && expr.endsWith("}"))) {
+      scripts.add(condition);
+    }
   }
 
   private boolean hasEvent(TrackEvent[] events, TrackEvent event) {
@@ -160,20 +292,9 @@ final class AuditTracker {
       return;
     }
 
-    final Map<String, Object> values = new HashMap<>();
-    final Map<String, Object> oldValues = new HashMap<>();
-
-    for (int i = 0; i < names.length; i++) {
-      values.put(names[i], state[i]);
-    }
-
-    if (previousState != null) {
-      for (int i = 0; i < names.length; i++) {
-        oldValues.put(names[i], previousState[i]);
-      }
-    }
-
-    EntityState.create(entity, values, oldValues);
+    // hibernate may reuse the arrays, keep copies
+    EntityState.create(
+        entity, names, state.clone(), previousState == null ? null : previousState.clone());
   }
 
   private String findMessage(
@@ -211,7 +332,28 @@ final class AuditTracker {
     return null;
   }
 
-  private void process(EntityState state, User user) {
+  /**
+   * Create the bindings to evaluate the track conditions of the given values.
+   *
+   * <p>The {@code __user__} variable is bound to the poster so that conditions are evaluated the
+   * same way by the background writer, where there is no session user.
+   *
+   * @param values the tracked values
+   * @param poster the session user posting the messages
+   * @return the script bindings
+   */
+  static ScriptBindings createBindings(Map<String, Object> values, User poster) {
+    final ScriptBindings bindings = new ScriptBindings(values);
+    bindings.put("__user__", poster);
+    return bindings;
+  }
+
+  private void process(
+      EntityState state,
+      User user,
+      User poster,
+      List<MailMessage> messages,
+      List<MailFollower> followers) {
 
     final AuditableModel entity = state.entity;
     final Mapper mapper = Mapper.of(entity.getClass());
@@ -219,11 +361,11 @@ final class AuditTracker {
 
     final Track track = getTrack(entity);
 
-    final Map<String, Object> values = state.values;
-    final Map<String, Object> oldValues = state.oldValues;
+    final Map<String, Object> values = state.values();
+    final Map<String, Object> oldValues = state.oldValues();
     final Map<String, Object> previousState = oldValues.isEmpty() ? null : oldValues;
 
-    final ScriptBindings bindings = new ScriptBindings(state.values);
+    final ScriptBindings bindings = createBindings(values, poster);
     final ScriptHelper scriptHelper = new CompositeScriptHelper(bindings);
 
     final List<Map<String, String>> tags = new ArrayList<>();
@@ -328,20 +470,93 @@ final class AuditTracker {
     message.setRelatedModel(entity.getClass().getName());
     message.setType(MailConstants.MESSAGE_TYPE_NOTIFICATION);
 
-    Beans.get(MailMessageRepository.class).save(message);
-
     try {
       message.setRelatedName(mapper.getNameField().get(entity).toString());
     } catch (Exception e) {
     }
 
+    messages.add(message);
+
     if (previousState == null && track.subscribe()) {
       final MailFollower follower = new MailFollower();
       follower.setRelatedId(entity.getId());
       follower.setRelatedModel(entity.getClass().getName());
       follower.setUser(user);
       follower.setArchived(false);
-      Beans.get(MailFollowerRepository.class).save(follower);
+      followers.add(follower);
+    }
+  }
+
+  /**
+   * Record the tracking messages and followers of the given states as a batch.
+   *
+   * @param states the tracked states
+   * @param user the user doing the changes
+   * @param poster the session user posting the messages
+   */
+  private void write(Collection<EntityState> states, User user, User poster) {
+    final List<MailMessage> messages = new ArrayList<>();
+    final List<MailFollower> followers = new ArrayList<>();
+
+    for (EntityState state : states) {
+      process(state, user, poster, messages, followers);
+    }
+
+    if (messages.isEmpty() && followers.isEmpty()) {
+      return;
+    }
+
+    final MailMessageRepository messageRepo = Beans.get(MailMessageRepository.class);
+    final MailFollowerRepository followerRepo = Beans.get(MailFollowerRepository.class);
+
+    // custom repositories expect each message to go through save()
+    if (isSaveOverridden(messageRepo)) {
+      messages.forEach(messageRepo::save);
+      followers.forEach(followerRepo::save);
+      return;
+    }
+
+    JPA.runInBatch(
+        () -> {
+          messageRepo.saveAll(messages, poster);
+          followers.forEach(followerRepo::save);
+        });
+  }
+
+  private static boolean isSaveOverridden(MailMessageRepository repo) {
+    try {
+      return repo.getClass().getMethod("save", MailMessage.class).getDeclaringClass()
+          != MailMessageRepository.class;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static synchronized boolean isAsync() {
+    if (async == null) {
+      // the background writer can't resolve the tenant of the session
+      setAsync(
+          AppSettings.get().getBoolean(CONFIG_TRACKING_ASYNC, false) && !TenantModule.isEnabled());
+    }
+    return async;
+  }
+
+  /**
+   * Enable or disable the background writer.
+   *
+   * <p>The setting is read once, this allows tests to switch the mode.
+   *
+   * @param enabled whether to record the tracking messages after commit
+   */
+  static synchronized void setAsync(boolean enabled) {
+    async = enabled;
+    if (enabled && writer == null) {
+      permits =
+          new Semaphore(
+              Math.max(1, AppSettings.get().getInt(CONFIG_TRACKING_QUEUE, DEFAULT_TRACKING_QUEUE)));
+      writer =
+          Executors.newSingleThreadExecutor(
+              new ThreadFactoryBuilder().setNameFormat("audit-tracker").setDaemon(true).build());
     }
   }
 
@@ -360,12 +575,73 @@ final class AuditTracker {
     }
     // prevent concurrent update
     STORE.remove();
+
+    final User poster = AuthUtils.getUser();
+
+    // record after commit if the background writer is not full, inline otherwise
+    if (isAsync() && permits.tryAcquire()) {
+      pending = store.values();
+      pendingUser = user == null ? null : user.getId();
+      pendingPoster = poster == null ? null : poster.getId();
+      return;
+    }
+
     try {
-      for (EntityState state : store.values()) {
-        process(state, user);
-      }
+      write(store.values(), user, poster);
     } finally {
       JPA.em().flush();
     }
   }
+
+  /**
+   * This method should be called from {@link
+   * AuditInterceptor#afterTransactionCompletion(Transaction)} method to hand over the changes
+   * recorded after commit to the background writer.
+   *
+   * @param tx the completed transaction
+   */
+  public void afterComplete(Transaction tx) {
+    final Collection<EntityState> states = pending;
+    if (states == null) {
+      return;
+    }
+    pending = null;
+
+    if (tx.getStatus() != TransactionStatus.COMMITTED) {
+      permits.release();
+      return;
+    }
+
+    final Long userId = pendingUser;
+    final Long posterId = pendingPoster;
+
+    try {
+      writer.execute(() -> writeAsync(states, userId, posterId));
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      log.error("Unable to record tracking messages", e);
+    }
+  }
+
+  private void writeAsync(Collection<EntityState> states, Long userId, Long posterId) {
+    try {
+      JPA.runInTransaction(
+          () -> {
+            final List<EntityState> attached = new ArrayList<>();
+            for (EntityState state : states) {
+              if (state.attach()) {
+                attached.add(state);
+              }
+            }
+            final User user = userId == null ? null : JPA.em().find(User.class, userId);
+            final User poster = posterId == null ? null : JPA.em().find(User.class, posterId);
+            write(attached, user, poster);
+          });
+    } catch (Exception e) {
+      log.error("Unable to record tracking messages", e);
+    } finally {
+      permits.release();
+      JPA.clear();
+    }
+  }
 }
@@ -17,20 +17,31 @@
  */
 package com.axelor.auth;
 
+import com.axelor.app.AppSettings;
 import com.axelor.auth.db.Permission;
 import com.axelor.auth.db.User;
 import com.axelor.common.StringUtils;
 import com.axelor.db.JpaSecurity;
 import com.axelor.db.Model;
+import com.axelor.db.tenants.TenantResolver;
+import com.axelor.rpc.Request;
 import com.axelor.rpc.filter.Filter;
 import com.axelor.rpc.filter.JPQLFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import groovy.lang.Binding;
 import groovy.lang.GroovyShell;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import org.apache.shiro.authz.UnauthorizedException;
@@ -80,8 +91,102 @@ class AuthSecurity implements JpaSecurity, Provider<JpaSecurity> {
     }
   }
 
+  /** The resolved permissions of a user for a model and access type. */
+  private static final class Resolved {
+
+    private final boolean empty;
+    private final boolean granted;
+    private final List<String[]> conditions;
+
+    public Resolved(Set<Permission> permissions) {
+      final ImmutableList.Builder<String[]> builder = ImmutableList.builder();
+      boolean granted = false;
+      for (Permission permission : permissions) {
+        final String condition = permission.getCondition();
+        if (condition == null) {
+          granted = true;
+        } else if (!"".equals(condition.trim())) {
+          builder.add(new String[] {condition, permission.getConditionParams()});
+        }
+      }
+      this.empty = permissions.isEmpty();
+      this.granted = granted;
+      this.conditions = builder.build();
+    }
+  }
+
+  /** The resolved permissions of the current request. */
+  private static final class RequestCache {
+
+    private final WeakReference<Request> request;
+    private final Map<String, Resolved> resolved = new HashMap<>();
+
+    public RequestCache(Request request) {
+      this.request = new WeakReference<>(request);
+    }
+  }
+
+  // the shared cache is only invalidated on this node, so it's disabled by default
+  private static final String CONFIG_CACHE_TTL = "auth.permissions.cache_ttl";
+
+  private static final int DEFAULT_CACHE_TTL = 0;
+
+  private static final Cache<String, Resolved> RESOLVED_CACHE = createCache();
+
+  private static final ThreadLocal<RequestCache> REQUEST_CACHE = new ThreadLocal<>();
+
+  private static Cache<String, Resolved> createCache() {
+    final int ttl = AppSettings.get().getInt(CONFIG_CACHE_TTL, DEFAULT_CACHE_TTL);
+    return CacheBuilder.newBuilder()
+        .maximumSize(ttl > 0 ? 10000 : 0)
+        .expireAfterWrite(Math.max(ttl, 1), TimeUnit.SECONDS)
+        .build();
+  }
+
+  /** Discard the cached permissions, called when permissions, roles, groups or users change. */
+  static void invalidate() {
+    RESOLVED_CACHE.invalidateAll();
+    REQUEST_CACHE.remove();
+  }
+
+  private static Map<String, Resolved> getRequestCache() {
+    final Request request = Request.current();
+    if (request == null) {
+      return null;
+    }
+    RequestCache cache = REQUEST_CACHE.get();
+    if (cache == null || cache.request.get() != request) {
+      cache = new RequestCache(request);
+      REQUEST_CACHE.set(cache);
+    }
+    return cache.resolved;
+  }
+
   private AuthResolver authResolver = new AuthResolver();
 
+  private Resolved resolve(User user, Class<? extends Model> model, AccessType type) {
+    if (user.getId() == null) {
+      return new Resolved(authResolver.resolve(user, model.getName(), type));
+    }
+    final String key =
+        String.format(
+            "%s:%s:%s:%s",
+            TenantResolver.currentTenantIdentifier(), user.getId(), model.getName(), type);
+    final Map<String, Resolved> requestCache = getRequestCache();
+    Resolved resolved = requestCache == null ? null : requestCache.get(key);
+    if (resolved == null) {
+      resolved = RESOLVED_CACHE.getIfPresent(key);
+    }
+    if (resolved == null) {
+      resolved = new Resolved(authResolver.resolve(user, model.getName(), type));
+      RESOLVED_CACHE.put(key, resolved);
+    }
+    if (requestCache != null) {
+      requestCache.put(key, resolved);
+    }
+    return resolved;
+  }
+
   private User getUser() {
     final User user = AuthUtils.getUser();
     if (user == null || AuthUtils.isAdmin(user)) {
@@ -90,15 +195,6 @@ class AuthSecurity implements JpaSecurity, Provider<JpaSecurity> {
     return user;
   }
 
-  private Condition getCondition(User user, Permission permission, AccessType accessType) {
-    final String condition = permission.getCondition();
-    final String params = permission.getConditionParams();
-    if (condition == null || "".equals(condition.trim())) {
-      return null;
-    }
-    return new Condition(user, condition, params);
-  }
-
   @Override
   public boolean hasRole(String name) {
     final User user = getUser();
@@ -127,16 +223,13 @@ class AuthSecurity implements JpaSecurity, Provider<JpaSecurity> {
     }
 
     final List<Filter> filters = Lists.newArrayList();
-    final Set<Permission> permissions = authResolver.resolve(user, model.getName(), type);
-    if (permissions.isEmpty()) {
+    final Resolved resolved = resolve(user, model, type);
+    if (resolved.empty) {
       return null;
     }
 
-    for (Permission permission : permissions) {
-      Condition condition = this.getCondition(user, permission, type);
-      if (condition != null) {
-        filters.add(condition.getFilter());
-      }
+    for (String[] condition : resolved.conditions) {
+      filters.add(new Condition(user, condition[0], condition[1]).getFilter());
     }
 
     if (filters.isEmpty() && ids.length == 0) {
@@ -163,16 +256,14 @@ class AuthSecurity implements JpaSecurity, Provider<JpaSecurity> {
       return true;
     }
 
-    final Set<Permission> permissions = authResolver.resolve(user, model.getName(), type);
-    if (permissions.isEmpty()) {
+    final Resolved resolved = resolve(user, model, type);
+    if (resolved.empty) {
       return false;
     }
 
     // check whether non-conditional permissions are granted
-    for (Permission permission : permissions) {
-      if (permission.getCondition() == null && authResolver.hasAccess(permission, type)) {
-        return true;
-      }
+    if (resolved.granted) {
+      return true;
     }
 
     if (ids == null || ids.length == 0) {
@@ -184,7 +275,7 @@ class AuthSecurity implements JpaSecurity, Provider<JpaSecurity> {
       return true;
     }
 
-    return filter.build(model).count() == ids.length;
+    return filter.build(model).count() == Arrays.stream(ids).distinct().count();
   }
 
   @Override
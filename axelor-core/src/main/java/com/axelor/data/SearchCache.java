@@ -0,0 +1,240 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data;
+
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Import scoped cache of the records found by the <code>search</code> of data bindings.
+ *
+ * <p>The records are cached by id with the search and the values of its named parameters as key,
+ * so the same reference is looked up only once per import. Searches without result, as well as the
+ * searches of all the matching records, are not cached as the import may create the searched
+ * records later.
+ *
+ * <p>Searches of the form <code>self.field = :param</code> can be resolved from an index of all
+ * the records of the target, loaded once with a single query. The index is only used to find
+ * existing records, a miss falls back to the search query.
+ *
+ * <p>The cache must be {@link #invalidate() invalidated} when a transaction is rolled back as it
+ * may refer to records created by that transaction.
+ */
+public class SearchCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SearchCache.class);
+
+  private static final int MAX_SIZE = 100_000;
+
+  private static final Pattern PARAM_PATTERN = Pattern.compile("(?<![:\\w]):(\\w+)");
+
+  private static final Pattern INDEX_PATTERN =
+      Pattern.compile("^\\s*self\\.([\\w.]+)\\s*=\\s*:(\\w+)\\s*$");
+
+  private final Cache<List<Object>, List<Long>> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_SIZE).build();
+
+  private final Map<List<Object>, Map<String, Long>> indexes = new ConcurrentHashMap<>();
+
+  private final Map<String, List<String>> params = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong indexHits = new AtomicLong();
+
+  /** A key used for duplicate values of an index, which can't be resolved from the index. */
+  private static final Long AMBIGUOUS = -1L;
+
+  /**
+   * Find a record with the given search.
+   *
+   * @param type the record type
+   * @param filter the search filter
+   * @param values the search parameter values
+   * @param index whether to resolve the search from an index of the target records
+   * @param search the search query to run on cache miss
+   * @return the record found, or null
+   */
+  public Model find(
+      Class<?> type,
+      String filter,
+      Map<String, Object> values,
+      boolean index,
+      Supplier<Model> search) {
+
+    final List<Object> key = key(type, filter, values);
+    if (key == null) {
+      misses.incrementAndGet();
+      return search.get();
+    }
+
+    final List<Long> ids = cache.getIfPresent(key);
+    if (ids != null) {
+      hits.incrementAndGet();
+      return reference(type, ids.get(0));
+    }
+
+    if (index) {
+      final Long id = lookup(type, filter, values);
+      if (id != null) {
+        indexHits.incrementAndGet();
+        cache.put(key, Collections.singletonList(id));
+        return reference(type, id);
+      }
+    }
+
+    misses.incrementAndGet();
+
+    final Model bean = search.get();
+    if (bean != null && bean.getId() != null) {
+      cache.put(key, Collections.singletonList(bean.getId()));
+    }
+    return bean;
+  }
+
+  /**
+   * Find all the records with the given search.
+   *
+   * <p>The results are not cached, the import may create more records matching the search.
+   *
+   * @param type the record type
+   * @param filter the search filter
+   * @param values the search parameter values
+   * @param search the search query to run
+   * @return the records found
+   */
+  public List<? extends Model> findAll(
+      Class<?> type,
+      String filter,
+      Map<String, Object> values,
+      Supplier<List<? extends Model>> search) {
+    misses.incrementAndGet();
+    return search.get();
+  }
+
+  /** Discard all the cached searches and indexes. */
+  public void invalidate() {
+    cache.invalidateAll();
+    indexes.clear();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getIndexHits() {
+    return indexHits.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d hits, %d index hits, %d misses", hits.get(), indexHits.get(), misses.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Model reference(Class<?> type, Long id) {
+    return JPA.em().getReference((Class<Model>) type, id);
+  }
+
+  private List<String> params(String filter) {
+    return params.computeIfAbsent(
+        filter,
+        key -> {
+          final Set<String> names = new LinkedHashSet<>();
+          final Matcher matcher = PARAM_PATTERN.matcher(key);
+          while (matcher.find()) {
+            names.add(matcher.group(1));
+          }
+          return new ArrayList<>(names);
+        });
+  }
+
+  private List<Object> key(Class<?> type, String filter, Map<String, Object> values) {
+    // positional parameters are not bound by name
+    if (filter.indexOf('?') > -1) {
+      return null;
+    }
+    final List<Object> key = new ArrayList<>();
+    key.add(type);
+    key.add(filter);
+    for (String name : params(filter)) {
+      key.add(normalize(values.get(name)));
+    }
+    return key;
+  }
+
+  private static Object normalize(Object value) {
+    if (value instanceof Model) {
+      return Arrays.asList(value.getClass().getName(), ((Model) value).getId());
+    }
+    return value;
+  }
+
+  private Long lookup(Class<?> type, String filter, Map<String, Object> values) {
+    final Matcher matcher = INDEX_PATTERN.matcher(filter);
+    if (!matcher.matches()) {
+      return null;
+    }
+    final Object value = normalize(values.get(matcher.group(2)));
+    if (value == null) {
+      return null;
+    }
+    final String field = matcher.group(1);
+    final Map<String, Long> index =
+        indexes.computeIfAbsent(Arrays.asList(type, field), key -> load(type, field));
+    final Long id = index.get(String.valueOf(value));
+    return AMBIGUOUS.equals(id) ? null : id;
+  }
+
+  private Map<String, Long> load(Class<?> type, String field) {
+    final String jpql = "SELECT self.id, self." + field + " FROM " + type.getName() + " self";
+    final Map<String, Long> index = new HashMap<>();
+    final List<?> rows = JPA.em().createQuery(jpql).getResultList();
+    for (Object row : rows) {
+      final Object[] item = (Object[]) row;
+      final String value = String.valueOf(normalize(item[1]));
+      if (index.putIfAbsent(value, (Long) item[0]) != null) {
+        index.put(value, AMBIGUOUS);
+      }
+    }
+    LOG.debug("Loaded search index of {}.{} with {} records", type.getName(), field, rows.size());
+    return index;
+  }
+}
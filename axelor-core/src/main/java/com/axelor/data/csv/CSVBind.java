@@ -52,6 +52,8 @@ public class CSVBind {
 
   @XStreamAsAttribute private boolean update;
 
+  @XStreamAsAttribute private boolean preload;
+
   @XStreamAlias("eval")
   @XStreamAsAttribute
   private String expression;
@@ -109,6 +111,14 @@ public class CSVBind {
     this.update = update;
   }
 
+  public boolean isPreload() {
+    return preload;
+  }
+
+  public void setPreload(boolean preload) {
+    this.preload = preload;
+  }
+
   public String getExpression() {
     return expression;
   }
@@ -18,6 +18,7 @@
 package com.axelor.data.csv;
 
 import com.axelor.data.AuditHelper;
+import com.axelor.data.SearchCache;
 import com.axelor.data.adapter.DataAdapter;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
@@ -37,6 +38,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +60,12 @@ public class CSVBinder {
 
   private String searchCall;
 
+  private boolean reference;
+
+  private boolean preload;
+
+  private SearchCache searchCache;
+
   private Map<String, DataAdapter> adapters = Maps.newHashMap();
 
   public void registerAdapter(DataAdapter adapter) {
@@ -68,6 +76,17 @@ public class CSVBinder {
     adapters.putAll(map);
   }
 
+  /**
+   * Set the cache used to resolve the searches of the reference bindings.
+   *
+   * <p>The main search of the input is not cached as it finds the records being imported.
+   *
+   * @param searchCache the import search cache
+   */
+  public void setSearchCache(SearchCache searchCache) {
+    this.searchCache = searchCache;
+  }
+
   public String[] getFields() {
     return fields;
   }
@@ -92,6 +111,8 @@ public class CSVBinder {
         csvBind.getSearch(),
         csvBind.isUpdate(),
         null);
+    this.reference = true;
+    this.preload = csvBind.isPreload();
   }
 
   private CSVBinder(
@@ -170,13 +191,18 @@ public class CSVBinder {
       }
     } else if (this.query != null) {
       LOG.trace("search: " + this.query);
+      final Supplier<Model> search =
+          () ->
+              JPA.all((Class<Model>) beanClass)
+                  .filter(query)
+                  .bind(params)
+                  .cacheable()
+                  .autoFlush(false)
+                  .fetchOne();
       Object bean =
-          JPA.all((Class<Model>) beanClass)
-              .filter(query)
-              .bind(params)
-              .cacheable()
-              .autoFlush(false)
-              .fetchOne();
+          isCached()
+              ? searchCache.find(beanClass, query, params, preload, search)
+              : search.get();
       LOG.trace("search found: " + bean);
       if (update || bean != null) {
         newBean = false;
@@ -220,14 +246,24 @@ public class CSVBinder {
     }
   }
 
+  private boolean isCached() {
+    // the main search finds the records being imported, and updated references are always loaded
+    return searchCache != null && reference && !update;
+  }
+
   @SuppressWarnings("unchecked")
   private Object findAll(Class<?> beanClass, String query, Map<String, Object> params) {
-    return JPA.all((Class<Model>) beanClass)
-        .filter(query)
-        .bind(params)
-        .cacheable()
-        .autoFlush(false)
-        .fetch();
+    final Supplier<List<? extends Model>> search =
+        () ->
+            JPA.all((Class<Model>) beanClass)
+                .filter(query)
+                .bind(params)
+                .cacheable()
+                .autoFlush(false)
+                .fetch();
+    return searchCache == null
+        ? search.get()
+        : searchCache.findAll(beanClass, query, params, search);
   }
 
   private boolean isBound(CSVBind cb, Map<String, Object> values) {
@@ -258,6 +294,7 @@ public class CSVBinder {
     } else {
       CSVBinder binder = new CSVBinder(type, fields, cb);
       binder.registerAdapters(adapters);
+      binder.setSearchCache(searchCache);
       value = binder.bind(values);
     }
     values.put(field, value);
@@ -332,6 +369,7 @@ public class CSVBinder {
       else if (p.getTarget() != null) {
         CSVBinder b = new CSVBinder(p.getTarget(), fields, cb);
         b.registerAdapters(adapters);
+        b.setSearchCache(searchCache);
         value = b.bind(values);
       }
 
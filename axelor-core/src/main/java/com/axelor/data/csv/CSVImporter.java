@@ -22,6 +22,7 @@ import com.axelor.data.ImportException;
 import com.axelor.data.ImportTask;
 import com.axelor.data.Importer;
 import com.axelor.data.Listener;
+import com.axelor.data.SearchCache;
 import com.axelor.data.adapter.DataAdapter;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
@@ -64,6 +65,10 @@ public class CSVImporter implements Importer {
 
   private CSVLogger loggerManager;
 
+  private int threads = 1;
+
+  private SearchCache searchCache = new SearchCache();
+
   public void addListener(Listener listener) {
     this.listeners.add(listener);
   }
@@ -76,6 +81,21 @@ public class CSVImporter implements Importer {
     this.context = context;
   }
 
+  /**
+   * Set the number of import workers.
+   *
+   * <p>With more than one worker, the files of each input are parsed by the calling thread while
+   * the rows are bound and saved concurrently, each worker in its own transaction. Rows are
+   * partitioned by file, or by the input <code>partition</code> columns. Without partition
+   * columns, the rows of a single file are all imported by the same worker.
+   *
+   * @param threads the number of workers, <code>1</code> (default) to import sequentially
+   */
+  public void setThreads(int threads) {
+    Preconditions.checkArgument(threads > 0, "Invalid number of threads: %s", threads);
+    this.threads = threads;
+  }
+
   public CSVImporter(String configFile) {
     this(configFile, null, null);
   }
@@ -141,17 +161,45 @@ public class CSVImporter implements Importer {
     return loggerManager;
   }
 
+  /**
+   * Get the cache of the reference searches of the last run.
+   *
+   * <p>With more than one worker, each worker uses its own cache which is not included.
+   *
+   * @return the search cache with its hit and miss counts
+   */
+  public SearchCache getSearchCache() {
+    return searchCache;
+  }
+
   /**
    * Run the task from the configured readers
    *
    * @param task the task to run
    */
   public void run(ImportTask task) {
+    searchCache = new SearchCache();
     try {
       if (task.readers.isEmpty()) {
         task.configure();
       }
       for (CSVInput input : config.getInputs()) {
+        if (threads > 1) {
+          final List<Reader> readers = Lists.newArrayList(task.readers.get(input.getFileName()));
+          try {
+            this.process(input, readers);
+          } catch (IOException | ClassNotFoundException e) {
+            LOG.error("Error while importing {}.", input.getFileName());
+            if (!task.handle(e)) {
+              break;
+            }
+          } catch (Exception e) {
+            if (!task.handle(new ImportException(e))) {
+              break;
+            }
+          }
+          continue;
+        }
         for (Reader reader : task.readers.get(input.getFileName())) {
           try {
             this.process(input, reader);
@@ -181,17 +229,37 @@ public class CSVImporter implements Importer {
       throw new IllegalArgumentException(e);
     } finally {
       task.readers.clear();
+      LOG.info("Search cache: {}", searchCache);
     }
   }
 
   @Override
   public void run() {
 
+    searchCache = new SearchCache();
+
     for (CSVInput input : config.getInputs()) {
 
       String fileName = input.getFileName();
       List<File> files = this.getFiles(fileName);
 
+      if (threads > 1) {
+        try {
+          final List<Reader> readers = Lists.newArrayList();
+          for (File file : files) {
+            readers.add(
+                new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")));
+          }
+          this.process(input, readers);
+        } catch (Exception e) {
+          if (LOG.isErrorEnabled()) {
+            LOG.error("Error while importing {}.", fileName);
+            LOG.error("With following exception:", e);
+          }
+        }
+        continue;
+      }
+
       for (File file : files) {
         try {
           this.process(input, file);
@@ -211,6 +279,8 @@ public class CSVImporter implements Importer {
         }
       }
     }
+
+    LOG.info("Search cache: {}", searchCache);
   }
 
   /**
@@ -237,6 +307,20 @@ public class CSVImporter implements Importer {
     this.process(input, new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")));
   }
 
+  /**
+   * Lauch the import for the input and readers with the configured number of workers.
+   *
+   * @param input
+   * @param readers
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void process(CSVInput input, List<Reader> readers)
+      throws IOException, ClassNotFoundException {
+    new CSVPipeline(config, input, threads, listeners, loggerManager, context, dataDir)
+        .process(readers);
+  }
+
   /**
    * Lauch the import for the input and reader.
    *
@@ -270,6 +354,7 @@ public class CSVImporter implements Importer {
     LOG.debug("Header {}", Arrays.asList(fields));
 
     CSVBinder binder = new CSVBinder(beanClass, fields, csvInput);
+    binder.setSearchCache(searchCache);
     String[] values = null;
 
     int count = 0;
@@ -325,6 +410,7 @@ public class CSVImporter implements Importer {
           if (JPA.em().getTransaction().isActive()) {
             JPA.em().getTransaction().rollback();
           }
+          searchCache.invalidate();
 
           if (!JPA.em().getTransaction().isActive()) {
             JPA.em().getTransaction().begin();
@@ -447,6 +533,7 @@ public class CSVImporter implements Importer {
         if (JPA.em().getTransaction().isActive()) {
           JPA.em().getTransaction().rollback();
         }
+        searchCache.invalidate();
       } finally {
         if (!JPA.em().getTransaction().isActive()) {
           JPA.em().getTransaction().begin();
@@ -63,6 +63,8 @@ public class CSVInput {
   @XStreamAsAttribute
   private String searchCall;
 
+  @XStreamAsAttribute private String partition;
+
   @XStreamImplicit(itemFieldName = "bind")
   private List<CSVBind> bindings = Lists.newArrayList();
 
@@ -138,6 +140,26 @@ public class CSVInput {
     return searchCall;
   }
 
+  public String getPartition() {
+    return partition;
+  }
+
+  public void setPartition(String partition) {
+    this.partition = partition;
+  }
+
+  /**
+   * Get the columns used to partition the rows between parallel import workers.
+   *
+   * @return list of column names, empty if rows are partitioned by file
+   */
+  public List<String> getPartitionColumns() {
+    if (Strings.isNullOrEmpty(partition)) {
+      return Lists.newArrayList();
+    }
+    return Lists.newArrayList(partition.trim().split("\\s*,\\s*"));
+  }
+
   public List<CSVBind> getBindings() {
     return bindings;
   }
@@ -164,15 +186,18 @@ public class CSVInput {
 
     if (Strings.isNullOrEmpty(callable)) return object;
 
-    if (callObject == null) {
+    // may be called by parallel import workers
+    synchronized (this) {
+      if (callObject == null) {
 
-      String className = callable.split("\\:")[0];
-      String method = callable.split("\\:")[1];
+        String className = callable.split("\\:")[0];
+        String method = callable.split("\\:")[1];
 
-      Class<?> klass = Class.forName(className);
+        Class<?> klass = Class.forName(className);
 
-      callMethod = klass.getMethod(method, Object.class, Map.class);
-      callObject = Beans.get(klass);
+        callMethod = klass.getMethod(method, Object.class, Map.class);
+        callObject = Beans.get(klass);
+      }
     }
 
     try {
@@ -0,0 +1,580 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data.csv;
+
+import com.axelor.common.StringUtils;
+import com.axelor.data.Importer;
+import com.axelor.data.Listener;
+import com.axelor.data.SearchCache;
+import com.axelor.data.adapter.DataAdapter;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.db.internal.DBHelper;
+import com.axelor.inject.Beans;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.persist.UnitOfWork;
+import com.opencsv.CSVReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.hibernate.HibernateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the files of a {@link CSVInput} with a pipeline of a parser and several import workers.
+ *
+ * <p>The calling thread parses the files and hands the rows over to the workers through bounded
+ * queues. Each worker binds and persists its rows with its own entity manager and transaction,
+ * committing every batch, and resolves the searches with its own {@link SearchCache}. Rows are
+ * partitioned by file, or by the values of the input {@link CSVInput#getPartition() partition}
+ * columns, so the rows of a partition are imported in order by the same worker.
+ *
+ * <p>A failed row is reported to the listeners and the {@link CSVLogger} without replaying the
+ * batch, unless the failure broke the transaction, in which case the other rows of the batch are
+ * imported again in a new transaction. The listeners are notified of the imported rows once their
+ * batch is committed.
+ */
+final class CSVPipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CSVPipeline.class);
+
+  private static final Row END = new Row(null, null);
+
+  private final CSVConfig config;
+  private final CSVInput input;
+  private final int threads;
+  private final int batchSize;
+
+  private final List<Listener> listeners;
+  private final CSVLogger logger;
+  private final Map<String, Object> context;
+  private final File dataDir;
+
+  private final AtomicInteger total = new AtomicInteger();
+  private final AtomicInteger success = new AtomicInteger();
+
+  private final AtomicLong parseTime = new AtomicLong();
+  private final AtomicLong waitTime = new AtomicLong();
+
+  private Class<?> beanClass;
+
+  /** A parsed file of the input. */
+  private static final class Source {
+
+    private final int index;
+    private final String[] fields;
+    private final Map<String, Object> context;
+    private final int[] partition;
+
+    private Source(int index, String[] fields, Map<String, Object> context, int[] partition) {
+      this.index = index;
+      this.fields = fields;
+      this.context = context;
+      this.partition = partition;
+    }
+  }
+
+  /** A parsed row. */
+  private static final class Row {
+
+    private final Source source;
+    private final String[] values;
+
+    private Row(Source source, String[] values) {
+      this.source = source;
+      this.values = values;
+    }
+  }
+
+  /** A row imported in the current transaction, along with its bean. */
+  private static final class Imported {
+
+    private final Row row;
+    private final Object bean;
+
+    private Imported(Row row, Object bean) {
+      this.row = row;
+      this.bean = bean;
+    }
+  }
+
+  CSVPipeline(
+      CSVConfig config,
+      CSVInput input,
+      int threads,
+      List<Listener> listeners,
+      CSVLogger logger,
+      Map<String, Object> context,
+      File dataDir) {
+    this.config = config;
+    this.input = input;
+    this.threads = threads;
+    this.batchSize = Math.max(1, DBHelper.getJdbcBatchSize());
+    this.listeners = listeners;
+    this.logger = logger;
+    this.context = context;
+    this.dataDir = dataDir;
+  }
+
+  /**
+   * Import the given readers of the input.
+   *
+   * @param readers the readers of the input files
+   * @throws IOException if a file can't be read
+   * @throws ClassNotFoundException if the input type doesn't exist
+   */
+  void process(List<Reader> readers) throws IOException, ClassNotFoundException {
+
+    beanClass = Class.forName(input.getTypeName());
+
+    LOG.info(
+        "Importing {} from {} with {} workers",
+        beanClass.getName(),
+        input.getFileName(),
+        threads);
+
+    final List<BlockingQueue<Row>> queues = new ArrayList<>();
+    final List<Worker> workers = new ArrayList<>();
+    final List<Future<?>> futures = new ArrayList<>();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("csv-import-%d").setDaemon(true).build());
+
+    for (int i = 0; i < threads; i++) {
+      final BlockingQueue<Row> queue = new ArrayBlockingQueue<>(batchSize * 2);
+      final Worker worker = new Worker(i, queue);
+      queues.add(queue);
+      workers.add(worker);
+      futures.add(executor.submit(worker));
+    }
+
+    if (input.getPartitionColumns().isEmpty() && readers.size() < threads) {
+      LOG.warn(
+          "No partition columns for {}, {} files are imported by {} of the {} workers",
+          input.getFileName(),
+          readers.size(),
+          readers.size(),
+          threads);
+    }
+
+    final long start = System.nanoTime();
+    try {
+      for (int i = 0; i < readers.size(); i++) {
+        parse(i, readers.get(i), queues, futures);
+      }
+    } finally {
+      for (int i = 0; i < threads; i++) {
+        finish(queues.get(i), futures.get(i));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          LOG.error("Import worker failed:", e.getCause());
+        }
+      }
+      executor.shutdown();
+
+      report(workers, System.nanoTime() - start);
+
+      synchronized (listeners) {
+        for (Listener listener : listeners) {
+          listener.imported(total.get(), success.get());
+        }
+      }
+    }
+  }
+
+  private void parse(
+      int index, Reader reader, List<BlockingQueue<Row>> queues, List<Future<?>> futures)
+      throws IOException {
+
+    try (CSVReader csvReader = new CSVReader(new BufferedReader(reader), input.getSeparator())) {
+
+      final String[] fields;
+      if (StringUtils.isBlank(input.getHeader())) {
+        fields = csvReader.readNext();
+      } else {
+        fields = input.getHeader().trim().split("\\s*,\\s*");
+      }
+
+      if (fields == null) {
+        return;
+      }
+
+      if (logger != null && index == 0) {
+        synchronized (logger) {
+          logger.prepareInput(input, fields);
+        }
+      }
+
+      LOG.debug("Header {}", Arrays.asList(fields));
+
+      final Map<String, Object> ctx = new HashMap<>();
+      if (context != null) {
+        ctx.putAll(context);
+      }
+      try {
+        input.callPrepareContext(ctx);
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+      if (dataDir != null) {
+        ctx.put("__path__", dataDir.toPath());
+      }
+
+      final Source source = new Source(index, fields, ctx, partition(fields));
+
+      long mark = System.nanoTime();
+      String[] values;
+      while ((values = csvReader.readNext()) != null) {
+        if (isEmpty(values)) {
+          continue;
+        }
+        total.incrementAndGet();
+
+        final long parsed = System.nanoTime();
+        parseTime.addAndGet(parsed - mark);
+
+        final BlockingQueue<Row> queue = queues.get(queueIndex(source, values));
+        if (!queue.offer(new Row(source, values))) {
+          checkWorkers(futures);
+          put(queue, new Row(source, values));
+        }
+
+        mark = System.nanoTime();
+        waitTime.addAndGet(mark - parsed);
+      }
+    }
+  }
+
+  private int[] partition(String[] fields) {
+    final List<String> columns = input.getPartitionColumns();
+    final int[] indexes = new int[columns.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = Arrays.asList(fields).indexOf(columns.get(i));
+      if (indexes[i] < 0) {
+        LOG.warn("No partition column {} in {}, partition by file", columns.get(i), input);
+        return new int[] {};
+      }
+    }
+    return indexes;
+  }
+
+  private int queueIndex(Source source, String[] values) {
+    if (source.partition.length == 0) {
+      return source.index % threads;
+    }
+    int hash = 1;
+    for (int column : source.partition) {
+      hash = 31 * hash + (column < values.length ? String.valueOf(values[column]).hashCode() : 0);
+    }
+    return Math.floorMod(hash, threads);
+  }
+
+  private void checkWorkers(List<Future<?>> futures) throws IOException {
+    // don't wait for a worker that is gone
+    for (Future<?> future : futures) {
+      if (future.isDone()) {
+        throw new IOException("Import worker terminated unexpectedly.");
+      }
+    }
+  }
+
+  private static void put(BlockingQueue<Row> queue, Row row) {
+    try {
+      queue.put(row);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void finish(BlockingQueue<Row> queue, Future<?> future) {
+    try {
+      while (!future.isDone() && !queue.offer(END, 1, TimeUnit.SECONDS)) {
+        // wait for the worker
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+    }
+  }
+
+  private static boolean isEmpty(String[] line) {
+    if (line == null || line.length == 0) return true;
+    if (line.length == 1 && (line[0] == null || "".equals(line[0].trim()))) return true;
+    return false;
+  }
+
+  private void report(List<Worker> workers, long elapsed) {
+    final long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    LOG.info(
+        "Imported {} of {} records of {} in {} ms ({} records/s)",
+        success.get(),
+        total.get(),
+        input.getFileName(),
+        millis,
+        success.get() * 1000L / millis);
+    LOG.info(
+        "Parser: {} rows, parse {} ms, waiting for workers {} ms",
+        total.get(),
+        TimeUnit.NANOSECONDS.toMillis(parseTime.get()),
+        TimeUnit.NANOSECONDS.toMillis(waitTime.get()));
+    for (Worker worker : workers) {
+      LOG.info(
+          "Worker {}: {} rows, {} failed, import {} ms, commit {} ms, waiting for rows {} ms, "
+              + "search cache: {}",
+          worker.index,
+          worker.rows,
+          worker.failed,
+          TimeUnit.NANOSECONDS.toMillis(worker.importTime),
+          TimeUnit.NANOSECONDS.toMillis(worker.commitTime),
+          TimeUnit.NANOSECONDS.toMillis(worker.idleTime),
+          worker.searchCache);
+    }
+  }
+
+  /** An import worker, binds and persists the rows of its queue in its own transaction. */
+  private final class Worker implements Runnable {
+
+    private final int index;
+    private final BlockingQueue<Row> queue;
+
+    private final Map<Source, CSVBinder> binders = new HashMap<>();
+
+    // not shared, other workers may not see the records of this worker's transaction
+    private final SearchCache searchCache = new SearchCache();
+    private final List<Imported> batch = new ArrayList<>();
+
+    private volatile long rows;
+    private volatile long failed;
+    private volatile long importTime;
+    private volatile long commitTime;
+    private volatile long idleTime;
+
+    private Worker(int index, BlockingQueue<Row> queue) {
+      this.index = index;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try {
+        begin();
+        long mark = System.nanoTime();
+        Row row;
+        while ((row = queue.take()) != END) {
+          final long started = System.nanoTime();
+          idleTime += started - mark;
+
+          handle(row);
+          rows++;
+          if (batch.size() >= batchSize) {
+            commit();
+          }
+
+          mark = System.nanoTime();
+          importTime += mark - started;
+        }
+        commit();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        final EntityTransaction txn = JPA.em().getTransaction();
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+        Beans.get(UnitOfWork.class).end();
+      }
+    }
+
+    private CSVBinder binder(Source source) {
+      return binders.computeIfAbsent(
+          source,
+          key -> {
+            final CSVBinder binder = new CSVBinder(beanClass, key.fields, input);
+            binder.setSearchCache(searchCache);
+            for (DataAdapter adapter : Importer.defaultAdapters) {
+              binder.registerAdapter(adapter);
+            }
+            for (DataAdapter adapter : config.getAdapters()) {
+              binder.registerAdapter(adapter);
+            }
+            for (DataAdapter adapter : input.getAdapters()) {
+              binder.registerAdapter(adapter);
+            }
+            return binder;
+          });
+    }
+
+    private Object importRow(Row row) throws Exception {
+      final Map<String, Object> ctx = new HashMap<>(row.source.context);
+      Object bean = binder(row.source).bind(row.values, ctx);
+      bean = input.call(bean, ctx);
+      if (bean != null) {
+        JPA.manage((Model) bean);
+      }
+      return bean;
+    }
+
+    private void handle(Row row) {
+      try {
+        batch.add(new Imported(row, importRow(row)));
+      } catch (Exception e) {
+        failed(row, null, e);
+        if (isBroken(e)) {
+          replay();
+        }
+      }
+    }
+
+    /** Import the rows of the current batch again in a new transaction. */
+    private void replay() {
+      rollback();
+      final List<Imported> rows = new ArrayList<>(batch);
+      batch.clear();
+      for (Imported item : rows) {
+        LOG.debug("Recover record {}", Arrays.asList(item.row.values));
+        try {
+          batch.add(new Imported(item.row, importRow(item.row)));
+        } catch (Exception e) {
+          failed(item.row, null, e);
+          if (isBroken(e)) {
+            replay();
+          }
+        }
+      }
+    }
+
+    /** Notify the listeners of the beans of committed rows. */
+    private void imported(List<Imported> items) {
+      synchronized (listeners) {
+        for (Imported item : items) {
+          for (Listener listener : listeners) {
+            listener.imported((Model) item.bean);
+          }
+        }
+      }
+    }
+
+    private boolean isBroken(Exception e) {
+      final EntityTransaction txn = JPA.em().getTransaction();
+      if (!txn.isActive() || txn.getRollbackOnly()) {
+        return true;
+      }
+      for (Throwable cause : Throwables.getCausalChain(e)) {
+        if (cause instanceof PersistenceException || cause instanceof HibernateException) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void failed(Row row, Object bean, Exception e) {
+      failed++;
+      LOG.error("Error while importing {}.", input.getFileName());
+      LOG.error("Unable to import record: {}", Arrays.asList(row.values));
+      LOG.error("With following exception:", e);
+      if (logger != null) {
+        synchronized (logger) {
+          logger.log(row.values);
+        }
+      }
+      synchronized (listeners) {
+        for (Listener listener : listeners) {
+          listener.handle((Model) bean, e);
+        }
+      }
+    }
+
+    private void commit() {
+      final long start = System.nanoTime();
+      final EntityTransaction txn = JPA.em().getTransaction();
+      try {
+        LOG.trace("Commit {} records", batch.size());
+        txn.commit();
+        success.addAndGet(batch.size());
+        imported(batch);
+        batch.clear();
+      } catch (Exception e) {
+        // can't find the failed row, import the rows one by one
+        final List<Imported> rows = new ArrayList<>(batch);
+        batch.clear();
+        rollback();
+        for (Imported item : rows) {
+          try {
+            final Object bean = importRow(item.row);
+            JPA.em().getTransaction().commit();
+            success.incrementAndGet();
+            imported(Collections.singletonList(new Imported(item.row, bean)));
+          } catch (Exception ex) {
+            failed(item.row, null, ex);
+            rollback();
+          } finally {
+            begin();
+          }
+        }
+      } finally {
+        JPA.em().clear();
+        begin();
+        commitTime += System.nanoTime() - start;
+      }
+    }
+
+    private void rollback() {
+      final EntityTransaction txn = JPA.em().getTransaction();
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+      searchCache.invalidate();
+      JPA.em().clear();
+      begin();
+    }
+
+    private void begin() {
+      final EntityTransaction txn = JPA.em().getTransaction();
+      if (!txn.isActive()) {
+        txn.begin();
+      }
+    }
+  }
+}
@@ -54,6 +54,8 @@ public class XMLBind {
 
   @XStreamAsAttribute private Boolean create;
 
+  @XStreamAsAttribute private Boolean preload;
+
   @XStreamAlias("eval")
   @XStreamAsAttribute
   private String expression;
@@ -116,6 +118,10 @@ public class XMLBind {
     return create;
   }
 
+  public Boolean getPreload() {
+    return preload;
+  }
+
   public String getExpression() {
     return expression;
   }
@@ -18,6 +18,7 @@
 package com.axelor.data.xml;
 
 import com.axelor.data.AuditHelper;
+import com.axelor.data.SearchCache;
 import com.axelor.data.adapter.DataAdapter;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -55,11 +57,24 @@ public abstract class XMLBinder {
 
   private Map<String, DataAdapter> adapters = new HashMap<>();
 
+  private SearchCache searchCache;
+
   public XMLBinder(XMLInput input, Map<String, Object> context) {
     this.input = input;
     this.context = context;
   }
 
+  /**
+   * Set the cache used to resolve the searches of the bindings.
+   *
+   * <p>The searches of bindings updating the found records are not cached.
+   *
+   * @param searchCache the import search cache
+   */
+  public void setSearchCache(SearchCache searchCache) {
+    this.searchCache = searchCache;
+  }
+
   public void registerAdapter(DataAdapter adapter) {
     adapters.put(adapter.getName(), adapter);
   }
@@ -75,20 +90,29 @@ public abstract class XMLBinder {
       LOG.debug("binding: " + binding);
       List<Node> nodes = this.find(element, binding, "/");
       for (Node node : nodes) {
-        if (lastClass != binding.getType()) {
-          lastClass = binding.getType();
-          JPA.flush();
-        }
         LOG.trace("element: <{} ...>", node.getNodeName());
-        Map<String, Object> map = this.toMap(node, binding);
-        Object bean = this.bind(binding, binding.getType(), map);
-        LOG.trace("bean created: {}", bean);
-        this.handle(bean, binding, toContext(map));
-        LOG.trace("bean saved: {}", bean);
+        this.bind(binding, this.toMap(node, binding));
       }
     }
   }
 
+  /**
+   * Bind and handle a record from the values of its nodes.
+   *
+   * @param binding the root binding of the record
+   * @param map the node values of the record, as prepared by {@link #toMap(XMLBind, Function)}
+   */
+  void bind(XMLBind binding, Map<String, Object> map) {
+    if (lastClass != binding.getType()) {
+      lastClass = binding.getType();
+      JPA.flush();
+    }
+    Object bean = this.bind(binding, binding.getType(), map);
+    LOG.trace("bean created: {}", bean);
+    this.handle(bean, binding, toContext(map));
+    LOG.trace("bean saved: {}", bean);
+  }
+
   @SuppressWarnings("unchecked")
   private Object bind(XMLBind binding, Class<?> type, Map<String, Object> values) {
 
@@ -103,7 +127,15 @@ public abstract class XMLBinder {
 
     if (binding.getSearch() != null) {
       LOG.trace("search: " + binding.getSearch());
-      bean = JPA.all((Class<Model>) type).filter(binding.getSearch()).bind(ctx).fetchOne();
+      final Supplier<Model> search =
+          () -> JPA.all((Class<Model>) type).filter(binding.getSearch()).bind(ctx).fetchOne();
+      if (searchCache == null || binding.getUpdate() == Boolean.TRUE) {
+        bean = search.get();
+      } else {
+        bean =
+            searchCache.find(
+                type, binding.getSearch(), ctx, binding.getPreload() == Boolean.TRUE, search);
+      }
       LOG.trace("search found: " + bean);
       if (bean != null && binding.getUpdate() != Boolean.TRUE) {
         LOG.trace("search no update");
@@ -249,15 +281,27 @@ public abstract class XMLBinder {
     return binding.validate(ctx);
   }
 
-  @SuppressWarnings("all")
   private Map<String, Object> toMap(Node node, XMLBind binding) {
+    return toMap(binding, bind -> value(find(node, bind, "."), bind));
+  }
+
+  /**
+   * Prepare the value map of a node from the raw values of its bindings.
+   *
+   * <p>The raw value of a binding is the text of the matched node, the value map of the matched
+   * element if the binding has sub bindings, or a list of them if several nodes are matched.
+   *
+   * @param binding the node binding
+   * @param values function returning the raw value of a sub binding
+   * @return the value map
+   */
+  Map<String, Object> toMap(XMLBind binding, Function<XMLBind, Object> values) {
 
     Map<String, Object> map = new HashMap<>();
 
     // first prepare complete map
     for (XMLBind bind : binding.getBindings()) {
       String name = bind.getAlias();
-      String path = bind.getNode();
       if (name == null) {
         name = bind.getField();
       }
@@ -266,8 +310,7 @@ public abstract class XMLBinder {
         continue;
       }
 
-      List<Node> nodes = find(node, bind, ".");
-      Object value = value(nodes, bind);
+      Object value = values.apply(bind);
 
       value = this.adapt(bind, value, map);
 
@@ -21,6 +21,7 @@ import com.axelor.data.ImportException;
 import com.axelor.data.ImportTask;
 import com.axelor.data.Importer;
 import com.axelor.data.Listener;
+import com.axelor.data.SearchCache;
 import com.axelor.data.adapter.DataAdapter;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
@@ -87,6 +88,8 @@ public class XMLImporter implements Importer {
 
   private boolean canClear = true;
 
+  private SearchCache searchCache = new SearchCache();
+
   @Inject
   public XMLImporter(
       @Named("axelor.data.config") String configFile, @Named("axelor.data.dir") String dataDir) {
@@ -132,9 +135,20 @@ public class XMLImporter implements Importer {
     this.canClear = canClear;
   }
 
+  /**
+   * Get the cache of the searches of the last run.
+   *
+   * @return the search cache with its hit and miss counts
+   */
+  public SearchCache getSearchCache() {
+    return searchCache;
+  }
+
   @Override
   public void run() {
 
+    searchCache = new SearchCache();
+
     for (XMLInput input : config.getInputs()) {
 
       String fileName = input.getFileName();
@@ -148,9 +162,12 @@ public class XMLImporter implements Importer {
         }
       }
     }
+
+    log.info("Search cache: {}", searchCache);
   }
 
   public void run(ImportTask task) {
+    searchCache = new SearchCache();
     try {
       if (task.readers.isEmpty()) {
         task.configure();
@@ -170,6 +187,7 @@ public class XMLImporter implements Importer {
       throw new IllegalArgumentException(e);
     } finally {
       task.readers.clear();
+      log.info("Search cache: {}", searchCache);
     }
   }
 
@@ -257,6 +275,7 @@ public class XMLImporter implements Importer {
               // Recover the transaction
               if (JPA.em().getTransaction().getRollbackOnly()) {
                 JPA.em().getTransaction().rollback();
+                searchCache.invalidate();
               }
               if (!JPA.em().getTransaction().isActive()) {
                 JPA.em().getTransaction().begin();
@@ -280,6 +299,8 @@ public class XMLImporter implements Importer {
           }
         };
 
+    binder.setSearchCache(searchCache);
+
     // register type adapters
     for (DataAdapter adapter : defaultAdapters) {
       binder.registerAdapter(adapter);
@@ -306,7 +327,12 @@ public class XMLImporter implements Importer {
     }
 
     try {
-      stream.fromXML(reader);
+      if (XMLStreamBinder.supports(input)) {
+        new XMLStreamBinder(input, binder).process(reader);
+      } else {
+        log.debug("Binding {} with xpath", input.getFileName());
+        stream.fromXML(reader);
+      }
       binder.finish();
       if (txn.isActive() && started) {
         txn.commit();
@@ -318,6 +344,7 @@ public class XMLImporter implements Importer {
       if (txn.isActive() && started) {
         txn.rollback();
       }
+      searchCache.invalidate();
       throw new ImportException(e);
     }
   }
@@ -0,0 +1,386 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data.xml;
+
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming alternative to the DOM based binding of {@link XMLBinder}.
+ *
+ * <p>The bindings of the input are compiled to simple element paths matched against the StAX
+ * events, so the node values of a record are captured directly without building a DOM and
+ * evaluating xpath expressions. The captured values are then bound by the {@link XMLBinder} the
+ * same way as the values found in the DOM.
+ *
+ * <p>Only the node paths made of element names, optionally ending with an <code>@attribute
+ * </code> or <code>text()</code> step, are supported. See {@link #supports(XMLInput)}.
+ */
+final class XMLStreamBinder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(XMLStreamBinder.class);
+
+  private static final Pattern NAME_PATTERN = Pattern.compile("[\\w-][\\w.-]*");
+
+  private static final String TEXT = "text()";
+
+  private final XMLInput input;
+
+  private final XMLBinder binder;
+
+  private final Map<XMLBind, Path> paths = new IdentityHashMap<>();
+
+  private final List<Capture> records = new ArrayList<>();
+
+  /** A compiled node path. */
+  private static final class Path {
+
+    private final String[] elements;
+    private final String attribute;
+    private final boolean text;
+
+    private Path(String[] elements, String attribute, boolean text) {
+      this.elements = elements;
+      this.attribute = attribute;
+      this.text = text;
+    }
+  }
+
+  /** The direct text of an element, complete once the element is closed. */
+  private static final class Text {
+
+    private final StringBuilder builder = new StringBuilder();
+
+    private String value() {
+      final String value = builder.toString();
+      return value.trim().isEmpty() ? null : value;
+    }
+  }
+
+  /** A binding waiting for the remaining elements of its path. */
+  private static final class Match {
+
+    private final XMLBind bind;
+    private final Path path;
+    private final int index;
+    private final Capture owner;
+
+    private Match(XMLBind bind, Path path, int index, Capture owner) {
+      this.bind = bind;
+      this.path = path;
+      this.index = index;
+      this.owner = owner;
+    }
+  }
+
+  /** An open element. */
+  private static final class Frame {
+
+    private final List<Match> matches = new ArrayList<>();
+    private Text text;
+
+    private Text text() {
+      if (text == null) {
+        text = new Text();
+      }
+      return text;
+    }
+  }
+
+  /** The raw values captured for the sub bindings of a matched element. */
+  private final class Capture {
+
+    private final XMLBind binding;
+    private final Map<XMLBind, List<Object>> values = new IdentityHashMap<>();
+
+    private Capture(XMLBind binding) {
+      this.binding = binding;
+    }
+
+    private void add(XMLBind bind, Object value) {
+      values.computeIfAbsent(bind, key -> new ArrayList<>(1)).add(value);
+    }
+
+    private Object value(XMLBind bind) {
+      final List<Object> items = values.get(bind);
+      if (items == null) {
+        return null;
+      }
+      final List<Object> result = new ArrayList<>(items.size());
+      for (Object item : items) {
+        if (item instanceof Capture) {
+          result.add(((Capture) item).toMap());
+        } else if (item instanceof Text) {
+          final String text = ((Text) item).value();
+          // text nodes are matched only if not empty
+          if (text != null || !paths.get(bind).text) {
+            result.add(text);
+          }
+        } else {
+          result.add(item);
+        }
+      }
+      if (result.size() == 1) {
+        return result.get(0);
+      }
+      return result.size() == 0 ? null : result;
+    }
+
+    private Map<String, Object> toMap() {
+      return binder.toMap(binding, this::value);
+    }
+  }
+
+  XMLStreamBinder(XMLInput input, XMLBinder binder) {
+    this.input = input;
+    this.binder = binder;
+    for (XMLBind binding : input.getBindings()) {
+      compile(binding);
+    }
+  }
+
+  /**
+   * Check whether the bindings of the given input can be matched on a stream.
+   *
+   * @param input the input to check
+   * @return true if all the bindings have simple node paths
+   */
+  static boolean supports(XMLInput input) {
+    for (XMLBind binding : input.getBindings()) {
+      final Path path = parse(binding.getNode());
+      if (binding.getNode() != null && path == null) {
+        return false;
+      }
+      if (path != null
+          && (path.attribute != null || path.text || binding.getBindings() == null)) {
+        return false;
+      }
+      if (binding.getBindings() != null && !supports(binding.getBindings())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean supports(List<XMLBind> bindings) {
+    for (XMLBind bind : bindings) {
+      if (bind.getNode() != null && parse(bind.getNode()) == null) {
+        return false;
+      }
+      if (bind.getBindings() != null && !supports(bind.getBindings())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Path parse(String node) {
+    if (node == null) {
+      return null;
+    }
+    final String[] steps = node.trim().split("/", -1);
+    final String last = steps[steps.length - 1];
+
+    String attribute = null;
+    boolean text = false;
+    int count = steps.length;
+
+    if (last.startsWith("@")) {
+      attribute = last.substring(1);
+      count--;
+      if (!NAME_PATTERN.matcher(attribute).matches()) {
+        return null;
+      }
+    } else if (TEXT.equals(last)) {
+      text = true;
+      count--;
+    }
+
+    final String[] elements = new String[count];
+    for (int i = 0; i < count; i++) {
+      if (!NAME_PATTERN.matcher(steps[i]).matches()) {
+        return null;
+      }
+      elements[i] = steps[i];
+    }
+
+    return new Path(elements, attribute, text);
+  }
+
+  private void compile(XMLBind bind) {
+    final Path path = parse(bind.getNode());
+    if (path != null) {
+      paths.put(bind, path);
+    }
+    if (bind.getBindings() != null) {
+      for (XMLBind item : bind.getBindings()) {
+        compile(item);
+      }
+    }
+  }
+
+  /**
+   * Bind the records of the given xml stream.
+   *
+   * @param reader the xml stream
+   * @throws XMLStreamException if the stream is not valid xml
+   */
+  void process(Reader reader) throws XMLStreamException {
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+    final XMLStreamReader xml = factory.createXMLStreamReader(reader);
+    final Deque<Frame> stack = new ArrayDeque<>();
+
+    String last = null;
+    long count = 0;
+
+    try {
+      while (xml.hasNext()) {
+        switch (xml.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            if (stack.size() == 1) {
+              final String name = xml.getLocalName();
+              if (last != null && !last.equals(name)) {
+                binder.finish();
+              }
+              last = name;
+            }
+            stack.push(start(xml, stack.peek()));
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            text(xml, stack.peek());
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            stack.pop();
+            if (stack.size() == 1) {
+              count += emit();
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } finally {
+      xml.close();
+    }
+
+    LOG.debug("Bound {} records of {}", count, input.getFileName());
+  }
+
+  private Frame start(XMLStreamReader xml, Frame parent) {
+    final Frame frame = new Frame();
+
+    // the root element, records are its children
+    if (parent == null) {
+      for (XMLBind binding : input.getBindings()) {
+        final Path path = paths.get(binding);
+        if (path != null) {
+          frame.matches.add(new Match(binding, path, 0, null));
+        }
+      }
+      return frame;
+    }
+
+    final String name = xml.getLocalName();
+    for (Match match : parent.matches) {
+      final Path path = match.path;
+      if (!path.elements[match.index].equals(name)) {
+        continue;
+      }
+      if (match.index + 1 < path.elements.length) {
+        frame.matches.add(new Match(match.bind, path, match.index + 1, match.owner));
+      } else {
+        matched(xml, frame, match.bind, path, match.owner);
+      }
+    }
+
+    return frame;
+  }
+
+  private void text(XMLStreamReader xml, Frame frame) {
+    if (frame != null && frame.text != null) {
+      frame.text.builder.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+    }
+  }
+
+  private void matched(XMLStreamReader xml, Frame frame, XMLBind bind, Path path, Capture owner) {
+    if (path.attribute != null) {
+      final String value = xml.getAttributeValue(null, path.attribute);
+      if (value != null) {
+        owner.add(bind, value);
+      }
+      return;
+    }
+
+    if (path.text || bind.getBindings() == null) {
+      owner.add(bind, frame.text());
+      return;
+    }
+
+    final Capture capture = new Capture(bind);
+    if (owner == null) {
+      records.add(capture);
+    } else {
+      owner.add(bind, capture);
+    }
+
+    for (XMLBind item : bind.getBindings()) {
+      final Path itemPath = paths.get(item);
+      if (itemPath == null) {
+        continue;
+      }
+      if (itemPath.elements.length == 0) {
+        matched(xml, frame, item, itemPath, capture);
+      } else {
+        frame.matches.add(new Match(item, itemPath, 0, capture));
+      }
+    }
+  }
+
+  private int emit() {
+    int count = 0;
+    // bind in the order of the bindings, like the nodes found in the record document
+    for (XMLBind binding : input.getBindings()) {
+      for (Capture capture : records) {
+        if (capture.binding == binding) {
+          binder.bind(binding, capture.toMap());
+          count++;
+        }
+      }
+    }
+    records.clear();
+    return count;
+  }
+}
@@ -17,6 +17,7 @@
  */
 package com.axelor.db;
 
+import com.axelor.db.internal.DBHelper;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
 import com.axelor.db.mapper.PropertyType;
@@ -65,6 +66,8 @@ public final class JPA {
   private Provider<EntityManager> emp;
   private static JPA INSTANCE = null;
 
+  private static final ThreadLocal<Boolean> FLUSH_DEFERRED = new ThreadLocal<>();
+
   @Inject
   private JPA(Provider<EntityManager> emp) {
     this.emp = emp;
@@ -111,7 +114,8 @@ public final class JPA {
   }
 
   private static boolean isAutoFlushEnabled() {
-    return !Objects.equal(
+    return FLUSH_DEFERRED.get() == null
+        && !Objects.equal(
         "false", em().getEntityManagerFactory().getProperties().get("JPA.auto_flush"));
   }
 
@@ -619,6 +623,40 @@ public final class JPA {
     }
   }
 
+  /**
+   * Run the given <code>task</code> as a batch of changes.
+   *
+   * <p>The changes saved with {@link #persist(Model)} or {@link #merge(Model)} by the task are not
+   * flushed one by one but once the task is completed, using JDBC batching.
+   *
+   * @param task the task to run.
+   */
+  public static void runInBatch(Runnable task) {
+    Preconditions.checkNotNull(task);
+    if (FLUSH_DEFERRED.get() != null) {
+      task.run();
+      return;
+    }
+    final Session session = (Session) em().getDelegate();
+    final Integer batchSize = session.getJdbcBatchSize();
+    try {
+      if (DBHelper.getJdbcBatchSize() > 0) {
+        session.setJdbcBatchSize(DBHelper.getJdbcBatchSize());
+      }
+      FLUSH_DEFERRED.set(Boolean.TRUE);
+      try {
+        task.run();
+      } finally {
+        FLUSH_DEFERRED.remove();
+      }
+      if (isAutoFlushEnabled()) {
+        em().flush();
+      }
+    } finally {
+      session.setJdbcBatchSize(batchSize);
+    }
+  }
+
   /**
    * Perform JDBC related work using the {@link Connection} managed by the current {@link
    * EntityManager}.
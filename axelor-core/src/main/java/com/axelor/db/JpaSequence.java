@@ -26,6 +26,8 @@ import com.google.common.base.Strings;
 /** This class provides some helper static methods to deal with custom sequences. */
 public final class JpaSequence {
 
+  private static final JpaSequenceBlocks BLOCKS = new JpaSequenceBlocks();
+
   private JpaSequence() {}
 
   private static MetaSequence find(String name) {
@@ -41,20 +43,41 @@ public final class JpaSequence {
    * Get the next sequence value of the given sequence.<br>
    * <br>
    * This method must be called inside a running transaction as it updates the sequence details in
-   * database.
+   * database.<br>
+   * <br>
+   * If the sequence defines a block size, values are handed out from a block reserved in a separate
+   * transaction instead, which avoids locking the sequence for every value but may leave gaps.
    *
    * @param name the name of the sequence
    * @return next sequence value
    */
   public static String nextValue(String name) {
+    String value = BLOCKS.contains(name) ? BLOCKS.next(name) : null;
+    if (value != null) {
+      return value;
+    }
+
     final MetaSequence sequence = find(name);
+    final Integer blockSize = sequence.getBlockSize();
+
+    if (blockSize != null && blockSize > 1 && (value = BLOCKS.next(name)) != null) {
+      return value;
+    }
+
     final Long next = sequence.getNext();
-    final String prefix = sequence.getPrefix();
-    final String suffix = sequence.getSuffix();
-    final Integer padding = sequence.getPadding();
 
+    value = format(sequence.getPrefix(), sequence.getSuffix(), sequence.getPadding(), next);
+
+    sequence.setNext(next + sequence.getIncrement());
+
+    JPA.em().persist(sequence);
+
+    return value;
+  }
+
+  static String format(String prefix, String suffix, Integer padding, long next) {
     String value = "" + next;
-    if (padding > 0) {
+    if (padding != null && padding > 0) {
       value = Strings.padStart(value, padding, '0');
     }
     if (!StringUtils.isBlank(prefix)) {
@@ -63,11 +86,6 @@ public final class JpaSequence {
     if (!StringUtils.isBlank(suffix)) {
       value = value + suffix;
     }
-
-    sequence.setNext(next + sequence.getIncrement());
-
-    JPA.em().persist(sequence);
-
     return value;
   }
 
@@ -78,7 +96,9 @@ public final class JpaSequence {
    * the database. <br>
    * <br>
    * This method is generally used to reset the sequence. It may cause duplicates if given next
-   * number is less then the last next value of the sequence.
+   * number is less then the last next value of the sequence. Blocks of pooled sequences already
+   * reserved by other nodes are not affected, and the change should be committed before taking
+   * the next value of a pooled sequence.
    *
    * @param name the name of the sequence
    * @param next the next sequence number
@@ -87,5 +107,6 @@ public final class JpaSequence {
     final MetaSequence sequence = find(name);
     sequence.setNext(next);
     JPA.em().persist(sequence);
+    BLOCKS.reset(name);
   }
 }
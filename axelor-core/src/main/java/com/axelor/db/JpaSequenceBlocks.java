@@ -0,0 +1,142 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.db;
+
+import com.axelor.meta.db.MetaSequence;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Hands out values of pooled sequences from blocks reserved in the database.
+ *
+ * <p>A block of {@link MetaSequence#getBlockSize()} values is reserved with a single <code>UPDATE
+ * </code> in its own short transaction, so concurrent callers don't hold the sequence row lock for
+ * the duration of their own transaction. Values not used when the application stops are lost.
+ */
+final class JpaSequenceBlocks {
+
+  private static final String UPDATE_NEXT =
+      "UPDATE MetaSequence self SET self.next = self.next + self.increment * self.blockSize "
+          + "WHERE self.name = :name AND self.blockSize > 1";
+
+  private static final String SELECT_SEQUENCE =
+      "SELECT self FROM MetaSequence self WHERE self.name = :name";
+
+  private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<>();
+
+  private static final class Block {
+
+    private final String prefix;
+    private final String suffix;
+    private final int padding;
+    private final int increment;
+    private final long end;
+    private final AtomicLong next;
+
+    private Block(MetaSequence sequence, long start) {
+      this.prefix = sequence.getPrefix();
+      this.suffix = sequence.getSuffix();
+      this.padding = sequence.getPadding();
+      this.increment = sequence.getIncrement();
+      this.end = sequence.getNext();
+      this.next = new AtomicLong(start);
+    }
+
+    private String take() {
+      final long value = next.getAndAdd(increment);
+      return value < end ? JpaSequence.format(prefix, suffix, padding, value) : null;
+    }
+  }
+
+  /**
+   * Get the next value of the given sequence from the current block, reserving a new block if
+   * required.
+   *
+   * @param name the name of the sequence
+   * @return next formatted value or null if the sequence is not pooled
+   */
+  String next(String name) {
+    Block block = blocks.get(name);
+    String value = block == null ? null : block.take();
+    while (value == null) {
+      synchronized (this) {
+        // another thread might have reserved a new block already
+        if (block == blocks.get(name)) {
+          block = reserve(name);
+          if (block == null) {
+            blocks.remove(name);
+            return null;
+          }
+          blocks.put(name, block);
+        } else if ((block = blocks.get(name)) == null) {
+          return null;
+        }
+      }
+      value = block.take();
+    }
+    return value;
+  }
+
+  /**
+   * Check whether a block is held for the given sequence.
+   *
+   * @param name the name of the sequence
+   * @return true if values of the sequence are taken from a reserved block
+   */
+  boolean contains(String name) {
+    return blocks.containsKey(name);
+  }
+
+  /**
+   * Discard the block of the given sequence so that the next value is reserved again from the
+   * database.
+   *
+   * @param name the name of the sequence
+   */
+  void reset(String name) {
+    blocks.remove(name);
+  }
+
+  private Block reserve(String name) {
+    final EntityManager em = JPA.em().getEntityManagerFactory().createEntityManager();
+    final EntityTransaction txn = em.getTransaction();
+    try {
+      txn.begin();
+      final int updated = em.createQuery(UPDATE_NEXT).setParameter("name", name).executeUpdate();
+      if (updated == 0) {
+        txn.rollback();
+        return null;
+      }
+      final MetaSequence sequence =
+          em.createQuery(SELECT_SEQUENCE, MetaSequence.class)
+              .setParameter("name", name)
+              .getSingleResult();
+      txn.commit();
+      final long size = (long) sequence.getIncrement() * sequence.getBlockSize();
+      return new Block(sequence, sequence.getNext() - size);
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+      em.close();
+    }
+  }
+}
@@ -30,20 +30,25 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import java.lang.reflect.Field;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.LongConsumer;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
 import javax.persistence.FlushModeType;
+import javax.persistence.OrderBy;
 import javax.persistence.TypedQuery;
 
 /**
@@ -72,6 +77,14 @@ public class Query<T extends Model> {
 
   private FlushModeType flushMode = FlushModeType.AUTO;
 
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private boolean batchCommit;
+
+  private LongConsumer batchProgress;
+
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
   private static final String NAME_PATTERN = "((?:[a-zA-Z_]\\w+)(?:(?:\\[\\])?\\.\\w+)*)";
 
   private static final Pattern PLACEHOLDER_PLAIN = Pattern.compile("(?<!\\?)\\?(?!(\\d+|\\?))");
@@ -232,6 +245,45 @@ public class Query<T extends Model> {
     return this;
   }
 
+  /**
+   * Set the number of records processed at a time by batched {@link #update(Map, User)}, {@link
+   * #delete()} and {@link #remove()} operations.
+   *
+   * @param size the batch size
+   * @return the same query instance
+   */
+  public Query<T> batchSize(int size) {
+    this.batchSize = size > 0 ? size : DEFAULT_BATCH_SIZE;
+    return this;
+  }
+
+  /**
+   * Commit the current transaction after each batch of {@link #update(Map, User)}, {@link
+   * #delete()} and {@link #remove()} operations.
+   *
+   * <p>This keeps locks and undo log small on huge mass updates but the operation is not atomic
+   * anymore. When enabled, the records are always processed in batches.
+   *
+   * @param commit whether to commit after each batch
+   * @return the same query instance
+   */
+  public Query<T> batchCommit(boolean commit) {
+    this.batchCommit = commit;
+    return this;
+  }
+
+  /**
+   * Set a callback notified with the total number of records processed after each batch of {@link
+   * #update(Map, User)}, {@link #delete()} and {@link #remove()} operations.
+   *
+   * @param progress the progress callback
+   * @return the same query instance
+   */
+  public Query<T> batchProgress(LongConsumer progress) {
+    this.batchProgress = progress;
+    return this;
+  }
+
   /**
    * Fetch all the matched records as {@link Stream}.
    *
@@ -475,7 +527,7 @@ public class Query<T extends Model> {
 
     selectQuery = selectQuery.replaceAll("\\bself", "that");
 
-    if (notMySQL) {
+    if (notMySQL && !batchCommit) {
       return QueryBinder.of(
               em().createQuery(updateQuery(params, versioned, "self.id IN (" + selectQuery + ")")))
           .bind(namedParams, this.params)
@@ -486,28 +538,14 @@ public class Query<T extends Model> {
     // MySQL doesn't allow sub select on same table with UPDATE also, JPQL doesn't
     // support JOIN with UPDATE query so we have to update in batch.
 
-    String updateQuery = updateQuery(params, versioned, "self.id IN (:ids)");
-
-    int count = 0;
-    int limit = 1000;
-
-    TypedQuery<Long> sq = em().createQuery(selectQuery, Long.class);
-    javax.persistence.Query uq = em().createQuery(updateQuery);
+    TypedQuery<Long> sq = em().createQuery(keysetQuery(selectQuery, "that"), Long.class);
+    javax.persistence.Query uq =
+        em().createQuery(updateQuery(params, versioned, "self.id IN (:ids)"));
 
     QueryBinder.of(sq).bind(namedParams, this.params);
     QueryBinder.of(uq).bind(namedParams, this.params);
 
-    sq.setFirstResult(0);
-    sq.setMaxResults(limit);
-
-    List<Long> ids = sq.getResultList();
-    while (!ids.isEmpty()) {
-      uq.setParameter("ids", ids);
-      count += uq.executeUpdate();
-      ids = sq.getResultList();
-    }
-
-    return count;
+    return (int) executeInBatch(sq, uq);
   }
 
   /**
@@ -541,7 +579,7 @@ public class Query<T extends Model> {
             .replaceFirst(" ORDER BY.*", "")
             .replaceAll("\\bself", "that");
 
-    if (notMySQL) {
+    if (notMySQL && !batchCommit) {
       javax.persistence.Query q = em().createQuery(deleteQuery("self.id IN (" + selectQuery + ")"));
       this.bind(q);
       return q.executeUpdate();
@@ -550,39 +588,96 @@ public class Query<T extends Model> {
     // MySQL doesn't allow sub select on same table with DELETE also, JPQL doesn't
     // support JOIN with DELETE query so we have to update in batch.
 
-    TypedQuery<Long> sq = em().createQuery(selectQuery, Long.class);
+    TypedQuery<Long> sq = em().createQuery(keysetQuery(selectQuery, "that"), Long.class);
     javax.persistence.Query dq = em().createQuery(deleteQuery("self.id IN (:ids)"));
 
     this.bind(sq);
     this.bind(dq);
 
-    int count = 0;
-    int limit = 1000;
-
-    sq.setFirstResult(0);
-    sq.setMaxResults(limit);
-
-    List<Long> ids = sq.getResultList();
-    while (!ids.isEmpty()) {
-      dq.setParameter("ids", ids);
-      count += dq.executeUpdate();
-      ids = sq.getResultList();
-    }
-
-    return count;
+    return (int) executeInBatch(sq, dq);
   }
 
   /**
    * Remove all the matched records. <br>
    * <br>
    * In contrast to the {@link #delete()} method, it performs {@link EntityManager#remove(Object)}
-   * operation by fetching objects in pages (100 at a time).
+   * operation by fetching objects in batches (see {@link #batchSize(int)}). The changes are
+   * flushed after each batch, so the removed records don't stay in the persistence context. Other
+   * loaded entities stay managed, unless {@link #batchCommit(boolean)} is enabled, in which case
+   * the persistence context is also cleared after each committed batch.
    *
    * @see #delete()
    * @return total number of records removed.
    */
   public long remove() {
-    return fetchStream().peek(JPA::remove).count();
+    final String selectQuery = selectQuery().replaceFirst(" ORDER BY.*", "");
+    final TypedQuery<T> query = em().createQuery(keysetQuery(selectQuery, "self"), beanClass);
+    this.bind(query);
+
+    long count = 0;
+    long last = Long.MIN_VALUE;
+
+    List<T> items = nextBatch(query, last);
+    while (!items.isEmpty()) {
+      for (T item : items) {
+        JPA.remove(item);
+      }
+      count += items.size();
+      last = items.get(items.size() - 1).getId();
+
+      em().flush();
+      if (batchCommit) {
+        em().clear();
+      }
+      afterBatch(count);
+
+      items = items.size() < batchSize ? Collections.emptyList() : nextBatch(query, last);
+    }
+
+    return count;
+  }
+
+  private String keysetQuery(String selectQuery, String alias) {
+    final String keyset = alias + ".id > :_lastId";
+    final String query =
+        selectQuery.contains(" WHERE ")
+            ? selectQuery.replaceFirst("(?s) WHERE (.*)$", " WHERE ($1) AND " + keyset)
+            : selectQuery + " WHERE " + keyset;
+    return query + " ORDER BY " + alias + ".id";
+  }
+
+  private <R> List<R> nextBatch(TypedQuery<R> query, long last) {
+    query.setParameter("_lastId", last);
+    query.setMaxResults(batchSize);
+    return query.getResultList();
+  }
+
+  private long executeInBatch(TypedQuery<Long> selectQuery, javax.persistence.Query mutation) {
+    long count = 0;
+    List<Long> ids = nextBatch(selectQuery, Long.MIN_VALUE);
+    while (!ids.isEmpty()) {
+      mutation.setParameter("ids", ids);
+      count += mutation.executeUpdate();
+      afterBatch(count);
+      ids =
+          ids.size() < batchSize
+              ? Collections.emptyList()
+              : nextBatch(selectQuery, ids.get(ids.size() - 1));
+    }
+    return count;
+  }
+
+  private void afterBatch(long count) {
+    if (batchCommit) {
+      final EntityTransaction txn = em().getTransaction();
+      if (txn.isActive()) {
+        txn.commit();
+        txn.begin();
+      }
+    }
+    if (batchProgress != null) {
+      batchProgress.accept(count);
+    }
   }
 
   protected String selectQuery() {
@@ -701,6 +796,8 @@ public class Query<T extends Model> {
     private String query;
     private Mapper mapper = Mapper.of(beanClass);
 
+    private static final int COLLECTIONS_BATCH_SIZE = 500;
+
     private Selector(String... names) {
       List<String> selects = Lists.newArrayList();
       selects.add("self.id");
@@ -782,6 +879,32 @@ public class Query<T extends Model> {
       return q.getResultList();
     }
 
+    /**
+     * Fetch the selected values as {@link Stream} using a scrollable cursor.
+     *
+     * <p>Unlike {@link #values(int, int)}, the rows are not paged with offsets but read from a
+     * single cursor, so it's suitable for processing large result sets, for example, data export.
+     * The stream should be closed after use.
+     *
+     * @param limit the limit, or zero to read all the matched rows
+     * @param fetchSize the jdbc fetch size, or zero to use <code>hibernate.jdbc.fetch_size</code>
+     * @return stream of selected values
+     */
+    @SuppressWarnings("all")
+    public Stream<List> valuesStream(int limit, int fetchSize) {
+      final org.hibernate.query.Query<List> q =
+          (org.hibernate.query.Query<List>) em().createQuery(query);
+      if (limit > 0) {
+        q.setMaxResults(limit);
+      }
+      q.setFetchSize(fetchSize > 0 ? fetchSize : DBHelper.getJdbcFetchSize());
+
+      final QueryBinder binder = bind(q).opts(false, flushMode);
+      binder.setReadOnly();
+
+      return q.stream();
+    }
+
     @SuppressWarnings("all")
     public List<Map> fetch(int limit, int offset) {
 
@@ -803,12 +926,13 @@ public class Query<T extends Model> {
           }
           map.put(name, value);
         }
-        if (collections.size() > 0) {
-          map.putAll(this.fetchCollections(items.get(0)));
-        }
         result.add(map);
       }
 
+      if (collections.size() > 0 && result.size() > 0) {
+        this.fetchCollections(result);
+      }
+
       return result;
     }
 
@@ -827,21 +951,60 @@ public class Query<T extends Model> {
       return value;
     }
 
+    /**
+     * Fetch the selected collection fields of all the given records at once, instead of loading
+     * the collections of each record separately.
+     */
     @SuppressWarnings("all")
-    private Map<String, List> fetchCollections(Object id) {
-      Map<String, List> result = Maps.newHashMap();
-      Object self = JPA.em().find(beanClass, id);
+    private void fetchCollections(List<Map> records) {
+      final Map<Object, Map> byId = new LinkedHashMap<>();
+      for (Map record : records) {
+        byId.put(record.get("id"), record);
+      }
+      final List<Object> allIds = new ArrayList<>(byId.keySet());
       for (String name : collections) {
-        Collection<Model> items = (Collection<Model>) mapper.get(self, name);
-        if (items != null) {
-          List<Object> all = Lists.newArrayList();
-          for (Model obj : items) {
-            all.add(Resource.toMapCompact(obj));
+        for (Map record : records) {
+          record.put(name, Lists.newArrayList());
+        }
+        final String jpql =
+            String.format(
+                "SELECT self.id, _item FROM %s self JOIN self.%s _item "
+                    + "WHERE self.id IN (:ids) ORDER BY %s",
+                beanClass.getSimpleName(), name, collectionOrder(name));
+        for (List<Object> ids : Lists.partition(allIds, COLLECTIONS_BATCH_SIZE)) {
+          final javax.persistence.Query q = em().createQuery(jpql);
+          q.setParameter("ids", ids);
+          QueryBinder.of(q).opts(cacheable, flushMode).setReadOnly(readOnly);
+          for (Object row : q.getResultList()) {
+            final Object[] values = (Object[]) row;
+            final Map record = byId.get(values[0]);
+            ((List) record.get(name)).add(Resource.toMapCompact(values[1]));
           }
-          result.put(name, all);
         }
       }
-      return result;
+    }
+
+    private String collectionOrder(String name) {
+      for (Class<?> klass = beanClass; klass != null; klass = klass.getSuperclass()) {
+        final Field field;
+        try {
+          field = klass.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+          continue;
+        }
+        final OrderBy orderBy = field.getAnnotation(OrderBy.class);
+        if (orderBy == null || StringUtils.isBlank(orderBy.value())) {
+          break;
+        }
+        return Splitter.on(",")
+            .trimResults()
+            .omitEmptyStrings()
+            .splitToList(orderBy.value())
+            .stream()
+            .map(spec -> "_item." + spec)
+            .collect(Collectors.joining(", "));
+      }
+      return "_item.id";
     }
 
     @Override
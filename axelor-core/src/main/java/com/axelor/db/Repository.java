@@ -120,4 +120,20 @@ public interface Repository<T extends Model> {
    * @return the json map itself
    */
   Map<String, Object> populate(Map<String, Object> json, Map<String, Object> context);
+
+  /**
+   * Populate the given list of json maps with additional data.
+   *
+   * <p>This method is called with all the records of a page before returning them as response, so
+   * that the additional data can be fetched for all of them at once. The json maps in the list can
+   * be replaced.
+   *
+   * <p>By default, each json map is populated with {@link #populate(Map, Map)}.
+   *
+   * @param records the json maps to populate
+   * @param context the context
+   */
+  default void populate(List<Map<String, Object>> records, Map<String, Object> context) {
+    records.replaceAll(json -> populate(json, context));
+  }
 }
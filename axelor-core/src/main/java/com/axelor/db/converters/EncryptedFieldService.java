@@ -17,21 +17,30 @@
  */
 package com.axelor.db.converters;
 
+import com.axelor.app.AppSettings;
 import com.axelor.db.JPA;
-import com.axelor.db.Model;
-import com.axelor.db.Query;
-import com.axelor.db.QueryBinder;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
 import com.axelor.db.mapper.PropertyType;
-import com.google.inject.persist.Transactional;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
-import javax.persistence.FlushModeType;
-import javax.persistence.TypedQuery;
+import javax.persistence.PersistenceException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,19 +64,78 @@ import org.slf4j.LoggerFactory;
  *   <li><code>encryption.algorithm</code> the new algorithm, empty if want to use default
  *   <li><code>encryption.password</code> the new password (required)
  * </ul>
+ *
+ * <p>The records are read in chunks of <code>encryption.migrate.batch-size</code> rows by id
+ * order, encrypted with <code>encryption.migrate.threads</code> parallel threads and written back
+ * with JDBC batch updates. The last migrated id is saved in the <code>encryption_checkpoint</code>
+ * table in the same transaction as the chunk, so an interrupted migration resumes from there. The
+ * table is dropped once the migration is completed.
  */
 public class EncryptedFieldService {
 
   private static final Logger LOG = LoggerFactory.getLogger(EncryptedFieldService.class);
 
-  @Transactional
+  private static final int BATCH_SIZE =
+      AppSettings.get().getInt("encryption.migrate.batch-size", 1000);
+
+  private static final int LARGE_BATCH_SIZE = 40;
+
+  private static final int THREADS =
+      AppSettings.get()
+          .getInt("encryption.migrate.threads", Runtime.getRuntime().availableProcessors());
+
+  private static final String CHECKPOINT_TABLE = "encryption_checkpoint";
+
+  /** Listener notified with the progress of the migration after each chunk. */
+  @FunctionalInterface
+  public static interface ProgressListener {
+
+    /**
+     * Called after a chunk of records is migrated.
+     *
+     * @param model the model being migrated
+     * @param done number of records migrated so far
+     * @param total total number of records to migrate
+     * @param rate number of records migrated per second
+     * @param eta estimated remaining time in seconds
+     */
+    void progress(Class<?> model, long done, long total, double rate, long eta);
+  }
+
+  private final EncryptedStringConverter stringConverter = new EncryptedStringConverter();
+  private final EncryptedBytesConverter bytesConverter = new EncryptedBytesConverter();
+
+  private ProgressListener listener;
+
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
   public void migrate() {
-    JPA.models().stream().forEach(this::migrate);
+    final ForkJoinPool pool = new ForkJoinPool(Math.max(1, THREADS));
+    final Set<String> migrated = new LinkedHashSet<>();
+    try {
+      prepareCheckpoints();
+      JPA.models().stream().forEach(model -> migrate(pool, migrated, model));
+      removeCheckpoints(migrated);
+    } finally {
+      pool.shutdown();
+    }
   }
 
-  @SuppressWarnings("all")
-  @Transactional
   public void migrate(Class<?> model, String... fields) {
+    final ForkJoinPool pool = new ForkJoinPool(Math.max(1, THREADS));
+    final Set<String> migrated = new LinkedHashSet<>();
+    try {
+      prepareCheckpoints();
+      migrate(pool, migrated, model, fields);
+      removeCheckpoints(migrated);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void migrate(ForkJoinPool pool, Set<String> migrated, Class<?> model, String... fields) {
     final Mapper mapper = Mapper.of(model);
     final List<Property> encrypted = new ArrayList<>();
 
@@ -80,51 +148,323 @@ public class EncryptedFieldService {
           .forEach(encrypted::add);
     }
 
-    if (encrypted.isEmpty()) {
+    final AbstractEntityPersister persister =
+        (AbstractEntityPersister)
+            JPA.em()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getMetamodel()
+                .entityPersister(model);
+
+    // the columns are owned by the mapped tables, a column shared by the models of an hierarchy
+    // (single table, or parent table of joined inheritance) is migrated once
+    final Map<String, List<Property>> tables = new LinkedHashMap<>();
+    for (Property property : encrypted) {
+      final String table = persister.getPropertyTableName(property.getName());
+      final String column = persister.getPropertyColumnNames(property.getName())[0];
+      if (migrated.add(table + ":" + column)) {
+        tables.computeIfAbsent(table, k -> new ArrayList<>()).add(property);
+      }
+    }
+
+    if (tables.isEmpty()) {
       return;
     }
 
-    boolean hasLarge =
-        encrypted
+    LOG.info("Updating: {}", model.getName());
+
+    for (Map.Entry<String, List<Property>> entry : tables.entrySet()) {
+      migrate(pool, model, persister, entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void migrate(
+      ForkJoinPool pool,
+      Class<?> model,
+      AbstractEntityPersister persister,
+      String table,
+      List<Property> properties) {
+
+    final String idColumn = persister.getIdentifierColumnNames()[0];
+    final List<String> columns =
+        properties
+            .stream()
+            .map(p -> persister.getPropertyColumnNames(p.getName())[0])
+            .collect(Collectors.toList());
+    final boolean[] binary = new boolean[properties.size()];
+    for (int i = 0; i < binary.length; i++) {
+      binary[i] = properties.get(i).getType() == PropertyType.BINARY;
+    }
+
+    final boolean hasLarge =
+        properties
             .stream()
             .map(Property::getType)
             .anyMatch(t -> t == PropertyType.BINARY || t == PropertyType.TEXT);
 
-    List<String> names = encrypted.stream().map(Property::getName).collect(Collectors.toList());
+    final String selectSql =
+        String.format(
+            "SELECT %s, %s FROM %s WHERE %s > ? ORDER BY %s",
+            idColumn, String.join(", ", columns), table, idColumn, idColumn);
+    final String updateSql =
+        String.format(
+            "UPDATE %s SET %s WHERE %s = ?",
+            table,
+            columns.stream().map(c -> c + " = ?").collect(Collectors.joining(", ")),
+            idColumn);
+    final String countSql =
+        String.format("SELECT COUNT(%s) FROM %s WHERE %s > ?", idColumn, table, idColumn);
 
-    StringBuilder sb =
-        new StringBuilder("SELECT ")
-            .append("new Map(self.id as id,")
-            .append(
-                names.stream().map(n -> "self." + n + " as " + n).collect(Collectors.joining(", ")))
-            .append(") FROM ")
-            .append(model.getSimpleName())
-            .append(" self");
+    final String checkpointKey = table + ":" + String.join(",", columns);
+    final int limit = hasLarge ? Math.min(LARGE_BATCH_SIZE, BATCH_SIZE) : BATCH_SIZE;
 
-    TypedQuery<Map> selectQuery = JPA.em().createQuery(sb.toString(), Map.class);
-    TypedQuery<Long> countQuery =
-        JPA.em().createQuery("SELECT COUNT(m.id) FROM " + model.getName() + " m", Long.class);
+    long last = loadCheckpoint(checkpointKey);
+    if (last == Long.MAX_VALUE) {
+      LOG.info("Already migrated: {}", checkpointKey);
+      return;
+    }
+    if (last > Long.MIN_VALUE) {
+      LOG.info("Resuming {} after id: {}", table, last);
+    }
 
-    QueryBinder.of(selectQuery).setFlushMode(FlushModeType.COMMIT);
-    QueryBinder.of(countQuery).setFlushMode(FlushModeType.COMMIT);
+    final long total = count(countSql, last);
+    final long started = System.currentTimeMillis();
 
-    Query<?> updater =
-        Query.of(model.asSubclass(Model.class)).filter("self.id = :id").autoFlush(false);
+    LOG.info("Records: {}", total);
 
-    long count = (Long) countQuery.getSingleResult();
-    long offset = 0;
-    int limit = hasLarge ? 40 : 1000;
+    long done = 0;
+    List<Object[]> rows = fetch(selectSql, last, limit, binary);
+    while (!rows.isEmpty()) {
+      final List<Object[]> chunk = rows;
+      try {
+        pool.submit(() -> chunk.parallelStream().forEach(row -> convert(row, binary))).get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new PersistenceException(e);
+      }
 
-    LOG.info("Updating: {}", model.getName());
-    LOG.info("Records: {}", count);
-
-    selectQuery.setMaxResults(limit);
-    while (offset < count) {
-      selectQuery.setFirstResult((int) offset);
-      List<Map> values = selectQuery.getResultList();
-      LOG.info("Records from: {} to {}", offset, Math.min(count, (offset + limit)));
-      offset += limit;
-      values.forEach(map -> updater.bind("id", map.remove("id")).update(map));
+      last = (Long) chunk.get(chunk.size() - 1)[0];
+      update(updateSql, chunk, binary, checkpointKey, last);
+      done += chunk.size();
+
+      final double elapsed = Math.max(1, System.currentTimeMillis() - started) / 1000.0;
+      final double rate = done / elapsed;
+      final long eta = rate > 0 ? (long) (Math.max(0, total - done) / rate) : -1;
+
+      LOG.info("Records done: {}/{} ({} rows/s, ETA {}s)", done, total, (long) rate, eta);
+      if (listener != null) {
+        listener.progress(model, done, total, rate, eta);
+      }
+
+      rows = chunk.size() < limit ? new ArrayList<>() : fetch(selectSql, last, limit, binary);
+    }
+
+    // completed, not migrated again if the migration of another table is resumed
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(connection -> saveCheckpoint(connection, checkpointKey, Long.MAX_VALUE)));
+  }
+
+  private void convert(Object[] row, boolean[] binary) {
+    for (int i = 1; i < row.length; i++) {
+      if (row[i] == null) {
+        continue;
+      }
+      if (binary[i - 1]) {
+        final byte[] value = bytesConverter.convertToEntityAttribute((byte[]) row[i]);
+        row[i] = bytesConverter.convertToDatabaseColumn(value);
+      } else {
+        final String value = stringConverter.convertToEntityAttribute((String) row[i]);
+        row[i] = stringConverter.convertToDatabaseColumn(value);
+      }
+    }
+  }
+
+  private long count(String sql, long last) {
+    final long[] count = {0};
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setLong(1, last);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                      if (rs.next()) {
+                        count[0] = rs.getLong(1);
+                      }
+                    }
+                  }
+                }));
+    return count[0];
+  }
+
+  private List<Object[]> fetch(String sql, long last, int limit, boolean[] binary) {
+    final List<Object[]> rows = new ArrayList<>();
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setLong(1, last);
+                    stmt.setMaxRows(limit);
+                    stmt.setFetchSize(limit);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                      while (rs.next()) {
+                        final Object[] row = new Object[binary.length + 1];
+                        row[0] = rs.getLong(1);
+                        for (int i = 0; i < binary.length; i++) {
+                          row[i + 1] = binary[i] ? rs.getBytes(i + 2) : rs.getString(i + 2);
+                        }
+                        rows.add(row);
+                      }
+                    }
+                  }
+                }));
+    return rows;
+  }
+
+  private void update(
+      String sql, List<Object[]> rows, boolean[] binary, String checkpointKey, long last) {
+    // the checkpoint is saved with the chunk, a chunk is never migrated twice
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (Object[] row : rows) {
+                      for (int i = 0; i < binary.length; i++) {
+                        if (binary[i]) {
+                          stmt.setBytes(i + 1, (byte[]) row[i + 1]);
+                        } else {
+                          stmt.setString(i + 1, (String) row[i + 1]);
+                        }
+                      }
+                      stmt.setLong(binary.length + 1, (Long) row[0]);
+                      stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                  }
+                  saveCheckpoint(connection, checkpointKey, last);
+                }));
+  }
+
+  private boolean hasCheckpoints(Connection connection) throws SQLException {
+    final DatabaseMetaData meta = connection.getMetaData();
+    for (String name : new String[] {CHECKPOINT_TABLE, CHECKPOINT_TABLE.toUpperCase()}) {
+      try (ResultSet rs = meta.getTables(null, null, name, new String[] {"TABLE"})) {
+        if (rs.next()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void prepareCheckpoints() {
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  if (hasCheckpoints(connection)) {
+                    return;
+                  }
+                  try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate(
+                        "CREATE TABLE "
+                            + CHECKPOINT_TABLE
+                            + " (checkpoint_key VARCHAR(255) NOT NULL PRIMARY KEY,"
+                            + " last_id BIGINT NOT NULL)");
+                  }
+                }));
+  }
+
+  /** Remove the checkpoints of the given table columns, and the table if no checkpoint is left. */
+  private void removeCheckpoints(Set<String> migrated) {
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt =
+                      connection.prepareStatement(
+                          "SELECT checkpoint_key FROM " + CHECKPOINT_TABLE)) {
+                    final List<String> keys = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery()) {
+                      while (rs.next()) {
+                        keys.add(rs.getString(1));
+                      }
+                    }
+                    for (String key : keys) {
+                      if (isCompleted(key, migrated)) {
+                        deleteCheckpoint(connection, key);
+                      }
+                    }
+                  }
+                  final String countSql = "SELECT COUNT(*) FROM " + CHECKPOINT_TABLE;
+                  try (Statement stmt = connection.createStatement();
+                      ResultSet rs = stmt.executeQuery(countSql)) {
+                    if (rs.next() && rs.getLong(1) > 0) {
+                      return;
+                    }
+                  }
+                  try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("DROP TABLE " + CHECKPOINT_TABLE);
+                  }
+                }));
+  }
+
+  private static boolean isCompleted(String key, Set<String> migrated) {
+    // key is the table followed by its migrated columns
+    final String[] parts = key.split(":", 2);
+    return parts.length == 2
+        && Arrays.stream(parts[1].split(",")).allMatch(c -> migrated.contains(parts[0] + ":" + c));
+  }
+
+  private void deleteCheckpoint(Connection connection, String key) throws SQLException {
+    try (PreparedStatement stmt =
+        connection.prepareStatement(
+            "DELETE FROM " + CHECKPOINT_TABLE + " WHERE checkpoint_key = ?")) {
+      stmt.setString(1, key);
+      stmt.executeUpdate();
+    }
+  }
+
+  private long loadCheckpoint(String key) {
+    final long[] last = {Long.MIN_VALUE};
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt =
+                      connection.prepareStatement(
+                          "SELECT last_id FROM "
+                              + CHECKPOINT_TABLE
+                              + " WHERE checkpoint_key = ?")) {
+                    stmt.setString(1, key);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                      if (rs.next()) {
+                        last[0] = rs.getLong(1);
+                      }
+                    }
+                  }
+                }));
+    return last[0];
+  }
+
+  private void saveCheckpoint(Connection connection, String key, long last) throws SQLException {
+    try (PreparedStatement stmt =
+        connection.prepareStatement(
+            "UPDATE " + CHECKPOINT_TABLE + " SET last_id = ? WHERE checkpoint_key = ?")) {
+      stmt.setLong(1, last);
+      stmt.setString(2, key);
+      if (stmt.executeUpdate() > 0) {
+        return;
+      }
+    }
+    try (PreparedStatement stmt =
+        connection.prepareStatement(
+            "INSERT INTO " + CHECKPOINT_TABLE + " (checkpoint_key, last_id) VALUES (?, ?)")) {
+      stmt.setString(1, key);
+      stmt.setLong(2, last);
+      stmt.executeUpdate();
     }
   }
 }
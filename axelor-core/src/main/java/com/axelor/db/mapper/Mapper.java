@@ -36,6 +36,11 @@ import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -47,7 +52,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -71,6 +78,8 @@ public class Mapper {
   private Map<String, Method> setters = new HashMap<>(); // field -> setter
   private Map<String, String> methods = new HashMap<>(); // getter/setter/compute -> field
 
+  private Map<String, Function<Object, Object>> accessors = new ConcurrentHashMap<>();
+
   private Map<String, Class<?>> types = new HashMap<>();
   private Map<String, Property> fields = new HashMap<>();
 
@@ -314,6 +323,60 @@ public class Mapper {
     return getters.get(name);
   }
 
+  /**
+   * Get the compiled accessor of the given property.
+   *
+   * <p>The accessor is generated once from the getter method so that applying it doesn't use
+   * reflection. Like {@link #get(Object, String)}, it returns <code>null</code> if the getter
+   * fails.
+   *
+   * @param name name of the property
+   * @return accessor function or null if property is write-only
+   */
+  public Function<Object, Object> getAccessor(String name) {
+    final Method getter = getters.get(name);
+    if (getter == null) {
+      return null;
+    }
+    return accessors.computeIfAbsent(name, key -> accessor(getter));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Function<Object, Object> accessor(Method getter) {
+    Function<Object, Object> function;
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      final MethodHandle handle = lookup.unreflect(getter);
+      final CallSite site =
+          LambdaMetafactory.metafactory(
+              lookup,
+              "apply",
+              MethodType.methodType(Function.class),
+              MethodType.methodType(Object.class, Object.class),
+              handle,
+              handle.type().wrap());
+      function = (Function<Object, Object>) site.getTarget().invoke();
+    } catch (Throwable e) {
+      // class not visible from here, fallback to reflection
+      function =
+          bean -> {
+            try {
+              return getter.invoke(bean, NULL_ARGUMENTS);
+            } catch (Exception ex) {
+              return null;
+            }
+          };
+    }
+    final Function<Object, Object> target = function;
+    return bean -> {
+      try {
+        return target.apply(bean);
+      } catch (Exception e) {
+        return null;
+      }
+    };
+  }
+
   /**
    * Get the setter method of the given property.
    *
@@ -59,4 +59,14 @@ public interface TenantConfig {
 
   /** The JDBC password for the tenant. */
   String getJdbcPassword();
+
+  /** The maximum number of pooled connections for the tenant, null to use the default. */
+  default Integer getPoolMaxSize() {
+    return null;
+  }
+
+  /** The minimum number of idle pooled connections for the tenant, null to use the default. */
+  default Integer getPoolMinIdle() {
+    return null;
+  }
 }
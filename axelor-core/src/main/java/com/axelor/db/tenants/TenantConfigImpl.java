@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,6 +55,8 @@ import java.util.regex.Pattern;
  * db.company2.url = jdbc:postgresql://localhost:5432/axelor-db2
  * db.company2.user = axelor
  * db.company2.password =
+ * db.company2.pool.max_size = 5
+ * db.company2.pool.min_idle = 1
  * </pre>
  *
  * <p>The format of key name is <code>db.[tenant-id].[config-name]</code>
@@ -74,12 +78,33 @@ public class TenantConfigImpl implements TenantConfig {
   private String jdbcUser;
   private String jdbcPassword;
 
+  private Integer poolMaxSize;
+  private Integer poolMinIdle;
+
   private static final Pattern PATTERN_DB_NAME = Pattern.compile("db\\.(.*?)\\.name");
 
   private static final Map<String, TenantConfig> CONFIGS = new ConcurrentHashMap<>();
 
   private TenantConfigImpl() {}
 
+  /**
+   * Find the identifiers of all the configured tenants.
+   *
+   * @param props the application settings
+   * @return the tenant identifiers, including the default tenant
+   */
+  public static Set<String> findIds(Properties props) {
+    final Set<String> ids = new TreeSet<>();
+    ids.add(DEFAULT_TENANT_ID);
+    for (String key : props.stringPropertyNames()) {
+      Matcher matcher = PATTERN_DB_NAME.matcher(key);
+      if (matcher.matches()) {
+        ids.add(matcher.group(1));
+      }
+    }
+    return ids;
+  }
+
   public static List<TenantConfig> findByHost(Properties props, String host) {
     final List<TenantConfig> all = new ArrayList<>();
     for (String key : props.stringPropertyNames()) {
@@ -132,6 +157,9 @@ public class TenantConfigImpl implements TenantConfig {
     cfg.jdbcUser = get(props, prefix, "user");
     cfg.jdbcPassword = get(props, prefix, "password");
 
+    cfg.poolMaxSize = getInt(props, prefix, "pool.max_size");
+    cfg.poolMinIdle = getInt(props, prefix, "pool.min_idle");
+
     if (cfg.jndiDataSource == null && (cfg.jdbcDriver == null || cfg.jdbcUrl == null)) {
       return null;
     }
@@ -153,6 +181,15 @@ public class TenantConfigImpl implements TenantConfig {
     return StringUtils.isBlank(val) ? null : val;
   }
 
+  private static Integer getInt(Properties props, String prefix, String name) {
+    String val = get(props, prefix, name);
+    try {
+      return val == null ? null : Integer.valueOf(val.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
   @Override
   public Boolean getActive() {
     return active;
@@ -208,6 +245,16 @@ public class TenantConfigImpl implements TenantConfig {
     return jdbcPassword;
   }
 
+  @Override
+  public Integer getPoolMaxSize() {
+    return poolMaxSize;
+  }
+
+  @Override
+  public Integer getPoolMinIdle() {
+    return poolMinIdle;
+  }
+
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
@@ -216,6 +263,8 @@ public class TenantConfigImpl implements TenantConfig {
         .add("jndiDataSource", jndiDataSource)
         .add("jdbcDriver", jdbcDriver)
         .add("jdbcUrl", jdbcUrl)
+        .add("poolMaxSize", poolMaxSize)
+        .add("poolMinIdle", poolMinIdle)
         .omitNullValues()
         .toString();
   }
@@ -17,11 +17,22 @@
  */
 package com.axelor.db.tenants;
 
+import com.axelor.app.AppSettings;
 import com.google.common.base.Preconditions;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.sql.DataSource;
 import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
 import org.hibernate.service.spi.ServiceRegistryAwareService;
@@ -30,7 +41,14 @@ import org.hibernate.service.spi.Stoppable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** The tenant connection provider. */
+/**
+ * The tenant connection provider.
+ *
+ * <p>Each tenant gets its own connection pool, sized from the {@link TenantConfig}. The pools are
+ * created lazily, share an optional global connection budget and are closed when they stay unused
+ * for long, least recently used first. A pool is never closed while a connection is being obtained
+ * from it or is in use.
+ */
 public class TenantConnectionProvider
     extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl
     implements ServiceRegistryAwareService, Stoppable {
@@ -39,15 +57,68 @@ public class TenantConnectionProvider
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TenantConnectionProvider.class);
 
+  private static final int DEFAULT_POOL_MAX_SIZE = 10;
+  private static final int DEFAULT_POOL_MIN_IDLE = 1;
+  private static final int DEFAULT_IDLE_TIMEOUT = 1800;
+
+  private static final long EVICTION_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
   private TenantConfigProvider configProvider;
 
-  private Map<String, DataSource> dataSourceMap;
+  private int maxConnections;
+
+  private long idleTimeout;
+
+  private volatile long lastEviction = System.currentTimeMillis();
+
+  private final Map<String, TenantPool> pools = new ConcurrentHashMap<>();
+
+  private static final class TenantPool {
+
+    private final HikariDataSource dataSource;
+    private final int maxSize;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    // number of callers about to get a connection, -1 once evicted
+    private final AtomicInteger users = new AtomicInteger();
+
+    private TenantPool(HikariDataSource dataSource) {
+      this.dataSource = dataSource;
+      this.maxSize = dataSource.getMaximumPoolSize();
+    }
+
+    private boolean isBusy() {
+      final HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+      return bean != null
+          && (bean.getActiveConnections() > 0 || bean.getThreadsAwaitingConnection() > 0);
+    }
+
+    private boolean acquire() {
+      int count;
+      do {
+        count = users.get();
+        if (count < 0) {
+          return false;
+        }
+      } while (!users.compareAndSet(count, count + 1));
+      return true;
+    }
 
-  private Map<String, DataSource> dataSourceMap() {
-    if (dataSourceMap == null) {
-      dataSourceMap = new ConcurrentHashMap<String, DataSource>();
+    private void release() {
+      users.decrementAndGet();
+    }
+
+    private boolean evict() {
+      if (!users.compareAndSet(0, -1)) {
+        return false;
+      }
+      // a connection may have been obtained and released since last checked
+      if (isBusy()) {
+        users.set(0);
+        return false;
+      }
+      return true;
     }
-    return dataSourceMap;
   }
 
   @Override
@@ -57,29 +128,92 @@ public class TenantConnectionProvider
 
   @Override
   protected final DataSource selectDataSource(String tenantIdentifier) {
-    if (configProvider.find(tenantIdentifier) == null) {
-      dataSourceMap().remove(tenantIdentifier);
+    return findPool(tenantIdentifier).dataSource;
+  }
+
+  @Override
+  public Connection getConnection(String tenantIdentifier) throws SQLException {
+    // the pool can't be evicted until the connection is obtained
+    final TenantPool pool = acquire(tenantIdentifier);
+    try {
+      return pool.dataSource.getConnection();
+    } finally {
+      pool.release();
+    }
+  }
+
+  private TenantPool acquire(String tenantIdentifier) {
+    TenantPool pool = findPool(tenantIdentifier);
+    while (!pool.acquire()) {
+      // evicted meanwhile, find the new pool
+      pool = findPool(tenantIdentifier);
+    }
+    return pool;
+  }
+
+  private TenantPool findPool(String tenantIdentifier) {
+    final TenantConfig config = configProvider.find(tenantIdentifier);
+    if (config == null) {
+      // a busy pool is closed later, once idle
+      final TenantPool pool = pools.get(tenantIdentifier);
+      if (pool != null && pool.evict()) {
+        pools.remove(tenantIdentifier, pool);
+        close(tenantIdentifier, pool);
+      }
       LOGGER.debug("no such tenant found: {}", tenantIdentifier);
       throw new TenantNotFoundException("No such tenant found: " + tenantIdentifier);
     }
-    DataSource dataSource = dataSourceMap().get(tenantIdentifier);
     LOGGER.debug("using tenant: {}", tenantIdentifier);
-    if (dataSource == null) {
-      dataSource = createDataSource(validate(configProvider.find(tenantIdentifier)));
-      dataSourceMap().put(tenantIdentifier, dataSource);
+    TenantPool pool = pools.get(tenantIdentifier);
+    if (pool == null) {
+      pool = createPool(tenantIdentifier, validate(config));
+    }
+    pool.lastUsed = System.currentTimeMillis();
+    if (pool.lastUsed - lastEviction > EVICTION_INTERVAL) {
+      evictIdle();
     }
-    return dataSource;
+    return pool;
   }
 
-  private DataSource createDataSource(TenantConfig config) {
+  private synchronized TenantPool createPool(String tenantId, TenantConfig config) {
+    TenantPool pool = pools.get(tenantId);
+    if (pool != null && pool.users.get() >= 0) {
+      return pool;
+    }
+
+    int maxSize = config.getPoolMaxSize() == null ? DEFAULT_POOL_MAX_SIZE : config.getPoolMaxSize();
+    if (maxConnections > 0) {
+      int available = maxConnections - reserved();
+      while (available < maxSize && evictLeastRecentlyUsed()) {
+        available = maxConnections - reserved();
+      }
+      if (available <= 0) {
+        throw new IllegalStateException(
+            "Connection limit reached, unable to create connection pool for tenant: " + tenantId);
+      }
+      maxSize = Math.min(maxSize, available);
+    }
+
+    pool = new TenantPool(createDataSource(tenantId, config, maxSize));
+    pools.put(tenantId, pool);
+    return pool;
+  }
+
+  private HikariDataSource createDataSource(String tenantId, TenantConfig config, int maxSize) {
     LOGGER.debug("creating datasource for tenant config: {}", config);
     final HikariConfig hc = new HikariConfig();
+    hc.setPoolName("tenant-" + tenantId);
     hc.setDataSourceJNDI(config.getJndiDataSource());
     hc.setDriverClassName(config.getJdbcDriver());
     hc.setJdbcUrl(config.getJdbcUrl());
     hc.setUsername(config.getJdbcUser());
     hc.setPassword(config.getJdbcPassword());
     hc.setAutoCommit(false);
+    hc.setMaximumPoolSize(maxSize);
+    hc.setMinimumIdle(
+        Math.min(
+            maxSize,
+            config.getPoolMinIdle() == null ? DEFAULT_POOL_MIN_IDLE : config.getPoolMinIdle()));
     return new HikariDataSource(hc);
   }
 
@@ -93,17 +227,99 @@ public class TenantConnectionProvider
     return config;
   }
 
+  private int reserved() {
+    return pools.values().stream().mapToInt(pool -> pool.maxSize).sum();
+  }
+
+  private boolean evictLeastRecentlyUsed() {
+    final Optional<Map.Entry<String, TenantPool>> found =
+        pools
+            .entrySet()
+            .stream()
+            .filter(e -> !TenantConfig.DEFAULT_TENANT_ID.equals(e.getKey()))
+            .filter(e -> !e.getValue().isBusy())
+            .sorted(Comparator.comparingLong(e -> e.getValue().lastUsed))
+            .filter(e -> e.getValue().evict())
+            .findFirst();
+    if (found.isPresent()) {
+      final String tenantId = found.get().getKey();
+      final TenantPool pool = found.get().getValue();
+      pools.remove(tenantId, pool);
+      close(tenantId, pool);
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void evictIdle() {
+    final long now = System.currentTimeMillis();
+    if (now - lastEviction <= EVICTION_INTERVAL) {
+      return;
+    }
+    lastEviction = now;
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("tenant connection pools: {}", getPoolMetrics());
+    }
+    if (idleTimeout <= 0) {
+      return;
+    }
+    for (String tenantId : new ArrayList<>(pools.keySet())) {
+      final TenantPool pool = pools.get(tenantId);
+      if (pool != null
+          && now - pool.lastUsed > idleTimeout
+          && !TenantConfig.DEFAULT_TENANT_ID.equals(tenantId)
+          && pool.evict()) {
+        pools.remove(tenantId, pool);
+        close(tenantId, pool);
+      }
+    }
+  }
+
+  private void close(String tenantId, TenantPool pool) {
+    if (pool != null) {
+      LOGGER.debug("closing connection pool of tenant: {}", tenantId);
+      pool.dataSource.close();
+    }
+  }
+
+  /**
+   * Get the connection pool metrics of the tenants.
+   *
+   * @return map of tenant id to <code>active</code>, <code>idle</code>, <code>waiting</code> and
+   *     <code>total</code> connection counts
+   */
+  public Map<String, Map<String, Integer>> getPoolMetrics() {
+    final Map<String, Map<String, Integer>> metrics = new TreeMap<>();
+    for (Map.Entry<String, TenantPool> entry : pools.entrySet()) {
+      final HikariPoolMXBean bean = entry.getValue().dataSource.getHikariPoolMXBean();
+      if (bean == null) {
+        continue;
+      }
+      final Map<String, Integer> values = new LinkedHashMap<>();
+      values.put("active", bean.getActiveConnections());
+      values.put("idle", bean.getIdleConnections());
+      values.put("waiting", bean.getThreadsAwaitingConnection());
+      values.put("total", bean.getTotalConnections());
+      metrics.put(entry.getKey(), values);
+    }
+    return metrics;
+  }
+
   @Override
-  public void stop() {
-    if (dataSourceMap != null) {
-      dataSourceMap.clear();
-      dataSourceMap = null;
+  public synchronized void stop() {
+    for (String tenantId : new ArrayList<>(pools.keySet())) {
+      close(tenantId, pools.remove(tenantId));
     }
   }
 
   @Override
   public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+    final AppSettings settings = AppSettings.get();
     configProvider = TenantSupport.get().getConfigProvider();
+    maxConnections = settings.getInt(TenantModule.CONFIG_MULTI_TENANCY_MAX_CONNECTIONS, 0);
+    idleTimeout =
+        TimeUnit.SECONDS.toMillis(
+            settings.getInt(TenantModule.CONFIG_MULTI_TENANCY_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT));
     LOGGER.debug("using tenant config provider: {}", configProvider.getClass().getName());
   }
 }
@@ -25,6 +25,14 @@ public class TenantModule extends AbstractModule {
 
   public static final String CONFIG_MULTI_TENANCY = "application.multi_tenancy";
 
+  /** Maximum number of connections shared by all the tenant pools, 0 for no limit. */
+  public static final String CONFIG_MULTI_TENANCY_MAX_CONNECTIONS =
+      "application.multi_tenancy.max_connections";
+
+  /** Seconds after which the connection pool of an unused tenant is closed, 0 to keep it. */
+  public static final String CONFIG_MULTI_TENANCY_IDLE_TIMEOUT =
+      "application.multi_tenancy.idle_timeout";
+
   public static boolean isEnabled() {
     return AppSettings.get().getBoolean(CONFIG_MULTI_TENANCY, false);
   }
@@ -17,7 +17,12 @@
  */
 package com.axelor.db.tenants;
 
+import com.axelor.app.AppSettings;
+import com.axelor.inject.Beans;
+import com.google.inject.persist.UnitOfWork;
 import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** The tenant identifier resolver. */
 public class TenantResolver implements CurrentTenantIdentifierResolver {
@@ -25,6 +30,8 @@ public class TenantResolver implements CurrentTenantIdentifierResolver {
   static final ThreadLocal<String> CURRENT_HOST = new ThreadLocal<>();
   static final ThreadLocal<String> CURRENT_TENANT = new ThreadLocal<>();
 
+  private static final Logger log = LoggerFactory.getLogger(TenantResolver.class);
+
   private static boolean enabled;
 
   public TenantResolver() {
@@ -42,6 +49,43 @@ public class TenantResolver implements CurrentTenantIdentifierResolver {
     return tenant;
   }
 
+  /**
+   * Run the given task once for each configured tenant, with the tenant as current tenant.
+   *
+   * <p>This is used by background tasks, which have no tenant of their own. The task is run once as
+   * is if multi-tenancy is not enabled. The unit of work of the current thread is ended around
+   * each run, so that each tenant is accessed with its own entity manager. The failure of a tenant
+   * is logged and doesn't prevent running the task for the others.
+   *
+   * @param task the task to run
+   */
+  public static void forEachTenant(Runnable task) {
+    if (!TenantModule.isEnabled()) {
+      task.run();
+      return;
+    }
+    final UnitOfWork unitOfWork = Beans.get(UnitOfWork.class);
+    final String current = CURRENT_TENANT.get();
+    try {
+      for (String tenant : TenantConfigImpl.findIds(AppSettings.get().getProperties())) {
+        unitOfWork.end();
+        CURRENT_TENANT.set(tenant);
+        try {
+          task.run();
+        } catch (Exception e) {
+          log.error("Unable to run task for tenant {}", tenant, e);
+        }
+      }
+    } finally {
+      unitOfWork.end();
+      if (current == null) {
+        CURRENT_TENANT.remove();
+      } else {
+        CURRENT_TENANT.set(current);
+      }
+    }
+  }
+
   @Override
   public String resolveCurrentTenantIdentifier() {
     return currentTenantIdentifier();
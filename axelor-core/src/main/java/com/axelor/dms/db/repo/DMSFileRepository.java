@@ -22,6 +22,7 @@ import com.axelor.auth.db.Group;
 import com.axelor.auth.db.User;
 import com.axelor.common.Inflector;
 import com.axelor.db.EntityHelper;
+import com.axelor.db.JPA;
 import com.axelor.db.JpaRepository;
 import com.axelor.db.JpaSecurity;
 import com.axelor.db.JpaSecurity.AccessType;
@@ -40,6 +41,7 @@ import com.axelor.meta.db.MetaAttachment;
 import com.axelor.meta.db.MetaFile;
 import com.axelor.meta.db.repo.MetaAttachmentRepository;
 import com.axelor.rpc.Resource;
+import com.axelor.rpc.filter.Filter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
@@ -50,10 +52,17 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 import org.apache.shiro.authz.UnauthorizedException;
 
@@ -377,14 +386,7 @@ public class DMSFileRepository extends JpaRepository<DMSFile> {
       return json;
     }
 
-    boolean isFile = file.getIsDirectory() != Boolean.TRUE;
-    LocalDateTime dt = file.getUpdatedOn();
-    if (dt == null) {
-      dt = file.getCreatedOn();
-    }
-
     final User user = AuthUtils.getUser();
-    final MetaFile metaFile = file.getMetaFile();
 
     boolean canShare =
         file.getCreatedBy() == user
@@ -399,14 +401,143 @@ public class DMSFileRepository extends JpaRepository<DMSFile> {
                     .count()
                 > 0;
 
+    return populate(json, file, canShare, canCreate(file), canOffline(file, user), file.getTags());
+  }
+
+  @Override
+  public void populate(List<Map<String, Object>> records, Map<String, Object> context) {
+    final Map<Long, Map<String, Object>> byId = new LinkedHashMap<>();
+    for (Map<String, Object> json : records) {
+      final Long id = json.get("id") == null ? null : Longs.tryParse(json.get("id").toString());
+      if (id != null) {
+        byId.put(id, json);
+      }
+    }
+    if (byId.isEmpty()) {
+      return;
+    }
+
+    final EntityManager em = JPA.em();
+    final User user = AuthUtils.getUser();
+    final Group group = user.getGroup();
+    final Set<Long> ids = byId.keySet();
+
+    final List<DMSFile> files =
+        em.createQuery(
+                "SELECT self FROM DMSFile self "
+                    + "LEFT JOIN FETCH self.metaFile "
+                    + "LEFT JOIN FETCH self.createdBy "
+                    + "LEFT JOIN FETCH self.updatedBy "
+                    + "WHERE self.id IN :ids",
+                DMSFile.class)
+            .setParameter("ids", ids)
+            .getResultList();
+
+    final Set<Long> shared = new HashSet<>(permitted(AccessType.CREATE, ids));
+    shared.addAll(
+        em.createQuery(
+                "SELECT self.file.id FROM DMSPermission self WHERE self.file.id IN :ids AND "
+                    + "self.value = 'FULL' AND (self.user = :user OR self.group = :group)",
+                Long.class)
+            .setParameter("ids", ids)
+            .setParameter("user", user)
+            .setParameter("group", group)
+            .getResultList());
+
+    final boolean admin = security.hasRole("role.super") || security.hasRole("role.admin");
+    final Set<Long> writable =
+        admin
+            ? ids
+            : new HashSet<>(
+                em.createQuery(
+                        "SELECT self.file.id FROM DMSPermission self "
+                            + "WHERE self.file.id IN :ids AND self.permission.canWrite = true AND "
+                            + "(self.user = :user OR self.group = :group)",
+                        Long.class)
+                    .setParameter("ids", ids)
+                    .setParameter("user", user)
+                    .setParameter("group", group)
+                    .getResultList());
+
+    final Set<Long> offline =
+        new HashSet<>(
+            em.createQuery(
+                    "SELECT self.file.id FROM DMSPermission self WHERE self.file.id IN :ids AND "
+                        + "self.value = 'OFFLINE' AND self.user = :user",
+                    Long.class)
+                .setParameter("ids", ids)
+                .setParameter("user", user)
+                .getResultList());
+
+    final Map<Long, List<DMSFileTag>> tags = new HashMap<>();
+    for (Object[] row :
+        em.createQuery(
+                "SELECT self.id, _tag FROM DMSFile self JOIN self.tags _tag "
+                    + "WHERE self.id IN :ids ORDER BY _tag.name",
+                Object[].class)
+            .setParameter("ids", ids)
+            .getResultList()) {
+      tags.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((DMSFileTag) row[1]);
+    }
+
+    for (DMSFile file : files) {
+      final Long id = file.getId();
+      final boolean owner = file.getCreatedBy() == user;
+      final boolean canOffline =
+          offline.contains(id)
+              && file.getIsDirectory() != Boolean.TRUE
+              && file.getMetaFile() != null;
+      populate(
+          byId.get(id),
+          file,
+          owner || shared.contains(id),
+          owner || writable.contains(id),
+          canOffline,
+          tags.getOrDefault(id, new ArrayList<>()));
+    }
+  }
+
+  private Set<Long> permitted(AccessType type, Set<Long> ids) {
+    final Long[] all = ids.toArray(new Long[] {});
+    if (security.isPermitted(type, DMSFile.class, all)) {
+      return ids;
+    }
+    final Filter filter = security.getFilter(type, DMSFile.class, all);
+    if (filter == null) {
+      return Collections.emptySet();
+    }
+    return filter
+        .build(DMSFile.class)
+        .fetch()
+        .stream()
+        .map(DMSFile::getId)
+        .collect(Collectors.toSet());
+  }
+
+  private Map<String, Object> populate(
+      Map<String, Object> json,
+      DMSFile file,
+      boolean canShare,
+      boolean canWrite,
+      boolean offline,
+      Collection<DMSFileTag> tags) {
+
+    boolean isFile = file.getIsDirectory() != Boolean.TRUE;
+    LocalDateTime dt = file.getUpdatedOn();
+    if (dt == null) {
+      dt = file.getCreatedOn();
+    }
+
+    final MetaFile metaFile = file.getMetaFile();
+
     json.put("typeIcon", isFile ? "fa fa-file" : "fa fa-folder");
     json.put("downloadIcon", "fa fa-download");
     json.put("detailsIcon", "fa fa-info-circle");
 
     json.put("canShare", canShare);
-    json.put("canWrite", canCreate(file));
+    json.put("canWrite", canWrite);
 
-    if (canOffline(file, user)) {
+    if (offline) {
       json.put("offline", true);
     }
 
@@ -436,12 +567,12 @@ public class DMSFileRepository extends JpaRepository<DMSFile> {
       json.put("metaFile.sizeText", metaFile.getSizeText());
     }
 
-    if (file.getTags() != null) {
-      final List<Object> tags = new ArrayList<>();
-      for (DMSFileTag tag : file.getTags()) {
-        tags.add(Resource.toMap(tag, "id", "code", "name", "style"));
+    if (tags != null) {
+      final List<Object> items = new ArrayList<>();
+      for (DMSFileTag tag : tags) {
+        items.add(Resource.toMap(tag, "id", "code", "name", "style"));
       }
-      json.put("tags", tags);
+      json.put("tags", items);
     }
 
     return json;
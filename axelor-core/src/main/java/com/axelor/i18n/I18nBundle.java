@@ -20,22 +20,182 @@ package com.axelor.i18n;
 import com.axelor.common.StringUtils;
 import com.axelor.db.JPA;
 import com.axelor.db.Query;
+import com.axelor.db.tenants.TenantModule;
+import com.axelor.inject.Beans;
 import com.axelor.meta.db.MetaTranslation;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.persist.UnitOfWork;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import javax.persistence.FlushModeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** The database backed {@link ResourceBundle} that loads translations from the axelor database. */
+/**
+ * The database backed {@link ResourceBundle} that loads translations from the axelor database.
+ *
+ * <p>The translations are shared by all the bundles of the same language. They are loaded once
+ * into a concurrent map, which is replaced as a whole when reloaded so that readers never wait for
+ * a reload to complete.
+ *
+ * <p>The translations committed on this node are updated in place. The ones changed by other nodes
+ * are detected by checking the count and versions of the translation records periodically.
+ */
 public class I18nBundle extends ResourceBundle {
 
+  private static final Logger LOG = LoggerFactory.getLogger(I18nBundle.class);
+
+  private static final Map<String, Translations> TRANSLATIONS = new ConcurrentHashMap<>();
+
+  private static final long CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
   private final Locale locale;
-  private final Map<String, String> messages = new ConcurrentHashMap<>();
 
-  private boolean loaded;
+  /** The translations of a language. */
+  private static final class Translations {
+
+    private final String language;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private volatile String source;
+    private volatile Map<String, String> messages;
+    private volatile boolean stale;
+    private volatile long checked;
+    private volatile List<Object> signature;
+
+    public Translations(String language) {
+      this.language = language;
+    }
+
+    public Map<String, String> get() {
+      final Map<String, String> current = messages;
+      if (current != null && !stale && !isExpired()) {
+        return current;
+      }
+      // readers keep using the current translations while they are reloaded
+      if (current != null && !reloading.compareAndSet(false, true)) {
+        return current;
+      }
+      try {
+        synchronized (this) {
+          if (messages == null || stale || (isExpired() && isChanged())) {
+            reload();
+          }
+          checked = System.currentTimeMillis();
+          return messages == null ? Collections.emptyMap() : messages;
+        }
+      } finally {
+        reloading.set(false);
+      }
+    }
+
+    public void invalidate() {
+      stale = true;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() - checked > CHECK_INTERVAL;
+    }
+
+    private boolean isChanged() {
+      try {
+        return !Objects.equals(signature, signature(source));
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    public synchronized void reload() {
+      try {
+        JPA.em();
+      } catch (Throwable e) {
+        return;
+      }
+
+      // invalidated again if changed while loading
+      stale = false;
+
+      String lang = language;
+      Map<String, String> loaded = load(lang);
+      if (loaded.isEmpty() && lang.length() > 2) {
+        lang = lang.substring(0, 2);
+        loaded = load(lang);
+      }
+
+      this.source = lang;
+      this.messages = loaded;
+      this.signature = signature(lang);
+    }
+
+    public void update(String key, String message) {
+      final Map<String, String> current = messages;
+      if (current == null) {
+        return;
+      }
+      // updated in place, the map is concurrent
+      if (message == null) {
+        current.remove(key);
+      } else {
+        current.put(key, message);
+      }
+    }
+
+    /** The count and versions of the translation records, changed by any change of them. */
+    private static List<Object> signature(String lang) {
+      final Object[] row =
+          JPA.em()
+              .createQuery(
+                  "SELECT COUNT(self.id), SUM(self.version) FROM MetaTranslation self "
+                      + "WHERE self.language = :lang",
+                  Object[].class)
+              .setParameter("lang", lang)
+              .setFlushMode(FlushModeType.COMMIT)
+              .getSingleResult();
+      return Arrays.asList(row);
+    }
+
+    @SuppressWarnings("all")
+    private static Map<String, String> load(String lang) {
+      final long start = System.currentTimeMillis();
+      final Map<String, String> loaded = new ConcurrentHashMap<>();
+      final Query<MetaTranslation>.Selector selector =
+          Query.of(MetaTranslation.class)
+              .filter("self.language = :lang AND self.message IS NOT NULL")
+              .bind("lang", lang)
+              .autoFlush(false)
+              .select("key", "message");
+
+      // stream all the translations with a single query instead of paging with offsets
+      JPA.runInTransaction(
+          () -> {
+            try (Stream<List> rows = selector.valuesStream(0, 0)) {
+              rows.filter(row -> row.get(2) != null)
+                  .forEach(row -> loaded.put((String) row.get(2), (String) row.get(3)));
+            }
+          });
+
+      LOG.debug(
+          "loaded {} translations for {} in {} ms",
+          loaded.size(),
+          lang,
+          System.currentTimeMillis() - start);
+
+      return loaded;
+    }
+  }
 
   public I18nBundle(Locale locale) {
     this.locale = locale;
@@ -69,45 +229,77 @@ public class I18nBundle extends ResourceBundle {
   }
 
   private Map<String, String> load() {
-    return loaded ? messages : doLoad();
+    return TRANSLATIONS.computeIfAbsent(locale.getLanguage(), Translations::new).get();
   }
 
-  private synchronized Map<String, String> doLoad() {
-    this.loaded = true;
-
-    try {
-      JPA.em();
-    } catch (Throwable e) {
-      return messages;
+  /**
+   * Load the translations of the given languages, or of all the languages found in the database
+   * if none given, in the background.
+   *
+   * @param languages the languages to load
+   */
+  public static void preload(String... languages) {
+    // with multi-tenancy, translations are loaded on first access from the tenant's request
+    if (TenantModule.isEnabled()) {
+      return;
     }
+    final ThreadFactory factory =
+        new ThreadFactoryBuilder().setNameFormat("i18n-loader").setDaemon(true).build();
+    final Thread loader =
+        factory.newThread(
+            () -> {
+              try {
+                final List<String> all =
+                    languages.length > 0
+                        ? Arrays.asList(languages)
+                        : JPA.em()
+                            .createQuery(
+                                "SELECT DISTINCT self.language FROM MetaTranslation self",
+                                String.class)
+                            .getResultList();
+                for (String language : all) {
+                  if (StringUtils.notBlank(language)) {
+                    TRANSLATIONS.computeIfAbsent(language, Translations::new).get();
+                  }
+                }
+              } catch (Exception e) {
+                LOG.error("Unable to load translations: {}", e.getMessage(), e);
+              } finally {
+                Beans.get(UnitOfWork.class).end();
+              }
+            });
+    loader.start();
+  }
 
-    final String lang = locale.getLanguage();
-    final Query<MetaTranslation> query =
-        Query.of(MetaTranslation.class)
-            .filter("self.language = :lang AND self.message IS NOT NULL")
-            .order("id")
-            .bind("lang", lang)
-            .autoFlush(false);
-
-    if (query.count() == 0 && lang.length() > 2) {
-      query.bind("lang", lang.substring(0, 2));
+  /**
+   * Update the loaded translations with the given committed translation.
+   *
+   * <p>Only the translations of the given language are changed, other languages are kept as is.
+   *
+   * @param language the language of the translation
+   * @param key the translation key
+   * @param message the translated message, null if the translation is removed
+   */
+  public static void update(String language, String key, String message) {
+    if (StringUtils.isBlank(key)) {
+      return;
     }
-
-    long total = query.count();
-    int offset = 0;
-    int limit = 100;
-
-    while (offset < total) {
-      for (MetaTranslation tr : query.fetch(limit, offset)) {
-        messages.put(tr.getKey(), tr.getMessage());
+    for (Translations translations : TRANSLATIONS.values()) {
+      if (Objects.equals(translations.source, language)) {
+        translations.update(key, message);
       }
-      offset += limit;
     }
-
-    return messages;
   }
 
+  /**
+   * Mark the translations of all the loaded languages as stale.
+   *
+   * <p>The translations are reloaded on next access, the current ones are used until the new ones
+   * are loaded.
+   */
   public static void invalidate() {
-    ResourceBundle.clearCache();
+    for (Translations translations : TRANSLATIONS.values()) {
+      translations.invalidate();
+    }
   }
 }
@@ -29,6 +29,11 @@ public interface MailConstants {
   public static final String CONFIG_SMTP_CHANNEL = "mail.smtp.channel";
   public static final String CONFIG_SMTP_TIMEOUT = "mail.smtp.timeout";
   public static final String CONFIG_SMTP_CONNECTION_TIMEOUT = "mail.smtp.connectionTimeout";
+  public static final String CONFIG_SMTP_QUEUE_THREADS = "mail.smtp.queueThreads";
+  public static final String CONFIG_SMTP_QUEUE_BATCH_SIZE = "mail.smtp.queueBatchSize";
+  public static final String CONFIG_SMTP_RATE_LIMIT = "mail.smtp.rateLimit";
+  public static final String CONFIG_SMTP_MAX_ATTEMPTS = "mail.smtp.maxAttempts";
+  public static final String CONFIG_SMTP_RETRY_DELAY = "mail.smtp.retryDelay";
 
   public static final String CONFIG_IMAP_HOST = "mail.imap.host";
   public static final String CONFIG_IMAP_PORT = "mail.imap.port";
@@ -37,12 +42,22 @@ public interface MailConstants {
   public static final String CONFIG_IMAP_CHANNEL = "mail.imap.channel";
   public static final String CONFIG_IMAP_TIMEOUT = "mail.imap.timeout";
   public static final String CONFIG_IMAP_CONNECTION_TIMEOUT = "mail.imap.connectionTimeout";
+  public static final String CONFIG_IMAP_FOLDERS = "mail.imap.folders";
+  public static final String CONFIG_IMAP_BATCH_SIZE = "mail.imap.batchSize";
+  public static final String CONFIG_IMAP_ATTACHMENT_THREADS = "mail.imap.attachmentThreads";
 
   public static final String PROTOCOL_IMAP = "imap";
   public static final String PROTOCOL_IMAPS = "imaps";
   public static final String PROTOCOL_POP3 = "pop3";
 
   public static final int DEFAULT_TIMEOUT = 60000;
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  public static final int DEFAULT_ATTACHMENT_THREADS = 4;
+  public static final int DEFAULT_QUEUE_THREADS = 2;
+  public static final int DEFAULT_MAX_ATTEMPTS = 5;
+  public static final int DEFAULT_RETRY_DELAY = 60000;
+
+  public static final String DEFAULT_FOLDER = "INBOX";
 
   public static final String CHANNEL_STARTTLS = "starttls";
   public static final String CHANNEL_SSL = "ssl";
@@ -57,6 +57,36 @@ public final class MailSender {
     Transport.send(message);
   }
 
+  /**
+   * Get the key of the mail account used by this sender.
+   *
+   * <p>Senders of the same host, port and user have the same key.
+   *
+   * @return the account key
+   */
+  public String getAccountKey() {
+    return session.getProperty("mail.smtp.host")
+        + ":"
+        + session.getProperty("mail.smtp.port")
+        + ":"
+        + session.getProperty("mail.smtp.from");
+  }
+
+  /**
+   * Connect to the mail server.
+   *
+   * <p>The returned {@link Transport} can be used to send many messages over the same connection
+   * and should be closed by the caller.
+   *
+   * @return a connected {@link Transport}
+   * @throws MessagingException if unable to connect
+   */
+  public Transport connect() throws MessagingException {
+    final Transport transport = session.getTransport("smtp");
+    transport.connect();
+    return transport;
+  }
+
   /**
    * Send a simple text message to the given recipients.<br>
    * <br>
@@ -19,12 +19,23 @@ package com.axelor.mail.db.repo;
 
 import com.axelor.auth.db.User;
 import com.axelor.db.JpaRepository;
+import com.axelor.inject.Beans;
 import com.axelor.mail.db.MailFlags;
 import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.service.MailCounters;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MailFlagsRepository extends JpaRepository<MailFlags> {
 
+  private static final int BATCH_SIZE = 500;
+
   public MailFlagsRepository() {
     super(MailFlags.class);
   }
@@ -37,12 +48,47 @@ public class MailFlagsRepository extends JpaRepository<MailFlags> {
         .fetchOne();
   }
 
+  /**
+   * Find the flags of the given messages for the given user.
+   *
+   * @param messages the messages
+   * @param user the user
+   * @return the flags found by message id
+   */
+  public Map<Long, MailFlags> findBy(Collection<MailMessage> messages, User user) {
+    final Map<Long, MailFlags> found = new HashMap<>();
+    final Set<Long> ids = new HashSet<>();
+    for (MailMessage message : messages) {
+      ids.add(message.getId());
+    }
+    ids.remove(null);
+    if (ids.isEmpty() || user == null) {
+      return found;
+    }
+    for (List<Long> items : Lists.partition(new ArrayList<>(ids), BATCH_SIZE)) {
+      final List<MailFlags> flags =
+          all()
+              .filter("self.message.id IN (:ids) AND self.user = :user")
+              .bind("ids", items)
+              .bind("user", user)
+              .fetch();
+      for (MailFlags item : flags) {
+        found.putIfAbsent(item.getMessage().getId(), item);
+      }
+    }
+    return found;
+  }
+
   @Override
   public MailFlags save(MailFlags entity) {
+    final MailCounters counters = Beans.get(MailCounters.class);
+    final MailCounters.FlagsState before = counters.stored(entity);
     final MailFlags flags = super.save(entity);
     final MailMessage message = flags.getMessage();
     final MailMessage root = message.getRoot();
 
+    counters.changed(flags, before);
+
     if (flags.getIsStarred() == Boolean.FALSE) {
       // message is root, so unflag children
       if (root == null) {
@@ -59,6 +105,7 @@ public class MailFlagsRepository extends JpaRepository<MailFlags> {
     }
 
     MailFlags rootFlags = findBy(root, flags.getUser());
+    final MailCounters.FlagsState rootBefore = counters.current(rootFlags);
     if (rootFlags == null) {
       rootFlags = new MailFlags();
       rootFlags.setMessage(root);
@@ -73,6 +120,8 @@ public class MailFlagsRepository extends JpaRepository<MailFlags> {
       rootFlags.setIsRead(false);
     }
 
+    counters.changed(rootFlags, rootBefore);
+
     return flags;
   }
 }
@@ -26,6 +26,7 @@ import com.axelor.inject.Beans;
 import com.axelor.mail.db.MailAddress;
 import com.axelor.mail.db.MailFollower;
 import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.service.MailCounters;
 import com.axelor.mail.service.MailService;
 import com.axelor.meta.db.MetaAction;
 import com.axelor.meta.db.MetaMenu;
@@ -46,6 +47,21 @@ public class MailFollowerRepository extends JpaRepository<MailFollower> {
     super(MailFollower.class);
   }
 
+  @Override
+  public MailFollower save(MailFollower entity) {
+    final MailCounters counters = Beans.get(MailCounters.class);
+    final boolean before = counters.wasFollowing(entity);
+    final MailFollower follower = super.save(entity);
+    counters.followed(follower, before);
+    return follower;
+  }
+
+  @Override
+  public void remove(MailFollower entity) {
+    Beans.get(MailCounters.class).unfollowed(entity);
+    super.remove(entity);
+  }
+
   public List<MailFollower> findAll(Model entity) {
     return findAll(entity, -1);
   }
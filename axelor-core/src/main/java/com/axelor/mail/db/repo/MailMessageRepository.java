@@ -32,6 +32,7 @@ import com.axelor.mail.MailException;
 import com.axelor.mail.db.MailAddress;
 import com.axelor.mail.db.MailFlags;
 import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.service.MailCounters;
 import com.axelor.mail.service.MailService;
 import com.axelor.meta.MetaFiles;
 import com.axelor.meta.MetaStore;
@@ -43,9 +44,13 @@ import com.axelor.meta.db.repo.MetaAttachmentRepository;
 import com.axelor.meta.schema.views.Selection;
 import com.axelor.rpc.Resource;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 import com.google.inject.persist.Transactional;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +72,8 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
 
   @Inject private MetaActionRepository actionRepo;
 
+  @Inject private MailCounters counters;
+
   private Logger log = LoggerFactory.getLogger(MailMessageRepository.class);
 
   public MailMessageRepository() {
@@ -121,9 +128,12 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
         throw new PersistenceException(e);
       }
     }
+    counters.removed(Collections.singletonList(message));
     super.remove(message);
   }
 
+  private static final int BATCH_SIZE = 500;
+
   private static String mailHost;
   private static AtomicInteger mailId = new AtomicInteger();
 
@@ -171,6 +181,7 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
 
     // mark root as unread
     if (root != null && AuthUtils.getUser() != null) {
+      counters.markUnread(Collections.singletonList(root.getId()), AuthUtils.getUser());
       Beans.get(MailFlagsRepository.class)
           .all()
           .filter("self.message.id = :mid and self.user.id != :uid")
@@ -189,6 +200,10 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
 
     final MailMessage saved = super.save(entity);
 
+    if (isNew) {
+      counters.posted(Collections.singletonList(saved));
+    }
+
     // notify all followers by email
     if (isNotification && isNew) {
       email(saved);
@@ -197,6 +212,100 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
     return saved;
   }
 
+  /**
+   * Save the given new messages as a batch.
+   *
+   * <p>The parents of the messages are looked up with one query per related model, the roots are
+   * marked unread with a single update and the messages are flushed together using jdbc batching.
+   *
+   * <p>The messages are persisted directly, {@link #save(MailMessage)} is not called for them.
+   * Callers should save the messages one by one if a subclass overrides it.
+   *
+   * @param messages the new messages to save
+   * @param user the user posting the messages, roots are marked unread for other users
+   */
+  public void saveAll(List<MailMessage> messages, User user) {
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    final Map<String, Set<Long>> related = new HashMap<>();
+    for (MailMessage message : messages) {
+      if (message.getParent() == null && message.getRelatedId() != null) {
+        related
+            .computeIfAbsent(message.getRelatedModel(), key -> new HashSet<>())
+            .add(message.getRelatedId());
+      }
+    }
+
+    final Map<String, MailMessage> parents = new HashMap<>();
+    for (Map.Entry<String, Set<Long>> entry : related.entrySet()) {
+      for (List<Long> ids : Lists.partition(new ArrayList<>(entry.getValue()), BATCH_SIZE)) {
+        final List<MailMessage> found =
+            all()
+                .filter(
+                    "self.parent is null AND self.relatedId IN (:ids) "
+                        + "AND self.relatedModel = :model")
+                .bind("ids", ids)
+                .bind("model", entry.getKey())
+                .order("id")
+                .autoFlush(false)
+                .fetch();
+        for (MailMessage parent : found) {
+          parents.putIfAbsent(parent.getRelatedModel() + ":" + parent.getRelatedId(), parent);
+        }
+      }
+    }
+
+    final Set<Long> roots = new HashSet<>();
+    for (MailMessage message : messages) {
+      final String key = message.getRelatedModel() + ":" + message.getRelatedId();
+      if (message.getParent() == null && message.getRelatedId() != null) {
+        message.setParent(parents.get(key));
+        // the first message of a record is the parent of next ones
+        parents.putIfAbsent(key, message);
+      }
+
+      MailMessage root = message.getRoot();
+      if (root == null) {
+        root = message.getParent();
+      }
+      if (root != null && root.getRoot() != null) {
+        root = root.getRoot();
+      }
+      message.setRoot(root);
+
+      if (root != null && root.getId() != null) {
+        roots.add(root.getId());
+      }
+      if (message.getMessageId() == null) {
+        message.setMessageId(generateMessageId(message));
+      }
+    }
+
+    // mark roots as unread
+    if (user != null && !roots.isEmpty()) {
+      counters.markUnread(roots, user);
+      Beans.get(MailFlagsRepository.class)
+          .all()
+          .filter("self.message.id IN (:mids) and self.user.id != :uid")
+          .bind("mids", roots)
+          .bind("uid", user.getId())
+          .update("isRead", false);
+    }
+
+    JPA.runInBatch(() -> messages.forEach(JPA::persist));
+
+    counters.posted(messages);
+
+    // notify all followers by email
+    for (MailMessage message : messages) {
+      if (MailConstants.MESSAGE_TYPE_NOTIFICATION.equals(message.getType())) {
+        email(message);
+      }
+    }
+  }
+
   public void email(MailMessage message) {
     try {
       mailService.send(message);
@@ -277,6 +386,37 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
         .fetch();
   }
 
+  /**
+   * Find the attachments of the given messages.
+   *
+   * @param messages the messages
+   * @return the attachments by message id
+   */
+  public Map<Long, List<MetaAttachment>> findAttachments(Collection<MailMessage> messages) {
+    final Map<Long, List<MetaAttachment>> found = new HashMap<>();
+    final Set<Long> ids = new HashSet<>();
+    for (MailMessage message : messages) {
+      ids.add(message.getId());
+    }
+    ids.remove(null);
+    for (List<Long> items : Lists.partition(new ArrayList<>(ids), BATCH_SIZE)) {
+      final List<MetaAttachment> attachments =
+          JPA.em()
+              .createQuery(
+                  "SELECT self FROM MetaAttachment self LEFT JOIN FETCH self.metaFile "
+                      + "WHERE self.objectId IN (:ids) AND self.objectName = :name "
+                      + "ORDER BY self.id",
+                  MetaAttachment.class)
+              .setParameter("ids", items)
+              .setParameter("name", MailMessage.class.getName())
+              .getResultList();
+      for (MetaAttachment attachment : attachments) {
+        found.computeIfAbsent(attachment.getObjectId(), key -> new ArrayList<>()).add(attachment);
+      }
+    }
+    return found;
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   private String updateBody(MailMessage message) throws Exception {
     final String body = message.getBody();
@@ -311,6 +451,45 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
   }
 
   public Map<String, Object> details(MailMessage message) {
+    final User user = AuthUtils.getUser();
+    final MailFlags flags = Beans.get(MailFlagsRepository.class).findBy(message, user);
+    return details(message, flags, findAttachments(message), user, new HashMap<>());
+  }
+
+  /**
+   * Get the details of the given messages.
+   *
+   * <p>Same as {@link #details(MailMessage)} but the attachments of all the messages are loaded
+   * with a single query.
+   *
+   * @param messages the messages
+   * @param flags the flags of the messages for the current user by message id
+   * @return the details of the messages, in the same order
+   */
+  public List<Map<String, Object>> details(
+      List<MailMessage> messages, Map<Long, MailFlags> flags) {
+    final User user = AuthUtils.getUser();
+    final Map<Long, List<MetaAttachment>> attachments = findAttachments(messages);
+    final Map<String, String> actions = new HashMap<>();
+    final List<Map<String, Object>> all = new ArrayList<>();
+    for (MailMessage message : messages) {
+      all.add(
+          details(
+              message,
+              flags.get(message.getId()),
+              attachments.getOrDefault(message.getId(), Collections.emptyList()),
+              user,
+              actions));
+    }
+    return all;
+  }
+
+  private Map<String, Object> details(
+      MailMessage message,
+      MailFlags flags,
+      List<MetaAttachment> attachments,
+      User currentUser,
+      Map<String, String> actions) {
     final String[] fields = {
       "id", "type", "subject", "body", "summary", "relatedId", "relatedModel", "relatedName"
     };
@@ -318,10 +497,6 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
     final List<Object> files = new ArrayList<>();
 
     final MailService mailService = Beans.get(MailService.class);
-    final MailFlagsRepository repoFlags = Beans.get(MailFlagsRepository.class);
-
-    final MailFlags flags = repoFlags.findBy(message, AuthUtils.getUser());
-    final List<MetaAttachment> attachments = findAttachments(message);
 
     for (MetaAttachment attachment : attachments) {
       final Map<String, Object> fileInfo = Resource.toMapCompact(attachment.getMetaFile());
@@ -338,7 +513,7 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
     if (MailConstants.MESSAGE_TYPE_COMMENT.equals(eventType)
         || MailConstants.MESSAGE_TYPE_EMAIL.equals(eventType)) {
       eventText = I18n.get("added comment");
-      details.put("$canDelete", message.getCreatedBy() == AuthUtils.getUser());
+      details.put("$canDelete", message.getCreatedBy() == currentUser);
     }
 
     final MailAddress email = message.getFrom();
@@ -351,13 +526,16 @@ public class MailMessageRepository extends JpaRepository<MailMessage> {
 
     if (author != null) {
       final String authorModel = EntityHelper.getEntityClass(author).getName();
-      final MetaAction authorAction =
-          actionRepo
-              .all()
-              .filter("self.type = 'action-view' and self.model = ?", authorModel)
-              .fetchOne();
-      if (authorAction != null) {
-        details.put("$authorAction", authorAction.getName());
+      if (!actions.containsKey(authorModel)) {
+        final MetaAction authorAction =
+            actionRepo
+                .all()
+                .filter("self.type = 'action-view' and self.model = ?", authorModel)
+                .fetchOne();
+        actions.put(authorModel, authorAction == null ? null : authorAction.getName());
+      }
+      if (actions.get(authorModel) != null) {
+        details.put("$authorAction", actions.get(authorModel));
       }
       details.put("$authorModel", authorModel);
     }
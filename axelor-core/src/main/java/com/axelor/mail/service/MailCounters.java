@@ -0,0 +1,738 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.mail.service;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.db.tenants.TenantResolver;
+import com.axelor.mail.db.MailCounter;
+import com.axelor.mail.db.MailFlags;
+import com.axelor.mail.db.MailFollower;
+import com.axelor.mail.db.MailMessage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceException;
+import javax.transaction.Synchronization;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The per-user counters of the mailbox folders.
+ *
+ * <p>The counters are stored in the {@link MailCounter} table and are updated incrementally by
+ * the mail repositories when messages are posted, flags are changed or followers are added or
+ * archived, so reading them doesn't require counting the followed messages of the user. The
+ * counters read are cached in memory for a short time.
+ *
+ * <p>Changes done with bulk updates bypassing the repositories or concurrent changes of the same
+ * counters may leave them out of date, so they are recomputed periodically with {@link
+ * #reconcile()}.
+ */
+@Singleton
+public class MailCounters {
+
+  private static final Logger log = LoggerFactory.getLogger(MailCounters.class);
+
+  private static final int INBOX = 0;
+  private static final int UNREAD = 1;
+  private static final int IMPORTANT = 2;
+  private static final int ARCHIVED = 3;
+
+  private static final int BATCH_SIZE = 500;
+
+  private static final int MAX_USERS = 10_000;
+
+  // same conditions as the inbox, unread, important and archived folders
+  private static final String SQL_COUNTS =
+      ""
+          + "SELECT"
+          + " SUM(CASE WHEN (g.isRead IS NULL OR g.isRead = false OR g.isArchived = false)"
+          + " THEN 1 ELSE 0 END),"
+          + " SUM(CASE WHEN (g.isRead IS NULL OR g.isRead = false) THEN 1 ELSE 0 END),"
+          + " SUM(CASE WHEN (g.isStarred = true AND g.isArchived = false) THEN 1 ELSE 0 END),"
+          + " SUM(CASE WHEN (g.isArchived = true) THEN 1 ELSE 0 END) ";
+
+  private static final String SQL_USER_COUNTS =
+      SQL_COUNTS
+          + "FROM MailMessage mm "
+          + "LEFT JOIN MailFollower f ON"
+          + " f.relatedId = mm.relatedId and f.relatedModel = mm.relatedModel "
+          + "LEFT JOIN MailFlags g ON g.user = f.user AND g.message = mm.id "
+          + "WHERE"
+          + " (mm.parent IS NULL) AND "
+          + " (f.user.id = :uid AND f.archived = false)";
+
+  private static final String SQL_RELATED_COUNTS =
+      SQL_COUNTS
+          + "FROM MailMessage mm "
+          + "LEFT JOIN MailFlags g ON g.user.id = :uid AND g.message = mm.id "
+          + "WHERE"
+          + " (mm.parent IS NULL) AND "
+          + " (mm.relatedId = :id AND mm.relatedModel = :model)";
+
+  private static final String SQL_FOLLOWERS =
+      ""
+          + "SELECT f.relatedId, f.user.id FROM MailFollower f "
+          + "WHERE f.relatedModel = :model AND f.relatedId IN (:ids) AND f.archived = false";
+
+  private static final String SQL_FOLLOWING =
+      ""
+          + "SELECT COUNT(f.id) FROM MailFollower f "
+          + "WHERE f.user.id = :uid AND f.relatedId = :id AND f.relatedModel = :model"
+          + " AND f.archived = false";
+
+  private static final String SQL_READ_FOLLOWERS =
+      ""
+          + "SELECT f.user.id, g.isArchived FROM MailFlags g, MailFollower f "
+          + "WHERE g.message.id IN (:mids) AND g.message.parent IS NULL"
+          + " AND g.user.id != :uid AND g.isRead = true"
+          + " AND f.user = g.user AND f.archived = false"
+          + " AND f.relatedId = g.message.relatedId AND f.relatedModel = g.message.relatedModel";
+
+  private static final String SQL_COUNTER =
+      ""
+          + "SELECT self.inboxCount, self.unreadCount, self.importantCount, self.archivedCount "
+          + "FROM MailCounter self WHERE self.user.id = :uid";
+
+  private static final String SQL_COUNTERS =
+      ""
+          + "SELECT self.id, self.user.id,"
+          + " self.inboxCount, self.unreadCount, self.importantCount, self.archivedCount "
+          + "FROM MailCounter self WHERE self.id > :last ORDER BY self.id";
+
+  private static final String SQL_INCREMENT =
+      ""
+          + "UPDATE MailCounter self SET"
+          + " self.inboxCount = self.inboxCount + :inbox,"
+          + " self.unreadCount = self.unreadCount + :unread,"
+          + " self.importantCount = self.importantCount + :important,"
+          + " self.archivedCount = self.archivedCount + :archived "
+          + "WHERE self.user.id = :uid";
+
+  private static final String SQL_RESET =
+      ""
+          + "UPDATE MailCounter self SET"
+          + " self.inboxCount = :inbox,"
+          + " self.unreadCount = :unread,"
+          + " self.importantCount = :important,"
+          + " self.archivedCount = :archived "
+          + "WHERE self.id = :id";
+
+  /** The state of the flags as last counted or flushed in the current transaction, by id. */
+  private static final ThreadLocal<Map<Long, FlagsState>> KNOWN = new ThreadLocal<>();
+
+  // other nodes of a cluster only update the stored counters
+  private final Cache<String, Counts> cache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_USERS)
+          .expireAfterWrite(1, TimeUnit.MINUTES)
+          .build();
+
+  /** The mailbox counters of a user. */
+  public static final class Counts {
+
+    private static final Counts EMPTY = new Counts(new long[4]);
+
+    private final long inbox;
+    private final long unread;
+    private final long important;
+    private final long archived;
+
+    private Counts(long[] values) {
+      this.inbox = values[INBOX];
+      this.unread = values[UNREAD];
+      this.important = values[IMPORTANT];
+      this.archived = values[ARCHIVED];
+    }
+
+    public long getInbox() {
+      return inbox;
+    }
+
+    public long getUnread() {
+      return unread;
+    }
+
+    public long getImportant() {
+      return important;
+    }
+
+    public long getArchived() {
+      return archived;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "inbox=%d, unread=%d, important=%d, archived=%d", inbox, unread, important, archived);
+    }
+  }
+
+  /** The state of the flags of a message, as counted by the folders. */
+  public static final class FlagsState {
+
+    private static final FlagsState NONE = new FlagsState(null, null, null);
+
+    private final Boolean read;
+    private final Boolean starred;
+    private final Boolean archived;
+
+    private FlagsState(Boolean read, Boolean starred, Boolean archived) {
+      this.read = read;
+      this.starred = starred;
+      this.archived = archived;
+    }
+
+    private long[] values() {
+      final long[] values = new long[4];
+      values[INBOX] = read != Boolean.TRUE || archived == Boolean.FALSE ? 1 : 0;
+      values[UNREAD] = read != Boolean.TRUE ? 1 : 0;
+      values[IMPORTANT] = starred == Boolean.TRUE && archived == Boolean.FALSE ? 1 : 0;
+      values[ARCHIVED] = archived == Boolean.TRUE ? 1 : 0;
+      return values;
+    }
+  }
+
+  /**
+   * Get the mailbox counters of the given user.
+   *
+   * <p>The counters are computed and stored on first use.
+   *
+   * @param user the user
+   * @return the counters
+   */
+  public Counts get(User user) {
+    if (user == null || user.getId() == null) {
+      return Counts.EMPTY;
+    }
+
+    final Long uid = user.getId();
+    final Counts cached = cache.getIfPresent(key(uid));
+    if (cached != null) {
+      return cached;
+    }
+
+    final List<Object[]> found =
+        JPA.em()
+            .createQuery(SQL_COUNTER, Object[].class)
+            .setParameter("uid", uid)
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+
+    final Counts counts;
+    if (found.isEmpty()) {
+      counts = new Counts(compute(uid));
+      store(uid, counts);
+    } else {
+      counts = new Counts(values(found.get(0), 0));
+    }
+
+    cache.put(key(uid), counts);
+    return counts;
+  }
+
+  /**
+   * Get the stored state of the given flags.
+   *
+   * <p>The changes may be flushed before the repository is called, e.g. when saved from the web
+   * client, so the state as last counted or before the first flush of the transaction is used if
+   * known.
+   *
+   * @param flags the flags, possibly changed but not saved yet
+   * @return the state before the changes
+   */
+  public FlagsState stored(MailFlags flags) {
+    if (flags == null || flags.getId() == null) {
+      return FlagsState.NONE;
+    }
+    final Map<Long, FlagsState> known = KNOWN.get();
+    if (known != null && known.containsKey(flags.getId())) {
+      return known.get(flags.getId());
+    }
+    final List<Object[]> found =
+        JPA.em()
+            .createQuery(
+                "SELECT g.isRead, g.isStarred, g.isArchived FROM MailFlags g WHERE g.id = :id",
+                Object[].class)
+            .setParameter("id", flags.getId())
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+    if (found.isEmpty()) {
+      return FlagsState.NONE;
+    }
+    final Object[] row = found.get(0);
+    return new FlagsState((Boolean) row[0], (Boolean) row[1], (Boolean) row[2]);
+  }
+
+  /**
+   * Get the current state of the given flags.
+   *
+   * @param flags the flags, or null if not created yet
+   * @return the current state
+   */
+  public FlagsState current(MailFlags flags) {
+    if (flags == null) {
+      return FlagsState.NONE;
+    }
+    return new FlagsState(flags.getIsRead(), flags.getIsStarred(), flags.getIsArchived());
+  }
+
+  /**
+   * Remember the state of the given flags before they are flushed.
+   *
+   * <p>This is called by the audit interceptor, only the state before the first flush of the
+   * transaction is kept.
+   *
+   * @param id the id of the flags
+   * @param names the property names
+   * @param previousState the state before the changes, null if created
+   */
+  public static void flushing(Long id, String[] names, Object[] previousState) {
+    if (id == null) {
+      return;
+    }
+    final Map<Long, FlagsState> known = known();
+    if (known.containsKey(id)) {
+      return;
+    }
+    if (previousState == null) {
+      known.put(id, FlagsState.NONE);
+      return;
+    }
+    final Map<String, Object> values = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      values.put(names[i], previousState[i]);
+    }
+    known.put(
+        id,
+        new FlagsState(
+            (Boolean) values.get("isRead"),
+            (Boolean) values.get("isStarred"),
+            (Boolean) values.get("isArchived")));
+  }
+
+  /** Forget the state of the flags of the completed transaction. */
+  public static void completed() {
+    KNOWN.remove();
+  }
+
+  private static Map<Long, FlagsState> known() {
+    Map<Long, FlagsState> known = KNOWN.get();
+    if (known == null) {
+      known = new HashMap<>();
+      KNOWN.set(known);
+    }
+    return known;
+  }
+
+  /**
+   * Update the counters of the owner of the given flags.
+   *
+   * @param flags the saved flags
+   * @param before the state of the flags before the changes
+   */
+  public void changed(MailFlags flags, FlagsState before) {
+    final MailMessage message = flags.getMessage();
+    final User user = flags.getUser();
+
+    // the changes are counted, further changes of the transaction are counted from this state
+    if (flags.getId() != null && JPA.em().getTransaction().isActive()) {
+      known().put(flags.getId(), current(flags));
+    }
+
+    // only the flags of the top level messages are counted
+    if (message == null
+        || message.getParent() != null
+        || message.getRelatedId() == null
+        || user == null
+        || user.getId() == null) {
+      return;
+    }
+
+    final long[] delta = subtract(current(flags).values(), before.values());
+    if (isZero(delta)) {
+      return;
+    }
+
+    // the message is counted once per follower record
+    final long following =
+        JPA.em()
+            .createQuery(SQL_FOLLOWING, Long.class)
+            .setParameter("uid", user.getId())
+            .setParameter("id", message.getRelatedId())
+            .setParameter("model", message.getRelatedModel())
+            .getSingleResult();
+
+    if (following > 0) {
+      apply(Collections.singletonMap(user.getId(), multiply(delta, following)));
+    }
+  }
+
+  /**
+   * Update the counters of the followers of the given new messages.
+   *
+   * @param messages the new messages, only the top level ones are counted
+   */
+  public void posted(Collection<MailMessage> messages) {
+    apply(followers(messages, 1));
+  }
+
+  /**
+   * Update the counters of the followers of the given messages being removed.
+   *
+   * @param messages the messages to remove, only the top level ones are counted
+   */
+  public void removed(Collection<MailMessage> messages) {
+    apply(followers(messages, -1));
+  }
+
+  /**
+   * Update the counters of the users whose flags of the given messages are going to be marked
+   * unread.
+   *
+   * <p>This should be called before updating the flags.
+   *
+   * @param messages the ids of the top level messages
+   * @param user the user posting the replies, not marked unread
+   */
+  public void markUnread(Collection<Long> messages, User user) {
+    final Set<Long> ids = new HashSet<>(messages);
+    ids.remove(null);
+    if (ids.isEmpty() || user == null) {
+      return;
+    }
+
+    final Map<Long, long[]> deltas = new HashMap<>();
+    for (List<Long> items : Lists.partition(new ArrayList<>(ids), BATCH_SIZE)) {
+      final List<Object[]> found =
+          JPA.em()
+              .createQuery(SQL_READ_FOLLOWERS, Object[].class)
+              .setParameter("mids", items)
+              .setParameter("uid", user.getId())
+              .getResultList();
+      for (Object[] row : found) {
+        final Boolean archived = (Boolean) row[1];
+        final FlagsState before = new FlagsState(true, null, archived);
+        final FlagsState after = new FlagsState(false, null, archived);
+        add(deltas, (Long) row[0], subtract(after.values(), before.values()));
+      }
+    }
+
+    apply(deltas);
+  }
+
+  /**
+   * Check whether the given follower record is stored as active.
+   *
+   * @param follower the follower, possibly changed but not saved yet
+   * @return true if the stored follower is not archived
+   */
+  public boolean wasFollowing(MailFollower follower) {
+    if (follower == null || follower.getId() == null) {
+      return false;
+    }
+    final List<Boolean> found =
+        JPA.em()
+            .createQuery(
+                "SELECT f.archived FROM MailFollower f WHERE f.id = :id AND f.user IS NOT NULL",
+                Boolean.class)
+            .setParameter("id", follower.getId())
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+    return !found.isEmpty() && Boolean.FALSE.equals(found.get(0));
+  }
+
+  /**
+   * Update the counters of the user of the given follower record.
+   *
+   * @param follower the saved follower
+   * @param before whether the follower was active before the changes
+   */
+  public void followed(MailFollower follower, boolean before) {
+    final boolean after = follower.getArchived() == Boolean.FALSE && follower.getUser() != null;
+    if (before != after) {
+      update(follower, after ? 1 : -1);
+    }
+  }
+
+  /**
+   * Update the counters of the user of the given follower record being removed.
+   *
+   * @param follower the follower to remove
+   */
+  public void unfollowed(MailFollower follower) {
+    if (wasFollowing(follower)) {
+      update(follower, -1);
+    }
+  }
+
+  /**
+   * Recompute all the stored counters and fix the ones out of date.
+   *
+   * @return the number of counters fixed
+   */
+  public int reconcile() {
+    final EntityManager em = JPA.em();
+
+    int total = 0;
+    int fixed = 0;
+    long last = 0;
+
+    List<Object[]> rows;
+    do {
+      rows =
+          em.createQuery(SQL_COUNTERS, Object[].class)
+              .setParameter("last", last)
+              .setMaxResults(BATCH_SIZE)
+              .getResultList();
+
+      final Map<Long, long[]> changed = new HashMap<>();
+      final Set<Long> users = new HashSet<>();
+
+      for (Object[] row : rows) {
+        final long[] counts = compute((Long) row[1]);
+        if (!isZero(subtract(counts, values(row, 2)))) {
+          changed.put((Long) row[0], counts);
+          users.add((Long) row[1]);
+        }
+        last = (Long) row[0];
+      }
+
+      if (!changed.isEmpty()) {
+        JPA.runInTransaction(
+            () -> {
+              for (Map.Entry<Long, long[]> entry : changed.entrySet()) {
+                final long[] counts = entry.getValue();
+                em.createQuery(SQL_RESET)
+                    .setParameter("inbox", counts[INBOX])
+                    .setParameter("unread", counts[UNREAD])
+                    .setParameter("important", counts[IMPORTANT])
+                    .setParameter("archived", counts[ARCHIVED])
+                    .setParameter("id", entry.getKey())
+                    .executeUpdate();
+              }
+            });
+        cache.invalidateAll(keys(users));
+      }
+
+      total += rows.size();
+      fixed += changed.size();
+    } while (rows.size() == BATCH_SIZE);
+
+    log.info("Reconciled mailbox counters of {} users, {} fixed", total, fixed);
+    return fixed;
+  }
+
+  private long[] compute(Long uid) {
+    final Object[] row =
+        JPA.em()
+            .createQuery(SQL_USER_COUNTS, Object[].class)
+            .setParameter("uid", uid)
+            .getSingleResult();
+    return values(row, 0);
+  }
+
+  private void store(Long uid, Counts counts) {
+    final EntityManager em = JPA.em();
+
+    // don't risk failing the running transaction on concurrent inserts, computed again next time
+    if (em.getTransaction().isActive()) {
+      return;
+    }
+
+    final MailCounter counter = new MailCounter();
+    counter.setUser(em.getReference(User.class, uid));
+    counter.setInboxCount(counts.inbox);
+    counter.setUnreadCount(counts.unread);
+    counter.setImportantCount(counts.important);
+    counter.setArchivedCount(counts.archived);
+
+    try {
+      JPA.runInTransaction(() -> em.persist(counter));
+    } catch (PersistenceException e) {
+      log.debug("Unable to store mailbox counters of user {}: {}", uid, e.getMessage());
+    } finally {
+      if (em.contains(counter)) {
+        em.detach(counter);
+      }
+    }
+  }
+
+  private void update(MailFollower follower, long sign) {
+    final Long uid = follower.getUser().getId();
+    final Object[] row =
+        JPA.em()
+            .createQuery(SQL_RELATED_COUNTS, Object[].class)
+            .setParameter("uid", uid)
+            .setParameter("id", follower.getRelatedId())
+            .setParameter("model", follower.getRelatedModel())
+            .getSingleResult();
+    apply(Collections.singletonMap(uid, multiply(values(row, 0), sign)));
+  }
+
+  private Map<Long, long[]> followers(Collection<MailMessage> messages, long sign) {
+    final Map<String, Map<Long, MailMessage>> related = new HashMap<>();
+    for (MailMessage message : messages) {
+      if (message.getParent() == null && message.getRelatedId() != null) {
+        related
+            .computeIfAbsent(message.getRelatedModel(), key -> new HashMap<>())
+            .put(message.getRelatedId(), message);
+      }
+    }
+
+    final Map<Long, long[]> deltas = new HashMap<>();
+    for (Map.Entry<String, Map<Long, MailMessage>> entry : related.entrySet()) {
+      final Map<Long, MailMessage> found = entry.getValue();
+      for (List<Long> ids : Lists.partition(new ArrayList<>(found.keySet()), BATCH_SIZE)) {
+        final List<Object[]> rows =
+            JPA.em()
+                .createQuery(SQL_FOLLOWERS, Object[].class)
+                .setParameter("model", entry.getKey())
+                .setParameter("ids", ids)
+                .getResultList();
+        for (Object[] row : rows) {
+          final Long uid = (Long) row[1];
+          final MailFlags flags = findFlags(found.get(row[0]), uid);
+          add(deltas, uid, multiply(current(flags).values(), sign));
+        }
+      }
+    }
+    return deltas;
+  }
+
+  private MailFlags findFlags(MailMessage message, Long uid) {
+    if (message.getFlags() == null) {
+      return null;
+    }
+    for (MailFlags flags : message.getFlags()) {
+      if (flags.getUser() != null && uid.equals(flags.getUser().getId())) {
+        return flags;
+      }
+    }
+    return null;
+  }
+
+  private void apply(Map<Long, long[]> deltas) {
+    final Set<Long> users = new HashSet<>();
+    for (Map.Entry<Long, long[]> entry : deltas.entrySet()) {
+      if (!isZero(entry.getValue())) {
+        users.add(entry.getKey());
+      }
+    }
+    if (users.isEmpty()) {
+      return;
+    }
+
+    final Set<String> keys = keys(users);
+    final EntityManager em = JPA.em();
+    if (em.getTransaction().isActive()) {
+      for (Long uid : users) {
+        final long[] delta = deltas.get(uid);
+        em.createQuery(SQL_INCREMENT)
+            .setParameter("inbox", delta[INBOX])
+            .setParameter("unread", delta[UNREAD])
+            .setParameter("important", delta[IMPORTANT])
+            .setParameter("archived", delta[ARCHIVED])
+            .setParameter("uid", uid)
+            .executeUpdate();
+      }
+
+      // the counters may be read again before the transaction is completed
+      em.unwrap(Session.class)
+          .getTransaction()
+          .registerSynchronization(
+              new Synchronization() {
+
+                @Override
+                public void beforeCompletion() {}
+
+                @Override
+                public void afterCompletion(int status) {
+                  cache.invalidateAll(keys);
+                }
+              });
+    }
+
+    cache.invalidateAll(keys);
+  }
+
+  /** The cache key of the counters of the given user, the same ids are used by all tenants. */
+  private static String key(Long uid) {
+    return TenantResolver.currentTenantIdentifier() + ":" + uid;
+  }
+
+  private static Set<String> keys(Collection<Long> users) {
+    return users.stream().map(MailCounters::key).collect(Collectors.toSet());
+  }
+
+  private static long[] values(Object[] row, int offset) {
+    final long[] values = new long[4];
+    for (int i = 0; i < values.length; i++) {
+      final Object value = row[offset + i];
+      values[i] = value == null ? 0 : ((Number) value).longValue();
+    }
+    return values;
+  }
+
+  private static void add(Map<Long, long[]> deltas, Long uid, long[] delta) {
+    final long[] values = deltas.computeIfAbsent(uid, key -> new long[4]);
+    for (int i = 0; i < values.length; i++) {
+      values[i] += delta[i];
+    }
+  }
+
+  private static long[] subtract(long[] a, long[] b) {
+    final long[] values = new long[a.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = a[i] - b[i];
+    }
+    return values;
+  }
+
+  private static long[] multiply(long[] a, long factor) {
+    final long[] values = new long[a.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = a[i] * factor;
+    }
+    return values;
+  }
+
+  private static boolean isZero(long[] values) {
+    for (long value : values) {
+      if (value != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -37,6 +37,13 @@ public interface MailService {
    */
   void send(MailMessage message) throws MailException;
 
+  /**
+   * Send the mails waiting in the outgoing queue, if any.
+   *
+   * <p>The mails are sent in background, this method doesn't wait for them to be sent.
+   */
+  default void dispatch() {}
+
   /**
    * Fetch mails from remote mail server.
    *
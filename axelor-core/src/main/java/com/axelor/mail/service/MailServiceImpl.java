@@ -18,6 +18,7 @@
 package com.axelor.mail.service;
 
 import static com.axelor.common.StringUtils.isBlank;
+import static java.util.stream.Collectors.toSet;
 
 import com.axelor.app.AppSettings;
 import com.axelor.auth.AuditableRunner;
@@ -27,6 +28,7 @@ import com.axelor.db.JPA;
 import com.axelor.db.Model;
 import com.axelor.db.Query;
 import com.axelor.db.mapper.Mapper;
+import com.axelor.db.tenants.TenantModule;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.mail.ImapAccount;
@@ -40,6 +42,7 @@ import com.axelor.mail.SmtpAccount;
 import com.axelor.mail.db.MailAddress;
 import com.axelor.mail.db.MailFollower;
 import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.db.MailQueue;
 import com.axelor.mail.db.repo.MailAddressRepository;
 import com.axelor.mail.db.repo.MailFollowerRepository;
 import com.axelor.mail.db.repo.MailMessageRepository;
@@ -57,22 +60,49 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.persist.Transactional;
+import com.sun.mail.imap.IMAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.activation.DataSource;
 import javax.inject.Singleton;
 import javax.mail.FetchProfile;
@@ -80,12 +110,18 @@ import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.Transport;
+import javax.mail.UIDFolder;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.search.AndTerm;
 import javax.mail.search.FlagTerm;
 import javax.mail.search.SearchTerm;
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,12 +138,45 @@ public class MailServiceImpl implements MailService, MailConstants {
   private boolean senderConfigured;
   private boolean readerConfigured;
 
-  private ExecutorService executor = Executors.newCachedThreadPool();
+  /** Schedules the sending of queued emails. */
+  private ScheduledExecutorService dispatcher;
+
+  /** Bounded pool used to send queued emails. */
+  private ExecutorService queueWorkers;
+
+  /** The next dispatch run, only one is scheduled at a time. */
+  private ScheduledFuture<?> nextDispatch;
+
+  private final QueueStats queueStats = new QueueStats();
+
+  /** Rate limiters by mail account, created with the configured messages per second. */
+  private final LoadingCache<String, RateLimiter> rateLimiters =
+      CacheBuilder.newBuilder()
+          .build(CacheLoader.from(account -> RateLimiter.create(getRateLimit())));
+
+  /** The connection of the current queue worker. */
+  private final ThreadLocal<Connection> connections = new ThreadLocal<>();
+
+  /** Bounded pool used to store attachments of incoming messages. */
+  private ExecutorService attachmentExecutor;
+
+  /** The UID validity and last fetched message UID by folder. */
+  private final Map<String, long[]> lastUids = new ConcurrentHashMap<>();
+
+  /** Messages looked up by message id for the batch of incoming messages being processed. */
+  private final ThreadLocal<Map<String, MailMessage>> batchMessages = new ThreadLocal<>();
 
   private Logger log = LoggerFactory.getLogger(MailService.class);
 
   private static final Object FETCH_LOCK = new Object();
 
+  private static final long DISPATCH_DELAY = 500;
+
+  /** Time after which a claimed email not sent by its dispatch run can be claimed again. */
+  private static final long CLAIM_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+  private static final String[] REFERENCE_HEADERS = {"In-Reply-To", "X-References", "References"};
+
   public MailServiceImpl() {}
 
   /**
@@ -121,6 +190,17 @@ public class MailServiceImpl implements MailService, MailConstants {
    * @return a {@link MailSender}, null if not configured
    */
   protected MailSender getMailSender(final MailMessage message, Model entity) {
+    return getDefaultSender();
+  }
+
+  /**
+   * Get the {@link MailSender} configured from application configuration settings.
+   *
+   * <p>Used to send queued emails whose message doesn't exist anymore.
+   *
+   * @return a {@link MailSender}, null if not configured
+   */
+  protected final MailSender getDefaultSender() {
     if (senderConfigured) {
       return sender;
     }
@@ -202,6 +282,21 @@ public class MailServiceImpl implements MailService, MailConstants {
     return reader;
   }
 
+  private synchronized ExecutorService getAttachmentExecutor() {
+    if (attachmentExecutor == null) {
+      final int threads =
+          AppSettings.get().getInt(CONFIG_IMAP_ATTACHMENT_THREADS, DEFAULT_ATTACHMENT_THREADS);
+      attachmentExecutor =
+          Executors.newFixedThreadPool(
+              Math.max(1, threads),
+              new ThreadFactoryBuilder()
+                  .setNameFormat("mail-attachment-%d")
+                  .setDaemon(true)
+                  .build());
+    }
+    return attachmentExecutor;
+  }
+
   /**
    * Get the subject line for the message.
    *
@@ -381,37 +476,470 @@ public class MailServiceImpl implements MailService, MailConstants {
       throw new MailException(e);
     }
 
-    // send email using a separate process to void thread blocking
-    executor.submit(
-        new Callable<Boolean>() {
-          @Override
-          public Boolean call() throws Exception {
-            send(sender, email);
-            return true;
+    // the dispatcher can't resolve the tenant of queued emails, send them directly
+    if (TenantModule.isEnabled()) {
+      getDispatcher();
+      queueWorkers.submit(() -> sendDirect(sender, email));
+      return;
+    }
+
+    // queue the email, it's sent by the queue workers once the transaction is committed
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try {
+      email.saveChanges();
+      email.writeTo(content);
+    } catch (MessagingException | IOException e) {
+      throw new MailException(e);
+    }
+
+    final MailQueue item = new MailQueue();
+    item.setMessageId(message.getMessageId());
+    item.setContent(content.toByteArray());
+    item.setAttempts(0);
+    item.setNextAttempt(LocalDateTime.now());
+
+    final EntityManager em = JPA.em();
+    if (!em.getTransaction().isActive()) {
+      JPA.runInTransaction(() -> JPA.em().persist(item));
+      scheduleDispatch();
+      return;
+    }
+
+    // the queued email is only visible to the dispatcher once committed
+    em.persist(item);
+    em.unwrap(org.hibernate.Session.class)
+        .getTransaction()
+        .registerSynchronization(
+            new Synchronization() {
+
+              @Override
+              public void beforeCompletion() {}
+
+              @Override
+              public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                  scheduleDispatch();
+                }
+              }
+            });
+  }
+
+  @Override
+  public void dispatch() {
+    if (!TenantModule.isEnabled()) {
+      scheduleDispatch();
+    }
+  }
+
+  private void sendDirect(MailSender sender, MimeMessage email) {
+    try {
+      send(sender, email);
+      Beans.get(AuditableRunner.class).run(() -> JPA.runInTransaction(() -> messageSent(email)));
+    } catch (Exception e) {
+      log.error("Unable to send message", e);
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  private synchronized ScheduledExecutorService getDispatcher() {
+    if (dispatcher == null) {
+      final int threads =
+          AppSettings.get().getInt(CONFIG_SMTP_QUEUE_THREADS, DEFAULT_QUEUE_THREADS);
+      dispatcher =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder().setNameFormat("mail-queue").setDaemon(true).build());
+      queueWorkers =
+          Executors.newFixedThreadPool(
+              Math.max(1, threads),
+              new ThreadFactoryBuilder()
+                  .setNameFormat("mail-queue-worker-%d")
+                  .setDaemon(true)
+                  .build());
+    }
+    return dispatcher;
+  }
+
+  private void scheduleDispatch() {
+    // several messages queued at once are sent by a single dispatch run
+    schedule(DISPATCH_DELAY);
+  }
+
+  /**
+   * Schedule the next dispatch run after the given delay, unless one is already scheduled earlier.
+   * A later run is replaced, so that there is never more than one run waiting.
+   */
+  private synchronized void schedule(long delay) {
+    if (nextDispatch != null) {
+      if (nextDispatch.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+        return;
+      }
+      nextDispatch.cancel(false);
+    }
+    nextDispatch = getDispatcher().schedule(this::runDispatch, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void runDispatch() {
+    synchronized (this) {
+      // emails queued from now on need another run
+      nextDispatch = null;
+    }
+    try {
+      Beans.get(AuditableRunner.class).run(this::dispatchQueue);
+    } catch (Exception e) {
+      log.error("Unable to send queued messages", e);
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  /** A queued email along with the result of the send attempt. */
+  private static final class Outgoing {
+
+    private final Long id;
+    private final byte[] content;
+
+    private MimeMessage email;
+    private String error;
+
+    private Outgoing(MailQueue item) {
+      this.id = item.getId();
+      this.content = item.getContent();
+    }
+  }
+
+  private void dispatchQueue() {
+    final AppSettings settings = AppSettings.get();
+    final int batchSize = settings.getInt(CONFIG_SMTP_QUEUE_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+
+    final List<MailQueue> due =
+        Query.of(MailQueue.class)
+            .filter("self.nextAttempt <= :now")
+            .bind("now", LocalDateTime.now())
+            .order("id")
+            .fetch(Math.max(1, batchSize));
+
+    final List<MailQueue> items = claim(due);
+    if (items.isEmpty()) {
+      if (due.isEmpty()) {
+        scheduleRetry();
+      } else {
+        scheduleDispatch();
+      }
+      return;
+    }
+
+    final Map<String, MailMessage> messages = new HashMap<>();
+    final Set<String> messageIds =
+        items.stream().map(MailQueue::getMessageId).filter(Objects::nonNull).collect(toSet());
+    if (!messageIds.isEmpty()) {
+      Query.of(MailMessage.class)
+          .filter("self.messageId in (:ids)")
+          .bind("ids", messageIds)
+          .fetch()
+          .forEach(message -> messages.put(message.getMessageId(), message));
+    }
+
+    // group emails by mail account so that each group is sent over a single connection
+    final Map<String, MailSender> senders = new HashMap<>();
+    final Map<String, List<Outgoing>> groups = new LinkedHashMap<>();
+    final List<Outgoing> skipped = new ArrayList<>();
+    for (MailQueue item : items) {
+      final MailMessage message = messages.get(item.getMessageId());
+      final MailSender sender =
+          message == null ? getDefaultSender() : getMailSender(message, findEntity(message));
+      final Outgoing outgoing = new Outgoing(item);
+      if (sender == null) {
+        outgoing.error = "mail sender is not configured";
+        skipped.add(outgoing);
+      } else {
+        final String account = sender.getAccountKey();
+        senders.putIfAbsent(account, sender);
+        groups.computeIfAbsent(account, key -> new ArrayList<>()).add(outgoing);
+      }
+    }
+
+    final List<Future<?>> futures = new ArrayList<>();
+    for (Map.Entry<String, List<Outgoing>> group : groups.entrySet()) {
+      final String account = group.getKey();
+      futures.add(
+          queueWorkers.submit(() -> deliver(account, senders.get(account), group.getValue())));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        log.error("Unable to send queued messages", e.getCause());
+      }
+    }
+
+    final List<Outgoing> done = new ArrayList<>(skipped);
+    groups.values().forEach(done::addAll);
+    complete(done, settings);
+
+    log.debug(
+        "Mail queue: {} sent, {} failed, {} pending",
+        queueStats.getSent(),
+        queueStats.getFailed(),
+        getQueueDepth());
+
+    // continue with the remaining messages
+    if (due.size() >= batchSize) {
+      scheduleDispatch();
+    } else {
+      scheduleRetry();
+    }
+  }
+
+  /**
+   * Claim the given queued emails, so that they are not sent by another dispatch run or node.
+   *
+   * <p>An email is claimed by moving its next attempt forward, only if it has not been changed
+   * since it was fetched. Claimed emails that are not completed, say the node stopped while sending
+   * them, can be claimed again after {@link #CLAIM_TIMEOUT}.
+   */
+  private List<MailQueue> claim(List<MailQueue> items) {
+    final List<MailQueue> claimed = new ArrayList<>();
+    if (items.isEmpty()) {
+      return claimed;
+    }
+    final LocalDateTime lease = LocalDateTime.now().plus(CLAIM_TIMEOUT, ChronoUnit.MILLIS);
+    JPA.runInTransaction(
+        () -> {
+          final javax.persistence.Query update =
+              JPA.em()
+                  .createQuery(
+                      "UPDATE MailQueue self SET self.nextAttempt = :lease "
+                          + "WHERE self.id = :id AND self.nextAttempt = :seen");
+          for (MailQueue item : items) {
+            final int count =
+                update
+                    .setParameter("lease", lease)
+                    .setParameter("id", item.getId())
+                    .setParameter("seen", item.getNextAttempt())
+                    .executeUpdate();
+            if (count > 0) {
+              claimed.add(item);
+            }
           }
         });
+    return claimed;
   }
 
-  @Transactional(rollbackOn = Exception.class)
-  protected void send(final MailSender sender, final MimeMessage email) throws Exception {
-    final AuditableRunner runner = Beans.get(AuditableRunner.class);
-    final Callable<Boolean> job =
-        new Callable<Boolean>() {
-          @Override
-          public Boolean call() throws Exception {
-            sender.send(email);
-            messageSent(email);
-            return true;
+  private void scheduleRetry() {
+    final MailQueue next =
+        Query.of(MailQueue.class)
+            .filter("self.nextAttempt is not null")
+            .order("nextAttempt")
+            .fetchOne();
+    if (next != null) {
+      final long delay = Duration.between(LocalDateTime.now(), next.getNextAttempt()).toMillis();
+      schedule(Math.max(DISPATCH_DELAY, delay));
+    }
+  }
+
+  private void deliver(String account, MailSender sender, List<Outgoing> items) {
+    final RateLimiter limiter = getRateLimiter(account);
+    final Connection connection = new Connection(sender);
+    connections.set(connection);
+    try {
+      for (Outgoing item : items) {
+        if (limiter != null) {
+          limiter.acquire();
+        }
+        final long start = System.nanoTime();
+        try {
+          final MimeMessage email =
+              new MimeMessage((Session) null, new ByteArrayInputStream(item.content));
+          send(sender, email);
+          item.email = email;
+          queueStats.sent(System.nanoTime() - start);
+        } catch (Exception e) {
+          log.warn("Unable to send queued message: {}", e.getMessage());
+          item.error = e.toString();
+          queueStats.failed();
+        }
+      }
+    } finally {
+      connections.remove();
+      close(connection.transport);
+    }
+  }
+
+  /** The connection of a queue worker, reused for all the emails of the same mail account. */
+  private static final class Connection {
+
+    private final MailSender sender;
+
+    private Transport transport;
+
+    private Connection(MailSender sender) {
+      this.sender = sender;
+    }
+
+    private void send(MimeMessage email) throws MessagingException {
+      if (transport == null || !transport.isConnected()) {
+        close(transport);
+        transport = sender.connect();
+      }
+      transport.sendMessage(email, email.getAllRecipients());
+    }
+  }
+
+  private static void close(Transport transport) {
+    if (transport != null) {
+      try {
+        transport.close();
+      } catch (MessagingException e) {
+        // ignore
+      }
+    }
+  }
+
+  private static int getRateLimit() {
+    return AppSettings.get().getInt(CONFIG_SMTP_RATE_LIMIT, 0);
+  }
+
+  private RateLimiter getRateLimiter(String account) {
+    return getRateLimit() <= 0 ? null : rateLimiters.getUnchecked(account);
+  }
+
+  private void complete(List<Outgoing> items, AppSettings settings) {
+    final int maxAttempts = settings.getInt(CONFIG_SMTP_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS);
+    final long retryDelay = settings.getInt(CONFIG_SMTP_RETRY_DELAY, DEFAULT_RETRY_DELAY);
+    final List<MimeMessage> sent = new ArrayList<>();
+
+    // remove sent messages from the queue and reschedule failed ones with backoff
+    JPA.runInTransaction(
+        () -> {
+          final EntityManager em = JPA.em();
+          for (Outgoing item : items) {
+            final MailQueue entity = em.find(MailQueue.class, item.id);
+            if (entity == null) {
+              continue;
+            }
+            if (item.email != null) {
+              em.remove(entity);
+              sent.add(item.email);
+              continue;
+            }
+            final int attempts = entity.getAttempts() == null ? 1 : entity.getAttempts() + 1;
+            entity.setAttempts(attempts);
+            entity.setError(item.error);
+            if (attempts >= maxAttempts) {
+              log.error("Unable to send queued message after {} attempts", attempts);
+              entity.setNextAttempt(null);
+            } else {
+              final long delay = retryDelay << Math.min(attempts - 1, 16);
+              entity.setNextAttempt(LocalDateTime.now().plus(delay, ChronoUnit.MILLIS));
+            }
           }
-        };
-    runner.run(job);
+        });
+
+    if (sent.isEmpty()) {
+      return;
+    }
+
+    // run callbacks of the batch in a single transaction
+    try {
+      JPA.runInTransaction(() -> sent.forEach(this::messageSent));
+    } catch (Exception e) {
+      log.error("Unable to complete sent messages", e);
+    }
+  }
+
+  /**
+   * Get the number of emails waiting in the outgoing queue.
+   *
+   * @return number of queued emails, including the ones waiting for retry
+   */
+  public long getQueueDepth() {
+    return Query.of(MailQueue.class).filter("self.nextAttempt is not null").count();
+  }
+
+  /**
+   * Get the counters of the outgoing queue.
+   *
+   * @return the {@link QueueStats} of this service
+   */
+  public QueueStats getQueueStats() {
+    return queueStats;
+  }
+
+  /** Counters of the emails sent from the outgoing queue. */
+  public static final class QueueStats {
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong latency = new AtomicLong();
+
+    private void sent(long nanos) {
+      sent.incrementAndGet();
+      latency.addAndGet(nanos);
+    }
+
+    private void failed() {
+      failed.incrementAndGet();
+    }
+
+    /**
+     * Get the number of emails sent.
+     *
+     * @return number of emails sent
+     */
+    public long getSent() {
+      return sent.get();
+    }
+
+    /**
+     * Get the number of failed send attempts.
+     *
+     * @return number of failed attempts
+     */
+    public long getFailed() {
+      return failed.get();
+    }
+
+    /**
+     * Get the average time to send an email.
+     *
+     * @return average send latency in milliseconds
+     */
+    public double getAverageLatency() {
+      final long count = sent.get();
+      return count == 0 ? 0 : latency.get() / 1_000_000.0 / count;
+    }
+  }
+
+  /**
+   * Send the given email with the given sender.
+   *
+   * <p>This method is called by the outgoing queue workers for each queued email. The default
+   * implementation sends the email over the connection of the current worker, which is shared by
+   * the emails of the same mail account. The {@link #messageSent(MimeMessage)} callback is called
+   * once the batch of emails is completed.
+   *
+   * @param sender the mail sender
+   * @param email the email to send
+   * @throws Exception if the email could not be sent
+   */
+  protected void send(final MailSender sender, final MimeMessage email) throws Exception {
+    final Connection connection = connections.get();
+    if (connection == null || connection.sender != sender) {
+      sender.send(email);
+    } else {
+      connection.send(email);
+    }
   }
 
   /**
    * This method is called when email is sent successfully.
    *
-   * <p>This method is called by {@link #send(MailSender, MimeMessage)} which is running under a
-   * transaction with super user access.
+   * <p>This method is called by the outgoing queue workers, for each batch of sent emails under a
+   * single transaction with super user access.
    *
    * @param email the email message sent
    */
@@ -421,8 +949,8 @@ public class MailServiceImpl implements MailService, MailConstants {
    * This method is called when a new email message received.
    *
    * <p>This method is called by {@link #fetch(MailReader)} which is running under a database
-   * transaction. If this method returns an instance of {@link MailMessage}, the {@link
-   * #fetch(MailReader)} will persist the record.
+   * transaction for each batch of incoming messages. If this method returns an instance of {@link
+   * MailMessage}, the {@link #fetch(MailReader)} will persist the record.
    *
    * <p>The default implementation will parse the message and check if it's a reply to a message
    * sent by the system.
@@ -466,8 +994,7 @@ public class MailServiceImpl implements MailService, MailConstants {
     final MailAddressRepository emails = Beans.get(MailAddressRepository.class);
     final MailMessageRepository messages = Beans.get(MailMessageRepository.class);
 
-    final MailMessage parent =
-        messages.all().filter("self.messageId in (:ids)").bind("ids", parentIds).fetchOne();
+    final MailMessage parent = findMessage(parentIds);
 
     // no parent message found, ignore
     if (parent == null) {
@@ -475,7 +1002,7 @@ public class MailServiceImpl implements MailService, MailConstants {
       return null;
     }
 
-    final MailMessage existing = messages.all().filter("self.messageId = ?", messageId).fetchOne();
+    final MailMessage existing = findMessage(Collections.singleton(messageId));
 
     // very unlikely, message already exist
     if (existing != null) {
@@ -483,91 +1010,288 @@ public class MailServiceImpl implements MailService, MailConstants {
       return null;
     }
 
-    final MailMessage message = new MailMessage();
-    final String content = parser.getHtml() == null ? parser.getText() : parser.getHtml();
-    final String summary = parser.getSummary();
+    // store attachments on the worker pool while the message is being saved
+    final List<DataSource> sources = parser.getAttachments();
+    final List<Future<Path>> stored = new ArrayList<>();
+    for (DataSource ds : sources) {
+      stored.add(getAttachmentExecutor().submit(() -> store(ds)));
+    }
 
-    message.setSubject(parser.getSubject());
-    message.setBody(content);
-    message.setSummary(summary);
-    message.setType(MESSAGE_TYPE_EMAIL);
-    message.setRelatedModel(parent.getRelatedModel());
-    message.setRelatedId(parent.getRelatedId());
-    message.setRelatedName(parent.getRelatedName());
+    try {
+      final MailMessage message = new MailMessage();
+      final String content = parser.getHtml() == null ? parser.getText() : parser.getHtml();
+      final String summary = parser.getSummary();
+
+      message.setSubject(parser.getSubject());
+      message.setBody(content);
+      message.setSummary(summary);
+      message.setType(MESSAGE_TYPE_EMAIL);
+      message.setRelatedModel(parent.getRelatedModel());
+      message.setRelatedId(parent.getRelatedId());
+      message.setRelatedName(parent.getRelatedName());
+
+      final InternetAddress from = parser.getFrom();
+      final MailAddress address = emails.findOrCreate(from.getAddress(), from.getPersonal());
+      final User author = users.findByEmail(from.getAddress());
+
+      message.setAuthor(author);
+      message.setFrom(address);
+
+      // need to save before attaching files
+      messages.save(message);
+
+      final Map<String, MailMessage> known = batchMessages.get();
+      if (known != null && message.getMessageId() != null) {
+        known.put(message.getMessageId(), message);
+      }
 
-    final InternetAddress from = parser.getFrom();
-    final MailAddress address = emails.findOrCreate(from.getAddress(), from.getPersonal());
-    final User author = users.findByEmail(from.getAddress());
+      log.info("message from: {}", from.getAddress());
+
+      // handle attachments
+      final MetaAttachmentRepository attachments = Beans.get(MetaAttachmentRepository.class);
+      final MetaFiles files = Beans.get(MetaFiles.class);
+      for (int i = 0; i < sources.size(); i++) {
+        final DataSource ds = sources.get(i);
+        log.info("attaching file: {}", ds.getName());
+        final MetaFile file = new MetaFile();
+        file.setFileName(ds.getName());
+        files.upload(await(stored.get(i)).toFile(), file);
+        final MetaAttachment attachment = files.attach(file, message);
+        attachments.save(attachment);
+      }
 
-    message.setAuthor(author);
-    message.setFrom(address);
+      return message;
+    } finally {
+      // remove stored files not uploaded because of any error
+      for (Future<Path> future : stored) {
+        future.cancel(true);
+        if (future.isDone() && !future.isCancelled()) {
+          try {
+            Files.deleteIfExists(future.get());
+          } catch (Exception e) {
+            // ignore
+          }
+        }
+      }
+    }
+  }
 
-    // need to save before attaching files
-    messages.save(message);
+  private static Path store(DataSource ds) throws IOException {
+    final Path tmp = MetaFiles.createTempFile(null, null);
+    try (InputStream in = ds.getInputStream()) {
+      Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return tmp;
+  }
 
-    log.info("message from: {}", from.getAddress());
+  private static Path await(Future<Path> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
 
-    // handle attachments
-    final MetaAttachmentRepository attachments = Beans.get(MetaAttachmentRepository.class);
-    final MetaFiles files = Beans.get(MetaFiles.class);
-    for (DataSource ds : parser.getAttachments()) {
-      log.info("attaching file: {}", ds.getName());
-      final MetaFile file = files.upload(ds.getInputStream(), ds.getName());
-      final MetaAttachment attachment = files.attach(file, message);
-      attachments.save(attachment);
+  /**
+   * Find a message by any of the given message ids.
+   *
+   * <p>The messages of the batch being processed are looked up at once, the database is only
+   * queried for the ids not known to the batch.
+   */
+  private MailMessage findMessage(Collection<String> messageIds) {
+    final Map<String, MailMessage> known = batchMessages.get();
+    final Set<String> missing = new HashSet<>();
+    for (String id : messageIds) {
+      if (id == null) {
+        continue;
+      }
+      if (known == null || !known.containsKey(id)) {
+        missing.add(id);
+      } else if (known.get(id) != null) {
+        return known.get(id);
+      }
+    }
+    if (missing.isEmpty()) {
+      return null;
     }
+    final MailMessageRepository messages = Beans.get(MailMessageRepository.class);
+    return messages.all().filter("self.messageId in (:ids)").bind("ids", missing).fetchOne();
+  }
 
-    return message;
+  private Map<String, MailMessage> findMessages(List<MimeMessage> batch)
+      throws MessagingException {
+    final Map<String, MailMessage> found = new HashMap<>();
+    final Splitter splitter = Splitter.on(" ").trimResults().omitEmptyStrings();
+    for (MimeMessage email : batch) {
+      found.put(email.getMessageID(), null);
+      for (String name : REFERENCE_HEADERS) {
+        final String value = email.getHeader(name, " ");
+        if (value != null) {
+          splitter.split(value).forEach(id -> found.put(id, null));
+        }
+      }
+    }
+    found.remove(null);
+    if (found.isEmpty()) {
+      return found;
+    }
+    final MailMessageRepository messages = Beans.get(MailMessageRepository.class);
+    for (MailMessage message :
+        messages.all().filter("self.messageId in (:ids)").bind("ids", found.keySet()).fetch()) {
+      found.put(message.getMessageId(), message);
+    }
+    return found;
   }
 
   /**
-   * Fetch email messages from the given mail store.
+   * Process the given batch of incoming messages.
+   *
+   * <p>The batch is processed in its own transaction, so a failure only rolls back the current
+   * batch.
    *
-   * @param store the mail store to fetch message from
+   * @param batch the incoming messages
+   * @return the messages saved in database
    * @throws MessagingException if unable to parse message
    * @throws IOException if unable to load message content
    */
   @Transactional(rollbackOn = Exception.class)
-  protected void fetch(final MailReader reader) throws MessagingException, IOException {
+  protected Set<MimeMessage> receive(List<MimeMessage> batch)
+      throws MessagingException, IOException {
+    final MailMessageRepository repo = Beans.get(MailMessageRepository.class);
+    final Set<MimeMessage> saved = new HashSet<>();
+    batchMessages.set(findMessages(batch));
+    try {
+      for (MimeMessage email : batch) {
+        final MailMessage entity = messageReceived(email);
+        if (entity != null) {
+          repo.save(entity);
+          saved.add(email);
+        }
+      }
+    } finally {
+      batchMessages.remove();
+    }
+    return saved;
+  }
 
+  /**
+   * Fetch email messages from the given mail store.
+   *
+   * <p>New messages are fetched from the folders given by <code>mail.imap.folders</code> setting
+   * (INBOX by default) in batches of <code>mail.imap.batchSize</code> messages, each committed in
+   * its own transaction.
+   *
+   * @param reader the mail reader to fetch message from
+   * @throws MessagingException if unable to parse message
+   * @throws IOException if unable to load message content
+   */
+  protected void fetch(final MailReader reader) throws MessagingException, IOException {
     final Store store = reader.getStore();
-    final Folder inbox = store.getFolder("INBOX");
-    final MailMessageRepository repo = Beans.get(MailMessageRepository.class);
+    final String folders = AppSettings.get().get(CONFIG_IMAP_FOLDERS, DEFAULT_FOLDER);
+    for (String name : Splitter.on(",").trimResults().omitEmptyStrings().split(folders)) {
+      fetch(store, store.getFolder(name));
+    }
+  }
 
-    log.debug("Fetching new emails from: {}", store.getURLName());
+  private void fetch(Store store, Folder folder) throws MessagingException, IOException {
 
-    // open as READ_WRITE to mark messages as seen
-    inbox.open(Folder.READ_WRITE);
+    final int batchSize =
+        Math.max(1, AppSettings.get().getInt(CONFIG_IMAP_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+    final String key = store.getURLName() + "/" + folder.getFullName();
 
-    // find all unseen messages
-    final FlagTerm unseen = new FlagTerm(new Flags(Flags.Flag.SEEN), false);
-    final FlagTerm flagged = new FlagTerm(new Flags("fetched"), false);
-    final SearchTerm term = new AndTerm(unseen, flagged);
+    log.debug("Fetching new emails from: {}", key);
 
-    final FetchProfile profile = new FetchProfile();
-    final Message[] messages = inbox.search(term);
+    // open as READ_WRITE to mark messages as seen
+    folder.open(Folder.READ_WRITE);
 
+    final FetchProfile profile = new FetchProfile();
     profile.add(FetchProfile.Item.ENVELOPE);
-
-    // actually fetch the messages
-    inbox.fetch(messages, profile);
+    profile.add(FetchProfile.Item.CONTENT_INFO);
+    for (String name : REFERENCE_HEADERS) {
+      profile.add(name);
+    }
 
     int count = 0;
-    for (Message message : messages) {
-      if (message instanceof MimeMessage) {
-        final MailMessage entity = messageReceived((MimeMessage) message);
-        if (entity != null) {
-          repo.save(entity);
-          count += 1;
-        } else {
-          message.setFlag(Flags.Flag.SEEN, false);
-          message.setFlags(new Flags("fetched"), true);
+    try {
+      for (List<MimeMessage> batch : Lists.partition(findNew(folder, key), batchSize)) {
+
+        // actually fetch the messages
+        folder.fetch(batch.toArray(new Message[] {}), profile);
+
+        final Set<MimeMessage> saved = receive(batch);
+        for (MimeMessage message : batch) {
+          if (saved.contains(message)) {
+            message.setFlag(Flags.Flag.SEEN, true);
+          } else {
+            message.setFlag(Flags.Flag.SEEN, false);
+            message.setFlags(new Flags("fetched"), true);
+          }
+        }
+
+        if (folder instanceof UIDFolder) {
+          final UIDFolder uids = (UIDFolder) folder;
+          final long last = uids.getUID(batch.get(batch.size() - 1));
+          lastUids.put(key, new long[] {uids.getUIDValidity(), last});
+        }
+
+        count += saved.size();
+
+        // release the records of the committed batch
+        if (!JPA.em().getTransaction().isActive()) {
+          JPA.clear();
         }
       }
+    } finally {
+      log.debug("Fetched {} emails from: {}", count, key);
+      folder.close(false);
     }
+  }
 
-    log.debug("Fetched {} emails from: {}", count, store.getURLName());
-    inbox.close(false);
+  private List<MimeMessage> findNew(Folder folder, String key) throws MessagingException {
+    final long[] last = lastUids.get(key);
+    final boolean byUid =
+        folder instanceof UIDFolder
+            && last != null
+            && last[0] == ((UIDFolder) folder).getUIDValidity();
+
+    final Message[] found;
+    if (byUid) {
+      // only look at the messages received after the last fetch
+      found = ((UIDFolder) folder).getMessagesByUID(last[1] + 1, UIDFolder.LASTUID);
+      final FetchProfile profile = new FetchProfile();
+      profile.add(FetchProfile.Item.FLAGS);
+      profile.add(UIDFolder.FetchProfileItem.UID);
+      folder.fetch(found, profile);
+    } else {
+      // find all unseen messages
+      final FlagTerm unseen = new FlagTerm(new Flags(Flags.Flag.SEEN), false);
+      final FlagTerm flagged = new FlagTerm(new Flags("fetched"), false);
+      final SearchTerm term = new AndTerm(unseen, flagged);
+      found = folder.search(term);
+    }
+
+    final List<MimeMessage> messages = new ArrayList<>();
+    for (Message message : found) {
+      if (!(message instanceof MimeMessage)) {
+        continue;
+      }
+      if (byUid
+          && (message.isSet(Flags.Flag.SEEN)
+              || message.getFlags().contains("fetched")
+              || ((UIDFolder) folder).getUID(message) <= last[1])) {
+        continue;
+      }
+      // don't mark the message as seen until the batch is committed
+      if (message instanceof IMAPMessage) {
+        ((IMAPMessage) message).setPeek(true);
+      }
+      messages.add((MimeMessage) message);
+    }
+    return messages;
   }
 
   @Override
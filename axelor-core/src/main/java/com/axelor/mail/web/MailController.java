@@ -27,13 +27,16 @@ import com.axelor.mail.db.MailMessage;
 import com.axelor.mail.db.repo.MailFlagsRepository;
 import com.axelor.mail.db.repo.MailFollowerRepository;
 import com.axelor.mail.db.repo.MailMessageRepository;
+import com.axelor.mail.service.MailCounters;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
 import com.axelor.rpc.Context;
 import com.axelor.rpc.Response;
 import com.axelor.team.db.Team;
 import com.axelor.team.db.repo.TeamRepository;
+import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +45,8 @@ import javax.persistence.TypedQuery;
 
 public class MailController extends JpaSupport {
 
+  private static final int BATCH_SIZE = 500;
+
   private static final String SQL_UNREAD =
       ""
           + "SELECT mm FROM MailMessage mm "
@@ -100,23 +105,26 @@ public class MailController extends JpaSupport {
 
   @Inject private MailMessageRepository messages;
 
+  @Inject private MailCounters counters;
+
   public void countMail(ActionRequest request, ActionResponse response) {
+    final MailCounters.Counts counts = counters.get(AuthUtils.getUser());
     final Map<String, Object> value = new HashMap<>();
-    value.put("total", countMessages(SQL_INBOX));
-    value.put("unread", countMessages(SQL_UNREAD));
+    value.put("total", counts.getInbox());
+    value.put("unread", counts.getUnread());
     response.setValue("mail", value);
     response.setStatus(Response.STATUS_SUCCESS);
   }
 
   public void countUnread(ActionRequest request, ActionResponse response) {
-    response.setValue("unread", countMessages(SQL_UNREAD));
+    response.setValue("unread", counters.get(AuthUtils.getUser()).getUnread());
     response.setStatus(Response.STATUS_SUCCESS);
   }
 
   public void unread(ActionRequest request, ActionResponse response) {
 
     final List<Object> all = find(SQL_UNREAD, request.getOffset(), request.getLimit());
-    final Long total = countMessages(SQL_UNREAD);
+    final long total = counters.get(AuthUtils.getUser()).getUnread();
 
     response.setData(all);
     response.setOffset(request.getOffset());
@@ -126,7 +134,7 @@ public class MailController extends JpaSupport {
   public void inbox(ActionRequest request, ActionResponse response) {
 
     final List<Object> all = find(SQL_INBOX, request.getOffset(), request.getLimit());
-    final Long total = countMessages(SQL_INBOX);
+    final long total = counters.get(AuthUtils.getUser()).getInbox();
 
     response.setData(all);
     response.setOffset(request.getOffset());
@@ -136,7 +144,7 @@ public class MailController extends JpaSupport {
   public void important(ActionRequest request, ActionResponse response) {
 
     final List<Object> all = find(SQL_IMPORTANT, request.getOffset(), request.getLimit());
-    final Long total = countMessages(SQL_IMPORTANT);
+    final long total = counters.get(AuthUtils.getUser()).getImportant();
 
     response.setData(all);
     response.setOffset(request.getOffset());
@@ -146,7 +154,7 @@ public class MailController extends JpaSupport {
   public void archived(ActionRequest request, ActionResponse response) {
 
     final List<Object> all = find(SQL_ARCHIVE, request.getOffset(), request.getLimit());
-    final Long total = countMessages(SQL_ARCHIVE);
+    final long total = counters.get(AuthUtils.getUser()).getArchived();
 
     response.setData(all);
     response.setOffset(request.getOffset());
@@ -182,10 +190,11 @@ public class MailController extends JpaSupport {
 
     final MailMessage parent = messages.find((Long) request.getRecords().get(0));
     final List<MailMessage> found = findChildren(parent);
+    final Map<Long, MailFlags> flags =
+        Beans.get(MailFlagsRepository.class).findBy(found, AuthUtils.getUser());
     final List<Object> all = new ArrayList<>();
 
-    for (MailMessage message : found) {
-      Map<String, Object> details = messages.details(message);
+    for (Map<String, Object> details : messages.details(found, flags)) {
       details.put("$thread", true);
       all.add(details);
     }
@@ -242,46 +251,33 @@ public class MailController extends JpaSupport {
   }
 
   public String inboxMenuTag() {
-    Long total = countMessages(SQL_INBOX);
-    Long unread = countMessages(SQL_UNREAD);
-    if (total == null) {
-      return null;
-    }
-    if (unread == null) {
-      unread = 0L;
-    }
-    return String.format("%s/%s", unread, total);
+    final MailCounters.Counts counts = counters.get(AuthUtils.getUser());
+    return String.format("%s/%s", counts.getUnread(), counts.getInbox());
   }
 
   private List<MailMessage> findChildren(MailMessage message) {
-    final List<MailMessage> all = new ArrayList<>();
-    if (message.getReplies() == null) {
-      return all;
-    }
+    final MailMessage root = message.getRoot() == null ? message : message.getRoot();
+    final Map<Long, List<MailMessage>> children = new HashMap<>();
+
+    // load the whole thread at once and walk it in memory
     for (MailMessage msg :
-        messages.all().filter("self.parent.id = ?", message.getId()).order("-createdOn").fetch()) {
-      all.add(msg);
-      all.addAll(findChildren(msg));
+        messages.all().filter("self.root.id = ?", root.getId()).order("-createdOn").fetch()) {
+      if (msg.getParent() != null) {
+        children.computeIfAbsent(msg.getParent().getId(), key -> new ArrayList<>()).add(msg);
+      }
     }
+
+    final List<MailMessage> all = new ArrayList<>();
+    collectChildren(message.getId(), children, all);
     return all;
   }
 
-  private Long countMessages(String queryString) {
-
-    final String countString =
-        queryString
-            .replace("SELECT mm FROM MailMessage mm", "SELECT COUNT(mm.id) FROM MailMessage mm")
-            .replace(" ORDER BY mm.createdOn DESC", "");
-
-    final TypedQuery<Long> query = getEntityManager().createQuery(countString, Long.class);
-
-    query.setParameter("uid", AuthUtils.getUser().getId());
-
-    try {
-      return query.getSingleResult();
-    } catch (Exception e) {
+  private void collectChildren(
+      Long id, Map<Long, List<MailMessage>> children, List<MailMessage> all) {
+    for (MailMessage msg : children.getOrDefault(id, Collections.emptyList())) {
+      all.add(msg);
+      collectChildren(msg.getId(), children, all);
     }
-    return 0L;
   }
 
   private List<Object> find(String queryString, int offset, int limit) {
@@ -296,29 +292,73 @@ public class MailController extends JpaSupport {
     if (limit > 0) query.setMaxResults(limit);
 
     final List<MailMessage> found = query.getResultList();
-    final List<Object> all = new ArrayList<>();
+    final Map<Long, List<MailMessage>> replies = findReplies(found);
 
-    for (MailMessage message : found) {
-      final Map<String, Object> details = messages.details(message);
-      final List<MailMessage> replies =
-          messages.all().filter("self.root.id = ?", message.getId()).order("-createdOn").fetch();
-      final List<Object> unread = new ArrayList<>();
+    final List<MailMessage> loaded = new ArrayList<>(found);
+    replies.values().forEach(loaded::addAll);
 
-      for (MailMessage reply : replies) {
-        final MailFlags flags = flagsRepo.findBy(reply, AuthUtils.getUser());
-        if (flags == null || flags.getIsRead() == Boolean.FALSE) {
-          unread.add(messages.details(reply));
+    final Map<Long, MailFlags> flags = flagsRepo.findBy(loaded, AuthUtils.getUser());
+
+    // only the details of the messages shown are required
+    final List<MailMessage> shown = new ArrayList<>(found);
+    final Map<Long, List<MailMessage>> unread = new HashMap<>();
+
+    for (MailMessage message : found) {
+      final List<MailMessage> items = new ArrayList<>();
+      for (MailMessage reply : replies.getOrDefault(message.getId(), Collections.emptyList())) {
+        final MailFlags flag = flags.get(reply.getId());
+        if (flag == null || flag.getIsRead() == Boolean.FALSE) {
+          items.add(reply);
         }
       }
+      unread.put(message.getId(), items);
+      shown.addAll(items);
+    }
 
-      details.put("$name", details.get("relatedName"));
-      details.put("$thread", true);
-      details.put("$numReplies", replies.size());
-      details.put("$children", unread);
-      details.put("$hasMore", replies.size() > unread.size());
-      all.add(details);
+    final List<Map<String, Object>> details = messages.details(shown, flags);
+    final List<Object> all = new ArrayList<>();
+
+    // the details of the unread replies follow the ones of the top level messages
+    int next = found.size();
+    for (int i = 0; i < found.size(); i++) {
+      final MailMessage message = found.get(i);
+      final Map<String, Object> item = details.get(i);
+      final List<Object> children = new ArrayList<>();
+      final int numReplies = replies.getOrDefault(message.getId(), Collections.emptyList()).size();
+
+      for (int j = 0; j < unread.get(message.getId()).size(); j++) {
+        children.add(details.get(next++));
+      }
+
+      item.put("$name", item.get("relatedName"));
+      item.put("$thread", true);
+      item.put("$numReplies", numReplies);
+      item.put("$children", children);
+      item.put("$hasMore", numReplies > children.size());
+      all.add(item);
     }
 
     return all;
   }
+
+  private Map<Long, List<MailMessage>> findReplies(List<MailMessage> roots) {
+    final Map<Long, List<MailMessage>> found = new HashMap<>();
+    final List<Long> ids = new ArrayList<>();
+    for (MailMessage message : roots) {
+      ids.add(message.getId());
+    }
+    for (List<Long> items : Lists.partition(ids, BATCH_SIZE)) {
+      final List<MailMessage> replies =
+          messages
+              .all()
+              .filter("self.root.id IN (:ids)")
+              .bind("ids", items)
+              .order("-createdOn")
+              .fetch();
+      for (MailMessage reply : replies) {
+        found.computeIfAbsent(reply.getRoot().getId(), key -> new ArrayList<>()).add(reply);
+      }
+    }
+    return found;
+  }
 }
@@ -69,7 +69,8 @@ public class ActionHandler {
 
   private ScriptHelper scriptHelper;
 
-  private Pattern pattern = Pattern.compile("^\\s*(select\\[\\]|select|action|call|eval):\\s*(.*)");
+  private static final Pattern PATTERN =
+      Pattern.compile("^\\s*(select\\[\\]|select|action|call|eval):\\s*(.*)");
 
   public ActionHandler(ActionRequest request) {
 
@@ -112,7 +113,7 @@ public class ActionHandler {
     }
 
     String kind = null;
-    Matcher matcher = pattern.matcher(expression);
+    Matcher matcher = PATTERN.matcher(expression);
 
     if (matcher.matches()) {
       kind = matcher.group(1);
@@ -144,6 +145,29 @@ public class ActionHandler {
     return expr;
   }
 
+  /**
+   * Get the groovy script evaluated by {@link #evaluate(String)} for the given expression.
+   *
+   * @param expression the expression prefixed with action type
+   * @return script text or null if the expression is not evaluated as groovy script
+   */
+  public static String getScript(String expression) {
+    if (StringUtils.isEmpty(expression) || isEL(expression)) {
+      return null;
+    }
+    final Matcher matcher = PATTERN.matcher(expression);
+    if (!matcher.matches() || !"eval".equals(matcher.group(1))) {
+      return null;
+    }
+    final String script = matcher.group(2);
+    return StringUtils.isBlank(script) || isEL(script) ? null : script;
+  }
+
+  private static boolean isEL(String expression) {
+    final String expr = expression.trim();
+    return expr.startsWith("#{") && expr.endsWith("}");
+  }
+
   public Object call(String className, String method) {
     ActionResponse response = new ActionResponse();
     try {
@@ -43,6 +43,7 @@ import com.axelor.meta.schema.ObjectViews;
 import com.axelor.meta.schema.actions.Action;
 import com.axelor.meta.schema.views.Selection;
 import com.axelor.script.CompositeScriptHelper;
+import com.axelor.script.GroovyScriptHelper;
 import com.axelor.script.ScriptHelper;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -59,6 +60,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -90,6 +92,9 @@ public final class MetaStore {
       action = XMLViews.findAction(name);
       if (action != null) {
         ACTIONS.put(name, action);
+        final Set<String> scripts = new LinkedHashSet<>();
+        action.collectScripts(scripts);
+        GroovyScriptHelper.compile(name, scripts);
       }
     }
     if (action == null) {
@@ -522,6 +527,7 @@ public final class MetaStore {
 
   public static void clear() {
     ACTIONS.invalidateAll();
+    XMLViews.invalidate();
   }
 
   public static void invalidate(String name) {
@@ -54,6 +54,7 @@ import com.axelor.meta.schema.views.PanelField;
 import com.axelor.meta.schema.views.PanelRelated;
 import com.axelor.meta.schema.views.Selection;
 import com.axelor.meta.service.MetaService;
+import com.axelor.script.GroovyScriptHelper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
@@ -72,6 +73,7 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -268,6 +270,8 @@ public class ViewLoader extends AbstractLoader {
     }
 
     entity = views.save(entity);
+
+    XMLViews.invalidate(name, modelName);
   }
 
   private void importSelection(Selection selection, Module module, boolean update) {
@@ -448,6 +452,11 @@ public class ViewLoader extends AbstractLoader {
 
     entity = actions.save(entity);
 
+    // compile the scripts of the action in advance
+    final Set<String> scripts = new LinkedHashSet<>();
+    action.collectScripts(scripts);
+    GroovyScriptHelper.compile(name, scripts);
+
     for (MetaMenu pending : this.resolve(MetaMenu.class, entity.getName())) {
       log.debug("Resolved menu: {}", pending.getName());
       pending.setAction(entity);
@@ -20,6 +20,8 @@ package com.axelor.meta.loader;
 import com.axelor.auth.AuthUtils;
 import com.axelor.auth.db.User;
 import com.axelor.common.StringUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.tenants.TenantResolver;
 import com.axelor.inject.Beans;
 import com.axelor.meta.db.MetaAction;
 import com.axelor.meta.db.MetaModel;
@@ -36,6 +38,8 @@ import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
@@ -48,7 +52,11 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.transaction.Synchronization;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -56,6 +64,7 @@ import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -79,6 +88,100 @@ public class XMLViews {
   private static Marshaller marshaller;
   private static Unmarshaller unmarshaller;
 
+  private static JAXBContext context;
+  private static Schema schema;
+
+  // unmarshallers are not thread safe, so use one per thread instead of a global lock
+  private static final ThreadLocal<Unmarshaller> UNMARSHALLERS =
+      ThreadLocal.withInitial(XMLViews::newUnmarshaller);
+
+  private static final int CACHE_SIZE = 5000;
+
+  // bounds how long the changes done by other nodes are not seen
+  private static final int CACHE_EXPIRE = 1;
+
+  private static final Cache<ViewKey, ResolvedView> VIEWS =
+      CacheBuilder.newBuilder()
+          .maximumSize(CACHE_SIZE)
+          .expireAfterWrite(CACHE_EXPIRE, TimeUnit.MINUTES)
+          .build();
+
+  private static final Cache<ViewKey, List<ResolvedView>> EXTENSIONS =
+      CacheBuilder.newBuilder()
+          .maximumSize(CACHE_SIZE)
+          .expireAfterWrite(CACHE_EXPIRE, TimeUnit.MINUTES)
+          .build();
+
+  // the personalized views of each tenant, as "name:user" entries
+  private static final Cache<String, Set<String>> CUSTOM_VIEWS =
+      CacheBuilder.newBuilder().expireAfterWrite(CACHE_EXPIRE, TimeUnit.MINUTES).build();
+
+  /** The lookup parameters of a view. */
+  private static final class ViewKey {
+
+    private final String tenant;
+    private final String name;
+    private final String type;
+    private final String model;
+    private final String module;
+    private final Long group;
+    private final Long user;
+
+    private ViewKey(
+        String name, String type, String model, String module, Long group, Long user) {
+      this.tenant = TenantResolver.currentTenantIdentifier();
+      this.name = name;
+      this.type = type;
+      this.model = model;
+      this.module = module;
+      this.group = group;
+      this.user = user;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tenant, name, type, model, module, group, user);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof ViewKey)) return false;
+      final ViewKey other = (ViewKey) obj;
+      return Objects.equals(tenant, other.tenant)
+          && Objects.equals(name, other.name)
+          && Objects.equals(type, other.type)
+          && Objects.equals(model, other.model)
+          && Objects.equals(module, other.module)
+          && Objects.equals(group, other.group)
+          && Objects.equals(user, other.user);
+    }
+  }
+
+  /** The xml and attributes of a resolved view, the xml is parsed again on every read. */
+  private static final class ResolvedView {
+
+    private final String name;
+    private final String xml;
+    private final Long viewId;
+    private final String helpLink;
+    private final Long modelId;
+
+    private ResolvedView(String name, String xml, Long viewId, String helpLink, Long modelId) {
+      this.name = name;
+      this.xml = xml;
+      this.viewId = viewId;
+      this.helpLink = helpLink;
+      this.modelId = modelId;
+    }
+
+    private boolean matches(ViewKey key, String name, String model) {
+      return Objects.equals(this.name, name)
+          || Objects.equals(key.name, name)
+          || (key.name == null && Objects.equals(key.model, model));
+    }
+  }
+
   static {
     try {
       init();
@@ -91,7 +194,7 @@ public class XMLViews {
     if (unmarshaller != null) {
       return;
     }
-    JAXBContext context = JAXBContext.newInstance(ObjectViews.class);
+    context = JAXBContext.newInstance(ObjectViews.class);
     unmarshaller = context.createUnmarshaller();
     marshaller = context.createMarshaller();
     marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
@@ -109,7 +212,7 @@ public class XMLViews {
     }
 
     SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-    Schema schema = schemaFactory.newSchema(Resources.getResource(LOCAL_SCHEMA));
+    schema = schemaFactory.newSchema(Resources.getResource(LOCAL_SCHEMA));
 
     unmarshaller.setSchema(schema);
     marshaller.setSchema(schema);
@@ -124,16 +227,22 @@ public class XMLViews {
     }
   }
 
-  public static ObjectViews unmarshal(InputStream stream) throws JAXBException {
-    synchronized (unmarshaller) {
-      return (ObjectViews) unmarshaller.unmarshal(stream);
+  private static Unmarshaller newUnmarshaller() {
+    try {
+      final Unmarshaller instance = context.createUnmarshaller();
+      instance.setSchema(schema);
+      return instance;
+    } catch (JAXBException e) {
+      throw new RuntimeException(e);
     }
   }
 
+  public static ObjectViews unmarshal(InputStream stream) throws JAXBException {
+    return (ObjectViews) UNMARSHALLERS.get().unmarshal(stream);
+  }
+
   public static ObjectViews unmarshal(String xml) throws JAXBException {
-    synchronized (unmarshaller) {
-      return (ObjectViews) unmarshaller.unmarshal(new StringReader(prepareXML(xml)));
-    }
+    return (ObjectViews) UNMARSHALLERS.get().unmarshal(new StringReader(prepareXML(xml)));
   }
 
   public static void marshal(ObjectViews views, Writer writer) throws JAXBException {
@@ -207,7 +316,7 @@ public class XMLViews {
     if (!xml.trim().startsWith("<?xml")) xml = prepareXML(xml);
 
     StringReader reader = new StringReader(xml);
-    return (ObjectViews) unmarshaller.unmarshal(reader);
+    return (ObjectViews) UNMARSHALLERS.get().unmarshal(reader);
   }
 
   /** Apply pending updates if auto-update watch is running. */
@@ -215,6 +324,75 @@ public class XMLViews {
     ViewWatcher.process();
   }
 
+  /**
+   * Invalidate the cached lookups of the views with the given name or model.
+   *
+   * @param name the view name
+   * @param model the view model, can be null
+   */
+  public static void invalidate(String name, String model) {
+    VIEWS.asMap().entrySet().removeIf(e -> e.getValue().matches(e.getKey(), name, model));
+    EXTENSIONS
+        .asMap()
+        .keySet()
+        .removeIf(k -> Objects.equals(k.name, name) || Objects.equals(k.model, model));
+    CUSTOM_VIEWS.invalidateAll();
+  }
+
+  /**
+   * Invalidate the cached lookups of the views with the given name or model once the current
+   * transaction is completed.
+   *
+   * <p>This is required when the views are changed with bulk updates, which are not seen by the
+   * {@link com.axelor.auth.AuditInterceptor}, else the old views could be cached again before the
+   * commit.
+   *
+   * @param name the view name
+   * @param model the view model, can be null
+   */
+  public static void invalidateOnCompletion(String name, String model) {
+    final EntityManager em = JPA.em();
+    if (!em.getTransaction().isActive()) {
+      invalidate(name, model);
+      return;
+    }
+    em.unwrap(Session.class)
+        .getTransaction()
+        .registerSynchronization(
+            new Synchronization() {
+
+              @Override
+              public void beforeCompletion() {}
+
+              @Override
+              public void afterCompletion(int status) {
+                invalidate(name, model);
+              }
+            });
+  }
+
+  /** Invalidate all the cached view lookups. */
+  public static void invalidate() {
+    VIEWS.invalidateAll();
+    EXTENSIONS.invalidateAll();
+    CUSTOM_VIEWS.invalidateAll();
+  }
+
+  private static boolean hasCustomView(String name, User user) {
+    final String tenant = String.valueOf(TenantResolver.currentTenantIdentifier());
+    Set<String> found = CUSTOM_VIEWS.getIfPresent(tenant);
+    if (found == null) {
+      final String select = "SELECT self.name, self.user.id FROM MetaViewCustom self";
+      final List<Object[]> rows = JPA.em().createQuery(select, Object[].class).getResultList();
+      found = new HashSet<>();
+      for (Object[] row : rows) {
+        found.add(row[0] + ":" + row[1]);
+      }
+      CUSTOM_VIEWS.put(tenant, found);
+    }
+    return found.contains(name + ":" + user.getId());
+  }
+
   public static Map<String, Object> findViews(String model, Map<String, String> views) {
     final Map<String, Object> result = Maps.newHashMap();
     if (views == null || views.isEmpty()) {
@@ -292,24 +470,60 @@ public class XMLViews {
    */
   public static AbstractView findView(String name, String type, String model, String module) {
 
-    final MetaViewRepository views = Beans.get(MetaViewRepository.class);
-    final MetaViewCustomRepository customViews = Beans.get(MetaViewCustomRepository.class);
-
     final User user = AuthUtils.getUser();
     final Long group = user != null && user.getGroup() != null ? user.getGroup().getId() : null;
+    // only the users having a personalized view get their own cache entries
+    final User owner =
+        module == null && name != null && user != null && hasCustomView(name, user)
+            ? user
+            : null;
+
+    // make sure hot updates are applied
+    applyHotUpdates();
+
+    final ViewKey key =
+        new ViewKey(name, type, model, module, group, owner == null ? null : owner.getId());
+
+    ResolvedView resolved = VIEWS.getIfPresent(key);
+    if (resolved == null) {
+      resolved = resolveView(name, type, model, module, group, owner);
+      if (resolved == null) {
+        return null;
+      }
+      VIEWS.put(key, resolved);
+    }
+
+    final AbstractView xmlView;
+    try {
+      xmlView = ((ObjectViews) XMLViews.unmarshal(resolved.xml)).getViews().get(0);
+    } catch (Exception e) {
+      return null;
+    }
+    if (resolved.viewId != null) {
+      xmlView.setViewId(resolved.viewId);
+      xmlView.setHelpLink(resolved.helpLink);
+      if (resolved.modelId != null) {
+        xmlView.setModelId(resolved.modelId);
+      }
+    }
+    return xmlView;
+  }
+
+  private static ResolvedView resolveView(
+      String name, String type, String model, String module, Long group, User user) {
+
+    final MetaViewRepository views = Beans.get(MetaViewRepository.class);
+    final MetaViewCustomRepository customViews = Beans.get(MetaViewCustomRepository.class);
 
     MetaView view = null;
     MetaViewCustom custom = null;
 
     // find personalized view
-    if (module == null && name != null && user != null) {
+    if (user != null) {
       custom = customViews.findByUser(name, model, user);
       custom = custom == null ? customViews.findByUser(name, user) : custom;
     }
 
-    // make sure hot updates are applied
-    applyHotUpdates();
-
     // first find by name
     if (name != null) {
       // with group
@@ -327,32 +541,31 @@ public class XMLViews {
       view = view == null ? findMetaView(views, null, type, model, module, null) : view;
     }
 
-    final AbstractView xmlView;
-    final MetaModel metaModel;
-    try {
-      final String xml = custom == null ? view.getXml() : custom.getXml();
-      xmlView = ((ObjectViews) XMLViews.unmarshal(xml)).getViews().get(0);
-    } catch (Exception e) {
+    if (custom == null && view == null) {
       return null;
     }
-    if (view != null) {
-      xmlView.setViewId(view.getId());
-      xmlView.setHelpLink(view.getHelpLink());
-      if (view.getModel() != null) {
-        metaModel =
-            Beans.get(MetaModelRepository.class)
-                .all()
-                .filter("self.fullName = :name")
-                .bind("name", view.getModel())
-                .cacheable()
-                .autoFlush(false)
-                .fetchOne();
-        if (metaModel != null) {
-          xmlView.setModelId(metaModel.getId());
-        }
+
+    final String xml = custom == null ? view.getXml() : custom.getXml();
+    if (view == null) {
+      return new ResolvedView(custom.getName(), xml, null, null, null);
+    }
+
+    Long modelId = null;
+    if (view.getModel() != null) {
+      final MetaModel metaModel =
+          Beans.get(MetaModelRepository.class)
+              .all()
+              .filter("self.fullName = :name")
+              .bind("name", view.getModel())
+              .cacheable()
+              .autoFlush(false)
+              .fetchOne();
+      if (metaModel != null) {
+        modelId = metaModel.getId();
       }
     }
-    return xmlView;
+
+    return new ResolvedView(view.getName(), xml, view.getId(), view.getHelpLink(), modelId);
   }
 
   /**
@@ -366,9 +579,31 @@ public class XMLViews {
    */
   public static List<AbstractView> findExtensions(
       String name, String model, String type, String module) {
-    final MetaViewRepository repo = Beans.get(MetaViewRepository.class);
     final User user = AuthUtils.getUser();
     final Long group = user != null && user.getGroup() != null ? user.getGroup().getId() : null;
+    final ViewKey key = new ViewKey(name, type, model, module, group, null);
+
+    List<ResolvedView> resolved = EXTENSIONS.getIfPresent(key);
+    if (resolved == null) {
+      resolved = resolveExtensions(name, model, type, module, group);
+      EXTENSIONS.put(key, resolved);
+    }
+
+    final List<AbstractView> all = new ArrayList<>();
+    for (ResolvedView view : resolved) {
+      try {
+        final AbstractView xmlView =
+            ((ObjectViews) XMLViews.unmarshal(view.xml)).getViews().get(0);
+        all.add(xmlView);
+      } catch (Exception e) {
+      }
+    }
+    return all;
+  }
+
+  private static List<ResolvedView> resolveExtensions(
+      String name, String model, String type, String module, Long group) {
+    final MetaViewRepository repo = Beans.get(MetaViewRepository.class);
     final List<String> select = new ArrayList<>();
     select.add("self.extension = true");
     select.add("self.name = :name");
@@ -390,16 +625,11 @@ public class XMLViews {
             .cacheable()
             .order("-priority")
             .fetch();
-    final List<AbstractView> all = new ArrayList<>();
+    final List<ResolvedView> all = new ArrayList<>();
     for (MetaView view : metaViews) {
-      try {
-        final AbstractView xmlView =
-            ((ObjectViews) XMLViews.unmarshal(view.getXml())).getViews().get(0);
-        all.add(xmlView);
-      } catch (Exception e) {
-      }
+      all.add(new ResolvedView(view.getName(), view.getXml(), view.getId(), null, null));
     }
-    return all;
+    return ImmutableList.copyOf(all);
   }
 
   public static Action findAction(String name) {
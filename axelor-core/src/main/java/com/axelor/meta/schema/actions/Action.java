@@ -21,6 +21,7 @@ import com.axelor.meta.ActionHandler;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import java.util.Collection;
 import java.util.regex.Pattern;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlTransient;
@@ -89,6 +90,27 @@ public abstract class Action {
 
   public abstract Object evaluate(ActionHandler handler);
 
+  /**
+   * Collect the groovy scripts evaluated by this action, so that they can be compiled in advance.
+   *
+   * @param scripts the collection to add the scripts to
+   */
+  public void collectScripts(Collection<String> scripts) {}
+
+  static void addScript(Collection<String> scripts, String expression) {
+    final String script = ActionHandler.getScript(expression);
+    if (script != null) {
+      scripts.add(script);
+    }
+  }
+
+  static void addCondition(Collection<String> scripts, String condition) {
+    if (Strings.isNullOrEmpty(condition) || "true".equals(condition) || "false".equals(condition)) {
+      return;
+    }
+    addScript(scripts, toExpression(condition, false));
+  }
+
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(getClass()).add("name", getName()).toString();
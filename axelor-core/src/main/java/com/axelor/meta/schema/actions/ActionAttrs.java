@@ -20,6 +20,7 @@ package com.axelor.meta.schema.actions;
 import com.axelor.meta.ActionHandler;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -87,6 +88,22 @@ public class ActionAttrs extends Action {
     return map;
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    if (attributes == null) {
+      return;
+    }
+    for (Attribute attribute : attributes) {
+      addCondition(scripts, attribute.getCondition());
+      if (attribute.getName() != null
+          && attribute.getName().matches("readonly|required|recommend|hidden|collapse")) {
+        addCondition(scripts, attribute.getExpression());
+      } else {
+        addScript(scripts, attribute.getExpression());
+      }
+    }
+  }
+
   @Override
   public Object wrap(ActionHandler handler) {
     final Object value = evaluate(handler);
@@ -24,6 +24,7 @@ import com.axelor.meta.ActionHandler;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +72,22 @@ public class ActionCondition extends Action {
     return ObjectUtils.isEmpty(errors) ? true : errors;
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    if (conditions == null) {
+      return;
+    }
+    for (Check check : conditions) {
+      if (Strings.isNullOrEmpty(check.getField())) {
+        addCondition(scripts, check.getCondition());
+        continue;
+      }
+      for (String field : check.getField().split(",")) {
+        addCondition(scripts, check.getCondition(field.trim()));
+      }
+    }
+  }
+
   @Override
   public Object wrap(ActionHandler handler) {
     final Object value = evaluate(handler);
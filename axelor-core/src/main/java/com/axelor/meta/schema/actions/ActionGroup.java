@@ -55,6 +55,13 @@ public class ActionGroup extends ActionResumable {
     this.actions = actions;
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    if (actions != null) {
+      actions.forEach(item -> addCondition(scripts, item.getCondition()));
+    }
+  }
+
   public void addAction(String name) {
     if (this.actions == null) {
       this.actions = Lists.newArrayList();
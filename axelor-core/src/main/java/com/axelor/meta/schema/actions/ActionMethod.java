@@ -18,6 +18,7 @@
 package com.axelor.meta.schema.actions;
 
 import com.axelor.meta.ActionHandler;
+import java.util.Collection;
 import java.util.regex.Pattern;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
@@ -62,6 +63,13 @@ public class ActionMethod extends Action {
     this.call = call;
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    if (call != null) {
+      addCondition(scripts, call.getCondition());
+    }
+  }
+
   private boolean isRpc(String methodCall) {
     return Pattern.matches("(\\w+)\\((.*?)\\)", methodCall);
   }
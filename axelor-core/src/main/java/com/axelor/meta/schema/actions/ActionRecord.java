@@ -26,6 +26,7 @@ import com.axelor.meta.ActionHandler;
 import com.axelor.rpc.Resource;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -206,6 +207,19 @@ public class ActionRecord extends Action {
     return Action.test(handler, saveIf);
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    addScript(scripts, ref);
+    addCondition(scripts, saveIf);
+    if (fields == null) {
+      return;
+    }
+    for (RecordField field : fields) {
+      addCondition(scripts, field.getCondition());
+      addScript(scripts, field.getExpression());
+    }
+  }
+
   @Override
   public Object wrap(ActionHandler handler) {
     final Map<String, Object> map = new HashMap<>();
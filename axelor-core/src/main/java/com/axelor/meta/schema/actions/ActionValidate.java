@@ -24,6 +24,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -98,6 +99,13 @@ public class ActionValidate extends ActionResumable {
     return action;
   }
 
+  @Override
+  public void collectScripts(Collection<String> scripts) {
+    if (validators != null) {
+      validators.forEach(validator -> addCondition(scripts, validator.getCondition()));
+    }
+  }
+
   @Override
   public Object evaluate(ActionHandler handler) {
 
@@ -497,7 +497,9 @@ public class MetaService {
     Query deleteQuery =
         JPA.em().createQuery("DELETE FROM MetaViewCustom self WHERE self.name = :name");
     deleteQuery.setParameter("name", view.getName());
-    return deleteQuery.executeUpdate();
+    final int count = deleteQuery.executeUpdate();
+    XMLViews.invalidateOnCompletion(view.getName(), view.getModel());
+    return count;
   }
 
   @SuppressWarnings("all")
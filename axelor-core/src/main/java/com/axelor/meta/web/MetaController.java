@@ -179,8 +179,8 @@ public class MetaController {
   public void restoreAll(ActionRequest request, ActionResponse response) {
     try {
       MetaStore.clear();
-      I18nBundle.invalidate();
       moduleManager.restoreMeta();
+      I18nBundle.invalidate();
       response.setNotify(
           I18n.get("All views have been restored.")
               + "<br>"
@@ -17,25 +17,45 @@
  */
 package com.axelor.report;
 
+import com.axelor.app.AppSettings;
 import com.axelor.app.internal.AppFilter;
 import com.axelor.db.JPA;
 import com.axelor.meta.MetaFiles;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.data.oda.jdbc.IConnectionFactory;
 import org.eclipse.birt.report.engine.api.EngineConstants;
@@ -48,12 +68,52 @@ import org.eclipse.birt.report.engine.api.IRunAndRenderTask;
 import org.eclipse.birt.report.engine.api.RenderOption;
 import org.eclipse.birt.report.engine.emitter.pdf.PDFPageDevice;
 import org.eclipse.birt.report.model.api.IResourceLocator;
+import org.hibernate.Session;
+import org.hibernate.SessionBuilder;
+import org.hibernate.SessionFactory;
 
-/** The report generator service. */
+/**
+ * The report generator service.
+ *
+ * <p>Report designs are cached until modified, and reports are rendered on a bounded pool of
+ * workers, each using its own database connection, so that slow reports don't hold connections
+ * of the calling threads.
+ */
 public class ReportGenerator {
 
+  public static final String CONFIG_REPORT_THREADS = "axelor.report.threads";
+  public static final String CONFIG_REPORT_QUEUE = "axelor.report.queue";
+
+  public static final int DEFAULT_REPORT_THREADS = 4;
+  public static final int DEFAULT_REPORT_QUEUE = 100;
+
+  private static final Cache<String, IReportRunnable> DESIGNS =
+      CacheBuilder.newBuilder().maximumSize(100).build();
+
+  private static final ConcurrentMap<String, RenderStats> STATS = new ConcurrentHashMap<>();
+
+  private static ExecutorService executor;
+
   @Inject private IReportEngine engine;
 
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AppSettings settings = AppSettings.get();
+      final int threads =
+          Math.max(1, settings.getInt(CONFIG_REPORT_THREADS, DEFAULT_REPORT_THREADS));
+      final int queue = Math.max(1, settings.getInt(CONFIG_REPORT_QUEUE, DEFAULT_REPORT_QUEUE));
+      executor =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queue),
+              new ThreadFactoryBuilder().setNameFormat("report-%d").setDaemon(true).build());
+    }
+    return executor;
+  }
+
   /**
    * Generate a report for the given report design.
    *
@@ -73,6 +133,10 @@ public class ReportGenerator {
   /**
    * Generate a report for the given report design.
    *
+   * <p>If the calling thread is running a transaction, the report is rendered using the connection
+   * of that transaction so that uncommitted changes are visible to the report. Otherwise the report
+   * is rendered on the report workers.
+   *
    * @param output the report output stream
    * @param designName report design
    * @param format output format (e.g. pdf, html etc)
@@ -81,7 +145,6 @@ public class ReportGenerator {
    * @throws IOException if an I/O exception occurs
    * @throws BirtException if rendering fails
    */
-  @SuppressWarnings("unchecked")
   public void generate(
       OutputStream output,
       String designName,
@@ -90,50 +153,24 @@ public class ReportGenerator {
       Locale locale)
       throws IOException, BirtException {
 
-    final IResourceLocator locator = engine.getConfig().getResourceLocator();
-    final URL found = locator.findResource(null, designName, IResourceLocator.OTHERS);
-
-    if (found == null) {
-      throw new BirtException("No such report found: " + designName);
+    final EntityManager em = JPA.em();
+    if (em.getTransaction().isActive()) {
+      final IReportRunnable report = findDesign(designName);
+      try {
+        JPA.jdbcWork(connection -> render(report, output, format, params, locale, connection));
+      } catch (RuntimeException e) {
+        throw unwrap(e);
+      }
+      return;
     }
 
-    try (InputStream stream = found.openStream()) {
-
-      final IReportRunnable report = engine.openReportDesign(designName, stream);
-      final IRunAndRenderTask task = engine.createRunAndRenderTask(report);
-      final IRenderOption opts = new RenderOption();
-
-      opts.setOutputFormat(format);
-      opts.setOutputStream(output);
-
-      if (IRenderOption.OUTPUT_FORMAT_PDF.equals(format)) {
-        opts.setOption(IPDFRenderOption.PDF_HYPHENATION, true);
-      }
+    final SessionFactory factory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+    final String tenant = em.unwrap(Session.class).getTenantIdentifier();
 
-      task.setLocale(locale);
-      task.setRenderOption(opts);
-      task.setParameterValues(params);
-
-      task.getAppContext()
-          .put(EngineConstants.APPCONTEXT_CLASSLOADER_KEY, getClass().getClassLoader());
-      task.getAppContext().put(IConnectionFactory.CLOSE_PASS_IN_CONNECTION, Boolean.FALSE);
-
-      JPA.jdbcWork(
-          new JPA.JDBCWork() {
-
-            @Override
-            public void execute(Connection connection) throws SQLException {
-              task.getAppContext().put(IConnectionFactory.PASS_IN_CONNECTION, connection);
-              try {
-                task.run();
-              } catch (EngineException e) {
-                new RuntimeException(e);
-              } finally {
-                task.close();
-              }
-            }
-          });
-    }
+    await(
+        submit(
+            designName,
+            () -> generate(factory, tenant, output, designName, format, params, locale)));
   }
 
   /**
@@ -172,6 +209,235 @@ public class ReportGenerator {
     return tmpFile.toFile();
   }
 
+  /**
+   * Generate a report to a temporary file on the report workers.
+   *
+   * <p>The report is rendered with its own database connection, so changes not yet committed by
+   * the calling thread are not visible to the report.
+   *
+   * @param designName report design name
+   * @param format output format
+   * @param params report parameters
+   * @param locale report output language
+   * @return a {@link Future} of the generated file
+   * @throws BirtException if too many reports are waiting to be rendered
+   */
+  public Future<File> generateAsync(
+      String designName, String format, Map<String, Object> params, Locale locale)
+      throws BirtException {
+    Preconditions.checkNotNull(designName, "no report design name given");
+    final EntityManager em = JPA.em();
+    final SessionFactory factory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+    final String tenant = em.unwrap(Session.class).getTenantIdentifier();
+    return submit(
+        designName,
+        () -> {
+          final Path tmpFile = MetaFiles.createTempFile(null, "");
+          try (FileOutputStream stream = new FileOutputStream(tmpFile.toFile())) {
+            generate(factory, tenant, stream, designName, format, params, locale);
+          } catch (Exception e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+          }
+          return tmpFile.toFile();
+        });
+  }
+
+  private <T> Future<T> submit(String designName, Callable<T> task) throws BirtException {
+    try {
+      return getExecutor().submit(task);
+    } catch (RejectedExecutionException e) {
+      throw new BirtException("Too many reports are being generated, can't render: " + designName);
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException, BirtException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfInstanceOf(cause, BirtException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw birtException(cause);
+    }
+  }
+
+  private static BirtException birtException(Throwable cause) {
+    final BirtException e = new BirtException(cause.getMessage());
+    e.initCause(cause);
+    return e;
+  }
+
+  private Void generate(
+      SessionFactory factory,
+      String tenant,
+      OutputStream output,
+      String designName,
+      String format,
+      Map<String, Object> params,
+      Locale locale)
+      throws IOException, BirtException {
+
+    final IReportRunnable report = findDesign(designName);
+    final SessionBuilder<?> builder = factory.withOptions();
+
+    // use the tenant of the calling thread
+    if (tenant != null) {
+      builder.tenantIdentifier(tenant);
+    }
+
+    final Session session = builder.openSession();
+    try {
+      session.doWork(connection -> render(report, output, format, params, locale, connection));
+    } catch (RuntimeException e) {
+      throw unwrap(e);
+    } finally {
+      session.close();
+    }
+    return null;
+  }
+
+  private static BirtException unwrap(RuntimeException e) {
+    Throwable cause = e;
+    while (cause.getCause() != null && !(cause instanceof BirtException)) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof BirtException) {
+      return (BirtException) cause;
+    }
+    throw e;
+  }
+
+  /**
+   * Find the report design with the given name.
+   *
+   * <p>The opened design is cached, and opened again only if the design file is modified.
+   */
+  private IReportRunnable findDesign(String designName) throws IOException, BirtException {
+    final IResourceLocator locator = engine.getConfig().getResourceLocator();
+    final URL found = locator.findResource(null, designName, IResourceLocator.OTHERS);
+
+    if (found == null) {
+      throw new BirtException("No such report found: " + designName);
+    }
+
+    final long modified = found.openConnection().getLastModified();
+    final String key = designName + "|" + found.toExternalForm() + "|" + modified;
+
+    try {
+      return DESIGNS.get(
+          key,
+          () -> {
+            try (InputStream stream = found.openStream()) {
+              return engine.openReportDesign(designName, stream);
+            }
+          });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      final Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfInstanceOf(cause, BirtException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw birtException(cause);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void render(
+      IReportRunnable report,
+      OutputStream output,
+      String format,
+      Map<String, Object> params,
+      Locale locale,
+      Connection connection) {
+
+    final IRunAndRenderTask task = engine.createRunAndRenderTask(report);
+    final IRenderOption opts = new RenderOption();
+
+    opts.setOutputFormat(format);
+    opts.setOutputStream(output);
+
+    if (IRenderOption.OUTPUT_FORMAT_PDF.equals(format)) {
+      opts.setOption(IPDFRenderOption.PDF_HYPHENATION, true);
+    }
+
+    task.setLocale(locale);
+    task.setRenderOption(opts);
+    task.setParameterValues(params);
+
+    task.getAppContext()
+        .put(EngineConstants.APPCONTEXT_CLASSLOADER_KEY, getClass().getClassLoader());
+    task.getAppContext().put(IConnectionFactory.CLOSE_PASS_IN_CONNECTION, Boolean.FALSE);
+    task.getAppContext().put(IConnectionFactory.PASS_IN_CONNECTION, connection);
+
+    final long start = System.nanoTime();
+    try {
+      task.run();
+    } catch (EngineException e) {
+      throw new RuntimeException(e);
+    } finally {
+      task.close();
+      STATS
+          .computeIfAbsent(report.getReportName(), k -> new RenderStats())
+          .add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Get the render time statistics by report design.
+   *
+   * @return an unmodifiable map of {@link RenderStats} by report design name
+   */
+  public static Map<String, RenderStats> getStats() {
+    return Collections.unmodifiableMap(STATS);
+  }
+
+  /** Render time statistics of a report design. */
+  public static final class RenderStats {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private void add(long nanos) {
+      count.incrementAndGet();
+      total.addAndGet(nanos);
+      max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Get the number of rendered reports.
+     *
+     * @return number of reports
+     */
+    public long getCount() {
+      return count.get();
+    }
+
+    /**
+     * Get the average render time.
+     *
+     * @return average render time in milliseconds
+     */
+    public double getAverageTime() {
+      final long n = count.get();
+      return n == 0 ? 0 : total.get() / 1_000_000.0 / n;
+    }
+
+    /**
+     * Get the longest render time.
+     *
+     * @return longest render time in milliseconds
+     */
+    public double getMaxTime() {
+      return max.get() / 1_000_000.0;
+    }
+  }
+
   static {
     // BIRT when used as embedded library, shows full file path as version,
     // this is security risk as this information is exposed in pdf metadata
@@ -40,14 +40,12 @@ import com.axelor.db.mapper.Property;
 import com.axelor.db.mapper.PropertyType;
 import com.axelor.db.search.SearchService;
 import com.axelor.i18n.I18n;
-import com.axelor.i18n.I18nBundle;
 import com.axelor.i18n.L10n;
 import com.axelor.inject.Beans;
 import com.axelor.meta.MetaPermissions;
 import com.axelor.meta.MetaStore;
 import com.axelor.meta.db.MetaAction;
 import com.axelor.meta.db.MetaJsonRecord;
-import com.axelor.meta.db.MetaTranslation;
 import com.axelor.meta.schema.views.Selection;
 import com.axelor.rpc.filter.Filter;
 import com.google.common.base.Function;
@@ -74,12 +72,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityTransaction;
@@ -358,22 +357,32 @@ public class Resource<T extends Model> {
     int offset = request.getOffset();
     int limit = request.getLimit();
 
+    // without count, fetch one more record to know whether there are more pages
+    final boolean count = limit > 0 && !SEARCH_COUNT_NONE.equals(getCountMode(request));
+    final int fetchLimit = limit > 0 && !count ? limit + 1 : limit;
+
     Query<?> query = getSearchQuery(request, check ? filter : null).cacheable().readOnly();
     List<?> data = null;
     try {
-      if (limit > 0) {
+      if (count) {
         response.setTotal(query.count());
       }
       if (request.getFields() != null) {
         Query<?>.Selector selector = query.select(request.getFields().toArray(new String[] {}));
         LOG.debug("JPQL: {}", selector);
-        data = selector.fetch(limit, offset);
+        data = selector.fetch(fetchLimit, offset);
       } else {
         LOG.debug("JPQL: {}", query);
-        data = query.fetch(limit, offset);
+        data = query.fetch(fetchLimit, offset);
       }
       if (limit <= 0) {
         response.setTotal(data.size());
+      } else if (!count) {
+        final boolean more = data.size() > limit;
+        if (more) {
+          data = data.subList(0, limit);
+        }
+        response.setHasMore(more);
       }
     } catch (Exception e) {
       EntityTransaction txn = JPA.em().getTransaction();
@@ -391,6 +400,9 @@ public class Resource<T extends Model> {
     final boolean populate =
         request.getContext() != null && request.getContext().get("_populate") != Boolean.FALSE;
 
+    final List<Map<String, Object>> maps = new ArrayList<>();
+    final List<Integer> positions = new ArrayList<>();
+
     for (Object item : data) {
       if (item instanceof Model) {
         item = toMap(item);
@@ -400,14 +412,24 @@ public class Resource<T extends Model> {
         if (User.class.isAssignableFrom(model)) {
           map.remove("password");
         }
-        if (populate) {
-          item = repo.populate(map, request.getContext());
-        }
-        Translator.applyTranslatables(map, model);
+        positions.add(jsonData.size());
+        maps.add(map);
       }
       jsonData.add(item);
     }
 
+    // populate all the records of the page at once
+    if (populate && maps.size() > 0) {
+      repo.populate(maps, request.getContext());
+      for (int i = 0; i < maps.size(); i++) {
+        jsonData.set(positions.get(i), maps.get(i));
+      }
+    }
+
+    for (Map<String, Object> map : maps) {
+      Translator.applyTranslatables(map, model);
+    }
+
     try {
       // check for children (used by tree view)
       doChildCount(request, jsonData);
@@ -476,6 +498,23 @@ public class Resource<T extends Model> {
     }
   }
 
+  private static String getCountMode(Request request) {
+    final Map<String, Object> data = request.getData();
+    final Object mode = data == null ? null : data.get("_countMode");
+    return mode == null ? SEARCH_COUNT_MODE : mode.toString();
+  }
+
+  private static final String SEARCH_COUNT_EXACT = "exact";
+  private static final String SEARCH_COUNT_NONE = "none";
+
+  private static final String SEARCH_COUNT_MODE =
+      AppSettings.get().get("data.search.count-mode", SEARCH_COUNT_EXACT);
+
+  private static final int MASS_UPDATE_BATCH_SIZE =
+      AppSettings.get().getInt("data.mass-update.batch-size", 1000);
+  private static final boolean MASS_UPDATE_BATCH_COMMIT =
+      AppSettings.get().getBoolean("data.mass-update.batch-commit", false);
+
   private static final int DEFAULT_EXPORT_MAX_SIZE = -1;
   private static final int DEFAULT_EXPORT_FETCH_SIZE = 500;
 
@@ -484,6 +523,7 @@ public class Resource<T extends Model> {
   private static final int EXPORT_FETCH_SIZE =
       AppSettings.get().getInt("data.export.fetch-size", DEFAULT_EXPORT_FETCH_SIZE);
 
+  @Transactional
   @SuppressWarnings("all")
   public int export(Request request, Writer writer) throws IOException {
     security.get().check(JpaSecurity.CAN_READ, model);
@@ -632,68 +672,67 @@ public class Resource<T extends Model> {
 
     writer.write(Joiner.on(";").join(header));
 
-    int limit =
-        EXPORT_MAX_SIZE > 0 ? Math.min(EXPORT_FETCH_SIZE, EXPORT_MAX_SIZE) : EXPORT_FETCH_SIZE;
-    int offset = 0;
+    final L10n formatter = L10n.getInstance();
+    final List<Function<Object, String>> formatters = new ArrayList<>();
+    for (int i = 0; i < names.size(); i++) {
+      formatters.add(exportFormatter(selection.get(i), formatter));
+    }
+
+    int limit = EXPORT_MAX_SIZE > 0 ? EXPORT_MAX_SIZE : 0;
     int count = 0;
 
     Query<?> query = getQuery(request);
     Query<?>.Selector selector = query.select(names.toArray(new String[0]));
 
-    List<?> data = selector.values(limit, offset);
-
-    final L10n formatter = L10n.getInstance();
-
-    while (!data.isEmpty()) {
-      for (Object item : data) {
-        List<?> row = (List<?>) item;
-        List<String> line = new ArrayList<>();
-        int index = 0;
-        for (Object value : row) {
-          if (index++ < 2) continue; // ignore first two items (id, version)
-          Object objValue = value == null ? "" : value;
-          if (selection.containsKey(index - 3)) {
-            objValue = selection.get(index - 3).get(objValue.toString());
-          }
-          if (objValue instanceof Number) {
-            objValue = formatter.format((Number) objValue, false);
+    // single cursor instead of offset pages, which re-scan the skipped rows on every page
+    try (Stream<List> stream = selector.valuesStream(limit, EXPORT_FETCH_SIZE)) {
+      final Iterator<List> rows = stream.iterator();
+      while (rows.hasNext()) {
+        final List<?> row = rows.next();
+        final int size = Math.min(row.size() - 2, formatters.size());
+        writer.write('\n');
+        // ignore first two items (id, version)
+        for (int i = 0; i < size; i++) {
+          if (i > 0) {
+            writer.write(';');
           }
-          if (objValue instanceof LocalDate) {
-            objValue = formatter.format((LocalDate) objValue);
-          }
-          if (objValue instanceof LocalDateTime) {
-            objValue = formatter.format((LocalDateTime) objValue);
-          }
-          if (objValue instanceof ZonedDateTime) {
-            objValue = formatter.format((ZonedDateTime) objValue);
-          }
-          String strValue = objValue == null ? "" : escapeCsv(objValue.toString());
-          line.add(strValue);
-        }
-        writer.write("\n");
-        writer.write(Joiner.on(";").join(line));
-      }
-
-      count += data.size();
-
-      int nextLimit = limit;
-      if (EXPORT_MAX_SIZE > -1) {
-        if (count >= EXPORT_MAX_SIZE) {
-          break;
+          writer.write(formatters.get(i).apply(row.get(i + 2)));
         }
-        nextLimit = Math.min(limit, EXPORT_MAX_SIZE - count);
+        count++;
       }
-
-      offset += limit;
-      data = selector.values(nextLimit, offset);
     }
 
     return count;
   }
 
+  private Function<Object, String> exportFormatter(Map<String, String> selection, L10n formatter) {
+    // null values are exported as empty selection keys and empty quoted strings
+    if (selection != null) {
+      return value -> escapeCsv(selection.get(value == null ? "" : value.toString()));
+    }
+    return value -> {
+      if (value == null) {
+        return escapeCsv("");
+      }
+      if (value instanceof Number) {
+        return escapeCsv(formatter.format((Number) value, false));
+      }
+      if (value instanceof LocalDate) {
+        return escapeCsv(formatter.format((LocalDate) value));
+      }
+      if (value instanceof LocalDateTime) {
+        return escapeCsv(formatter.format((LocalDateTime) value));
+      }
+      if (value instanceof ZonedDateTime) {
+        return escapeCsv(formatter.format((ZonedDateTime) value));
+      }
+      return escapeCsv(value.toString());
+    };
+  }
+
   private String escapeCsv(String value) {
     if (value == null) return "";
-    if (value.indexOf('"') > -1) value = value.replaceAll("\"", "\"\"");
+    if (value.indexOf('"') > -1) value = value.replace("\"", "\"\"");
     return '"' + value + '"';
   }
 
@@ -848,50 +887,89 @@ public class Resource<T extends Model> {
       names = request.getFields().toArray(names);
     }
 
-    for (Object record : records) {
+    final List<Map> validated = Lists.newArrayList();
+    final Set<Long> writeIds = new LinkedHashSet<>();
+    boolean create = false;
 
+    for (Object record : records) {
       if (record == null) {
         continue;
       }
-
       record = (Map) repository.validate((Map) record, request.getContext());
+      validated.add((Map) record);
 
       Long id = findId((Map) record);
-      JpaSecurity.AccessType accessType =
-          id == null || id <= 0L ? JpaSecurity.CAN_CREATE : JpaSecurity.CAN_WRITE;
-
       if (id == null || id <= 0L) {
-        security.get().check(JpaSecurity.CAN_CREATE, model);
+        create = true;
+      } else {
+        writeIds.add(id);
       }
+    }
 
-      Map<String, Object> orig = (Map) ((Map) record).get("_original");
-      JPA.verify(model, orig);
+    // check permissions of all the records at once
+    if (create) {
+      security.get().check(JpaSecurity.CAN_CREATE, model);
+    }
+    if (writeIds.size() > 0) {
+      security.get().check(JpaSecurity.CAN_WRITE, model, writeIds.toArray(new Long[] {}));
+    }
 
-      Model bean = JPA.edit(model, (Map) record);
-      id = bean.getId();
+    final List<Model> beans = Lists.newArrayList();
+    final Set<Long> createdIds = new LinkedHashSet<>();
+    final Set<Long> updatedIds = new LinkedHashSet<>();
 
-      if (bean != null && id != null && id > 0L) {
-        security.get().check(JpaSecurity.CAN_WRITE, model, id);
-      }
+    final Runnable task =
+        () -> {
+          for (Map record : validated) {
 
-      // if user, update password
-      if (bean instanceof User) {
-        changeUserPassword((User) bean, (Map) record);
-      }
+            Long id = findId(record);
+            boolean created = id == null || id <= 0L;
 
-      bean = JPA.manage(bean);
-      if (repository != null) {
-        bean = repository.save(bean);
-      }
+            Map<String, Object> orig = (Map) record.get("_original");
+            JPA.verify(model, orig);
 
-      // check permission rules again
-      security.get().check(accessType, model, bean.getId());
+            Model bean = JPA.edit(model, record);
+
+            // if user, update password
+            if (bean instanceof User) {
+              changeUserPassword((User) bean, record);
+            }
+
+            bean = JPA.manage(bean);
+            if (repository != null) {
+              bean = repository.save(bean);
+            }
 
-      // if it's a translation object, invalidate cache
-      if (bean instanceof MetaTranslation) {
-        I18nBundle.invalidate();
+            if (created) {
+              createdIds.add(bean.getId());
+            } else {
+              updatedIds.add(bean.getId());
+            }
+            beans.add(bean);
+          }
+        };
+
+    if (validated.size() > 1) {
+      // bulk save, load referenced records at once and flush changes in jdbc batches
+      final SavePreloader preloader = new SavePreloader();
+      for (Map record : validated) {
+        preloader.collect(model, record).collect(model, (Map) record.get("_original"));
       }
+      preloader.load();
+      JPA.runInBatch(task);
+    } else {
+      task.run();
+    }
+
+    // check permission rules again
+    if (createdIds.size() > 0) {
+      security.get().check(JpaSecurity.CAN_CREATE, model, createdIds.toArray(new Long[] {}));
+    }
+    if (updatedIds.size() > 0) {
+      security.get().check(JpaSecurity.CAN_WRITE, model, updatedIds.toArray(new Long[] {}));
+    }
 
+    for (Model bean : beans) {
       data.add(repository.populate(toMap(bean, names), request.getContext()));
     }
 
@@ -910,7 +988,11 @@ public class Resource<T extends Model> {
 
     Response response = new Response();
 
-    Query<?> query = getQuery(request);
+    Query<?> query =
+        getQuery(request)
+            .batchSize(MASS_UPDATE_BATCH_SIZE)
+            .batchCommit(MASS_UPDATE_BATCH_COMMIT)
+            .batchProgress(count -> LOG.debug("Records updated so far: {}", count));
     List<?> data = request.getRecords();
 
     LOG.debug("JPQL: {}", query);
@@ -1151,37 +1233,35 @@ public class Resource<T extends Model> {
     }
 
     Map<String, Object> result = new HashMap<String, Object>();
-    Mapper mapper = Mapper.of(bean.getClass());
+    ToMapPlan plan = ToMapPlan.of(bean.getClass());
 
     boolean isSaved = ((Model) bean).getId() != null;
     boolean isCompact = compact || fields.containsKey("$version");
 
-    final Set<Property> translatables = new HashSet<>();
-
     if ((isCompact && isSaved) || (isSaved && level >= 1) || (level > 1)) {
 
-      Property pn = mapper.getNameField();
-      Property pc = mapper.getProperty("code");
+      ToMapPlan.Entry pn = plan.nameField;
+      ToMapPlan.Entry pc = plan.codeField;
 
-      result.put("id", mapper.get(bean, "id"));
-      result.put("$version", mapper.get(bean, "version"));
+      result.put("id", plan.id.get(bean));
+      result.put("$version", plan.version.get(bean));
 
       if (pn != null) {
-        result.put(pn.getName(), mapper.get(bean, pn.getName()));
+        result.put(pn.name, pn.get(bean));
       }
       if (pc != null) {
-        result.put(pc.getName(), mapper.get(bean, pc.getName()));
+        result.put(pc.name, pc.get(bean));
       }
 
-      if (pn != null && pn.isTranslatable()) {
-        Translator.translate(result, pn);
+      if (pn != null && pn.translatable) {
+        Translator.translate(result, pn.property);
       }
-      if (pc != null && pc.isTranslatable()) {
-        Translator.translate(result, pc);
+      if (pc != null && pc.translatable) {
+        Translator.translate(result, pc.property);
       }
 
       for (String name : fields.keySet()) {
-        Object child = mapper.get(bean, name);
+        Object child = plan.accessor(name).apply(bean);
         if (child instanceof Model) {
           child = _toMap(child, (Map) fields.get(name), true, level + 1);
         }
@@ -1192,29 +1272,21 @@ public class Resource<T extends Model> {
       return result;
     }
 
-    for (final Property prop : mapper.getProperties()) {
-
-      String name = prop.getName();
-      PropertyType type = prop.getType();
+    for (final ToMapPlan.Entry entry : plan.entries) {
 
-      if (type == PropertyType.BINARY || prop.isPassword()) {
-        continue;
-      }
+      String name = entry.name;
 
-      if (isSaved
-          && !name.matches("id|version|archived")
-          && !fields.isEmpty()
-          && !fields.containsKey(name)) {
+      if (isSaved && !entry.always && !fields.isEmpty() && !fields.containsKey(name)) {
         continue;
       }
 
-      Object value = mapper.get(bean, name);
+      Object value = entry.get(bean);
 
-      if (name.equals("archived") && value == null) {
+      if (entry.archived && value == null) {
         continue;
       }
 
-      if (prop.isImage() && byte[].class.isInstance(value)) {
+      if (entry.image && byte[].class.isInstance(value)) {
         value = new String((byte[]) value);
       }
 
@@ -1222,14 +1294,14 @@ public class Resource<T extends Model> {
       // json mapper may use wrong scale.
       if (value instanceof BigDecimal) {
         BigDecimal decimal = (BigDecimal) value;
-        int scale = prop.getScale();
+        int scale = entry.scale;
         if (decimal.scale() == 0 && scale > 0 && scale != decimal.scale()) {
           value = decimal.setScale(scale, RoundingMode.HALF_UP);
         }
       }
 
       if (value instanceof Model) { // m2o
-        Map<String, Object> _fields = (Map) fields.get(prop.getName());
+        Map<String, Object> _fields = (Map) fields.get(name);
         value = _toMap(value, _fields, true, level + 1);
       }
 
@@ -1251,29 +1323,30 @@ public class Resource<T extends Model> {
 
       result.put(name, value);
 
-      if (prop.isTranslatable() && value instanceof String) {
-        Translator.translate(result, prop);
+      if (entry.translatable && value instanceof String) {
+        Translator.translate(result, entry.property);
       }
 
       // include custom enum value
-      if (prop.isEnum() && value instanceof ValueEnum<?>) {
+      if (entry.enumType && value instanceof ValueEnum<?>) {
         String enumName = ((Enum<?>) value).name();
         Object enumValue = ((ValueEnum<?>) value).getValue();
         if (!Objects.equal(enumName, enumValue)) {
           result.put(name + "$value", ((ValueEnum<?>) value).getValue());
         }
       }
+    }
 
-      // special case for User/Group objects
-      if (result.get("homeAction") != null) {
-        MetaAction act =
-            JpaRepository.of(MetaAction.class)
-                .all()
-                .filter("self.name = ?", result.get("homeAction"))
-                .fetchOne();
-        if (act != null) {
-          result.put("__actionSelect", toMapCompact(act));
-        }
+    // special case for User/Group objects
+    if (plan.homeAction && result.get("homeAction") != null) {
+      MetaAction act =
+          JpaRepository.of(MetaAction.class)
+              .all()
+              .filter("self.name = ?", result.get("homeAction"))
+              .cacheable()
+              .fetchOne();
+      if (act != null) {
+        result.put("__actionSelect", toMapCompact(act));
       }
     }
 
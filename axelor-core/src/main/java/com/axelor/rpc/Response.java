@@ -77,6 +77,8 @@ public class Response {
   @JsonSerialize(using = TotalSerializer.class)
   private long total = -1;
 
+  private Boolean hasMore;
+
   private Object data;
 
   private Map<String, String> errors;
@@ -105,6 +107,21 @@ public class Response {
     this.total = count;
   }
 
+  /**
+   * Whether there are more records after the returned page.
+   *
+   * <p>This is only given by the searches done without count, which don't give the total.
+   *
+   * @return true if there are more records, null if not known
+   */
+  public Boolean getHasMore() {
+    return hasMore;
+  }
+
+  public void setHasMore(Boolean hasMore) {
+    this.hasMore = hasMore;
+  }
+
   public Object getData() {
     return data;
   }
@@ -0,0 +1,109 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.rpc;
+
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the records referenced by the values of a multi-row save with one <code>IN</code> query
+ * per entity class.
+ *
+ * <p>The loaded records are kept in the persistence context, so the version checks and lookups done
+ * by {@link JPA#verify(Class, Map)}, {@link JPA#edit(Class, Map)} and {@link JPA#manage(Model)}
+ * don't query the database record by record.
+ */
+final class SavePreloader {
+
+  private static final int CHUNK_SIZE = 500;
+
+  private final Map<Class<?>, Set<Long>> ids = new LinkedHashMap<>();
+
+  /**
+   * Collect the ids of the given record and of the records referenced by its values.
+   *
+   * @param model the model class of the record
+   * @param values the record values
+   * @return this instance
+   */
+  SavePreloader collect(Class<?> model, Map<?, ?> values) {
+    if (values == null) {
+      return this;
+    }
+
+    add(model, values.get("id"));
+
+    final Mapper mapper = Mapper.of(model);
+    for (Map.Entry<?, ?> entry : values.entrySet()) {
+      final Property property = mapper.getProperty(String.valueOf(entry.getKey()));
+      if (property == null || property.getTarget() == null) {
+        continue;
+      }
+      final Object value = entry.getValue();
+      if (value instanceof Map) {
+        collect(property.getTarget(), (Map<?, ?>) value);
+      } else if (value instanceof Collection) {
+        for (Object item : (Collection<?>) value) {
+          if (item instanceof Map) {
+            collect(property.getTarget(), (Map<?, ?>) item);
+          } else {
+            add(property.getTarget(), item);
+          }
+        }
+      }
+    }
+
+    return this;
+  }
+
+  private void add(Class<?> model, Object id) {
+    if (id == null) {
+      return;
+    }
+    try {
+      final Long value = Long.valueOf(id.toString());
+      if (value > 0) {
+        ids.computeIfAbsent(model, key -> new LinkedHashSet<>()).add(value);
+      }
+    } catch (NumberFormatException e) {
+      // not an id
+    }
+  }
+
+  /** Load all the collected records in the persistence context. */
+  void load() {
+    for (Map.Entry<Class<?>, Set<Long>> entry : ids.entrySet()) {
+      final String jpql =
+          "SELECT self FROM " + entry.getKey().getName() + " self WHERE self.id IN :ids";
+      final List<Long> all = new ArrayList<>(entry.getValue());
+      for (List<Long> chunk : Lists.partition(all, CHUNK_SIZE)) {
+        JPA.em().createQuery(jpql).setParameter("ids", chunk).getResultList();
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.rpc;
+
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
+import com.axelor.db.mapper.PropertyType;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The serialization plan of an entity class used by {@link Resource#toMap(Object, String...)}.
+ *
+ * <p>The plan is computed once per class with compiled property accessors and flags, so that
+ * serializing a record doesn't require any reflection or string matching.
+ */
+final class ToMapPlan {
+
+  private static final LoadingCache<Class<?>, ToMapPlan> PLANS =
+      CacheBuilder.newBuilder()
+          .maximumSize(1000)
+          .weakKeys()
+          .build(CacheLoader.from(ToMapPlan::new));
+
+  static final class Entry {
+
+    final String name;
+    final Property property;
+    final Function<Object, Object> accessor;
+
+    // id, version and archived are always included
+    final boolean always;
+    final boolean archived;
+    final boolean image;
+    final boolean translatable;
+    final boolean enumType;
+    final int scale;
+
+    private Entry(Property property, Function<Object, Object> accessor) {
+      this.name = property.getName();
+      this.property = property;
+      this.accessor = accessor;
+      this.archived = "archived".equals(name);
+      this.always = archived || "id".equals(name) || "version".equals(name);
+      this.image = property.isImage();
+      this.translatable = property.isTranslatable();
+      this.enumType = property.isEnum();
+      this.scale = property.getScale();
+    }
+
+    Object get(Object bean) {
+      return accessor.apply(bean);
+    }
+  }
+
+  final Mapper mapper;
+
+  final Entry id;
+  final Entry version;
+  final Entry nameField;
+  final Entry codeField;
+
+  final Entry[] entries;
+
+  final boolean homeAction;
+
+  private ToMapPlan(Class<?> beanClass) {
+    this.mapper = Mapper.of(beanClass);
+    this.id = entry(mapper.getProperty("id"));
+    this.version = entry(mapper.getProperty("version"));
+    this.nameField = entry(mapper.getNameField());
+    this.codeField = entry(mapper.getProperty("code"));
+
+    final List<Entry> items = new ArrayList<>();
+    for (Property property : mapper.getProperties()) {
+      if (property.getType() == PropertyType.BINARY || property.isPassword()) {
+        continue;
+      }
+      items.add(entry(property));
+    }
+
+    this.entries = items.toArray(new Entry[] {});
+    this.homeAction = mapper.getProperty("homeAction") != null;
+  }
+
+  private Entry entry(Property property) {
+    if (property == null) {
+      return null;
+    }
+    Function<Object, Object> accessor = mapper.getAccessor(property.getName());
+    if (accessor == null) {
+      accessor = bean -> null;
+    }
+    return new Entry(property, accessor);
+  }
+
+  /**
+   * Get the accessor of the given property.
+   *
+   * @param name the property name
+   * @return accessor function, returns null for unknown properties
+   */
+  Function<Object, Object> accessor(String name) {
+    final Function<Object, Object> accessor = mapper.getAccessor(name);
+    return accessor == null ? bean -> null : accessor;
+  }
+
+  static ToMapPlan of(Class<?> beanClass) {
+    return PLANS.getUnchecked(beanClass);
+  }
+}
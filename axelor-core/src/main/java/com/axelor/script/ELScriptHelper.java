@@ -25,18 +25,71 @@ import com.axelor.internal.javax.el.BeanELResolver;
 import com.axelor.internal.javax.el.ELClass;
 import com.axelor.internal.javax.el.ELContext;
 import com.axelor.internal.javax.el.ELException;
+import com.axelor.internal.javax.el.ELManager;
 import com.axelor.internal.javax.el.ELProcessor;
 import com.axelor.internal.javax.el.ImportHandler;
 import com.axelor.internal.javax.el.MapELResolver;
 import com.axelor.internal.javax.el.MethodNotFoundException;
+import com.axelor.internal.javax.el.ValueExpression;
 import com.axelor.rpc.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.primitives.Ints;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import javax.script.Bindings;
 
 public class ELScriptHelper extends AbstractScriptHelper {
 
+  private static final int CACHE_SIZE = 5000;
+
+  /** Parsed expressions, shared by all the helpers as they are created with same functions. */
+  private static final Cache<String, ValueExpression> EXPRESSIONS =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).recordStats().build();
+
+  /** Model, repository or enum classes by simple name. */
+  private static final Cache<String, Optional<Class<?>>> CLASSES =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+  /** Imported classes by simple name. */
+  private static final Cache<String, Optional<Class<?>>> IMPORTS =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+  /** Static methods by class, name and parameter types. */
+  private static final Cache<List<Object>, Optional<MethodHandle>> METHODS =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+  /** The functions available to expressions, by prefix:name. */
+  private static final Map<String, Method> FUNCTIONS = new LinkedHashMap<>();
+
+  private static final String[] PACKAGES = {
+    "java.util", "java.time", "com.axelor.common", "com.axelor.script.util", "com.axelor.apps.tool"
+  };
+
+  private static final String[] CLASSES_IMPORTED = {
+    "com.axelor.db.Model", "com.axelor.db.Query", "com.axelor.db.Repository"
+  };
+
+  static {
+    function("", "as", "as");
+    function("", "is", "is");
+    function("", "int", "toInt");
+    function("", "str", "text");
+    function("", "imp", "importClass");
+    function("", "T", "importClass");
+    function("", "__repo__", "repo");
+    function("fmt", "text", "formatText");
+  }
+
   private ELProcessor processor;
 
   class ClassResolver extends MapELResolver {
@@ -60,13 +113,7 @@ public class ELScriptHelper extends AbstractScriptHelper {
       }
 
       // try resolving model/repository classes
-      Class<?> cls = JpaScanner.findModel(property.toString());
-      if (cls == null) {
-        cls = JpaScanner.findRepository(property.toString());
-      }
-      if (cls == null) {
-        cls = JpaScanner.findEnum(property.toString());
-      }
+      final Class<?> cls = findClass(property.toString());
       if (cls == null) {
         return null;
       }
@@ -92,7 +139,7 @@ public class ELScriptHelper extends AbstractScriptHelper {
       }
 
       final ImportHandler handler = context.getImportHandler();
-      Object value = handler.resolveClass(name);
+      Object value = importClass(handler, name);
       if (value == null) {
         value = handler.resolveStatic(name);
       }
@@ -126,15 +173,18 @@ public class ELScriptHelper extends AbstractScriptHelper {
         Object[] params) {
       if (base instanceof Class) {
         final Class<?> klass = (Class<?>) base;
+        final MethodHandle handle = findStatic(klass, method.toString(), paramTypes);
+        if (handle == null) {
+          throw new MethodNotFoundException(klass.getName() + "." + method.toString());
+        }
         try {
-          final Method staticMethod = klass.getMethod(method.toString(), paramTypes);
           context.setPropertyResolved(true);
-          return staticMethod.invoke(klass, params);
-        } catch (NoSuchMethodException | SecurityException e) {
-          throw new MethodNotFoundException(klass.getName() + "." + method.toString());
+          return handle.invokeWithArguments(params == null ? new Object[] {} : params);
         } catch (IllegalArgumentException e) {
           throw e;
-        } catch (Exception e) {
+        } catch (ClassCastException | WrongMethodTypeException e) {
+          throw new IllegalArgumentException(e);
+        } catch (Throwable e) {
           throw new ELException(e);
         }
       }
@@ -142,6 +192,72 @@ public class ELScriptHelper extends AbstractScriptHelper {
     }
   }
 
+  private static void function(String prefix, String name, String method) {
+    for (Method m : Helpers.class.getMethods()) {
+      if (m.getName().equals(method) && Modifier.isStatic(m.getModifiers())) {
+        FUNCTIONS.put(prefix + ":" + name, m);
+        return;
+      }
+    }
+  }
+
+  private static Class<?> findClass(String name) {
+    Optional<Class<?>> cls = CLASSES.getIfPresent(name);
+    if (cls == null) {
+      Class<?> found = JpaScanner.findModel(name);
+      if (found == null) {
+        found = JpaScanner.findRepository(name);
+      }
+      if (found == null) {
+        found = JpaScanner.findEnum(name);
+      }
+      cls = Optional.ofNullable(found);
+      CLASSES.put(name, cls);
+    }
+    return cls.orElse(null);
+  }
+
+  private static Class<?> importClass(ImportHandler handler, String name) {
+    // all the helpers import same packages and classes
+    Optional<Class<?>> cls = IMPORTS.getIfPresent(name);
+    if (cls == null) {
+      cls = Optional.ofNullable(handler.resolveClass(name));
+      IMPORTS.put(name, cls);
+    }
+    return cls.orElse(null);
+  }
+
+  private static MethodHandle findStatic(Class<?> klass, String name, Class<?>[] paramTypes) {
+    final Class<?>[] types = paramTypes == null ? new Class<?>[] {} : paramTypes;
+    final List<Object> key = Arrays.asList(klass, name, Arrays.asList(types));
+    Optional<MethodHandle> handle = METHODS.getIfPresent(key);
+    if (handle == null) {
+      MethodHandle found = null;
+      try {
+        final Method method = klass.getMethod(name, types);
+        if (Modifier.isStatic(method.getModifiers())) {
+          found = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+        }
+      } catch (NoSuchMethodException | SecurityException e) {
+        // not found
+      } catch (IllegalAccessException e) {
+        throw new ELException(e);
+      }
+      handle = Optional.ofNullable(found);
+      METHODS.put(key, handle);
+    }
+    return handle.orElse(null);
+  }
+
+  /**
+   * Get the parsed expression cache statistics.
+   *
+   * @return the {@link CacheStats} of parsed expressions
+   */
+  public static CacheStats getStats() {
+    return EXPRESSIONS.stats();
+  }
+
   public static final class Helpers {
 
     private static Class<?> typeClass(Object type) {
@@ -217,38 +333,27 @@ public class ELScriptHelper extends AbstractScriptHelper {
     this.processor.getELManager().addELResolver(new ContextResolver());
     this.processor.getELManager().addELResolver(new BeanResolver());
 
-    final String className = Helpers.class.getName();
-
-    try {
-      this.processor.defineFunction("", "as", className, "as");
-      this.processor.defineFunction("", "is", className, "is");
-      this.processor.defineFunction("", "int", className, "toInt");
-      this.processor.defineFunction("", "str", className, "text");
-      this.processor.defineFunction("", "imp", className, "importClass");
-      this.processor.defineFunction("", "T", className, "importClass");
-      this.processor.defineFunction("", "__repo__", className, "repo");
-      this.processor.defineFunction("fmt", "text", className, "formatText");
-    } catch (Exception e) {
+    // functions are resolved once from the static method lookup
+    for (Map.Entry<String, Method> entry : FUNCTIONS.entrySet()) {
+      final String key = entry.getKey();
+      final int index = key.indexOf(':');
+      try {
+        this.processor.defineFunction(
+            key.substring(0, index), key.substring(index + 1), entry.getValue());
+      } catch (Exception e) {
+      }
     }
 
-    final String[] packages = {
-      "java.util",
-      "java.time",
-      "com.axelor.common",
-      "com.axelor.script.util",
-      "com.axelor.apps.tool"
-    };
-
-    for (String pkg : packages) {
+    for (String pkg : PACKAGES) {
       try {
         this.processor.getELManager().importPackage(pkg);
       } catch (Exception e) {
       }
     }
 
-    this.processor.getELManager().importClass("com.axelor.db.Model");
-    this.processor.getELManager().importClass("com.axelor.db.Query");
-    this.processor.getELManager().importClass("com.axelor.db.Repository");
+    for (String name : CLASSES_IMPORTED) {
+      this.processor.getELManager().importClass(name);
+    }
 
     this.setBindings(bindings);
   }
@@ -262,9 +367,21 @@ public class ELScriptHelper extends AbstractScriptHelper {
     final Bindings current = getBindings();
     try {
       setBindings(bindings);
-      return processor.eval(expr);
+      final ELContext context = processor.getELManager().getELContext();
+      return expression(context, expr).getValue(context);
     } finally {
       setBindings(current);
     }
   }
+
+  private static ValueExpression expression(ELContext context, String expr) {
+    ValueExpression ve = EXPRESSIONS.getIfPresent(expr);
+    if (ve == null) {
+      ve =
+          ELManager.getExpressionFactory()
+              .createValueExpression(context, "${" + expr + "}", Object.class);
+      EXPRESSIONS.put(expr, ve);
+    }
+    return ve;
+  }
 }
@@ -23,31 +23,110 @@ import com.axelor.db.JpaScanner;
 import com.axelor.rpc.Context;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
 import groovy.lang.MissingPropertyException;
 import groovy.lang.Script;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import javax.persistence.EntityManager;
 import javax.script.Bindings;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GroovyScriptHelper extends AbstractScriptHelper {
 
+  private static final Logger LOG = LoggerFactory.getLogger(GroovyScriptHelper.class);
+
   private static final CompilerConfiguration config = new CompilerConfiguration();
 
   private static final int DEFAULT_CACHE_SIZE = 500;
   private static final int DEFAULT_CACHE_EXPIRE_TIME = 60;
 
+  private static final int THREAD_SCRIPTS = 100;
+
   private static int cacheSize;
   private static int cacheExpireTime;
 
-  private static final GroovyClassLoader GCL;
+  private static final ScriptClassLoader GCL;
   private static final LoadingCache<String, Class<?>> SCRIPT_CACHE;
 
+  /** Scripts compiled in advance, by owner (e.g. action name). */
+  private static final ConcurrentMap<String, Map<String, Class<?>>> OWNERS =
+      new ConcurrentHashMap<>();
+
+  /** Scripts compiled in advance, by script text. */
+  private static final ConcurrentMap<String, Class<?>> COMPILED = new ConcurrentHashMap<>();
+
+  private static final AtomicLong COMPILED_HITS = new AtomicLong();
+  private static final AtomicLong COMPILE_COUNT = new AtomicLong();
+  private static final AtomicLong COMPILE_TIME = new AtomicLong();
+  private static final AtomicLong EVICTIONS = new AtomicLong();
+
+  /** Incremented when compiled script classes are dropped, to release the idle instances. */
+  private static final AtomicLong GENERATION = new AtomicLong();
+
+  /** Idle script instances of the current thread, reused by subsequent evaluations. */
+  private static final ThreadLocal<IdleScripts> THREAD_SCRIPTS_CACHE =
+      ThreadLocal.withInitial(IdleScripts::new);
+
+  /** Whether instances of a script class can be reused, i.e. the script keeps no state. */
+  private static final ClassValue<Boolean> STATELESS =
+      new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+          for (Field field : type.getDeclaredFields()) {
+            // instance fields are declared by the script, e.g. with @Field
+            if (!field.isSynthetic() && !Modifier.isStatic(field.getModifiers())) {
+              return false;
+            }
+          }
+          return true;
+        }
+      };
+
+  /** The least recently used script instances, by script class. */
+  private static final class IdleScripts extends LinkedHashMap<Class<?>, Script> {
+
+    private static final long serialVersionUID = 1L;
+
+    private long generation = GENERATION.get();
+
+    private IdleScripts() {
+      super(16, 0.75f, true);
+    }
+
+    private IdleScripts current() {
+      final long last = GENERATION.get();
+      if (generation != last) {
+        // don't keep the classes dropped since, they may be unloaded
+        clear();
+        generation = last;
+      }
+      return this;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Class<?>, Script> eldest) {
+      return size() > THREAD_SCRIPTS;
+    }
+  }
+
   public static class Helpers {
 
     @SuppressWarnings("unchecked")
@@ -58,6 +137,63 @@ public class GroovyScriptHelper extends AbstractScriptHelper {
     }
   }
 
+  /** The class loader used to compile scripts without keeping the compiled classes. */
+  private static final class ScriptClassLoader extends GroovyClassLoader {
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private ScriptClassLoader(ClassLoader parent, CompilerConfiguration config) {
+      super(parent, config);
+    }
+
+    private Class<?> compile(String code) {
+      final long start = System.nanoTime();
+      final String name = "Script" + COUNTER.incrementAndGet() + ".groovy";
+      final Class<?> klass = parseClass(new GroovyCodeSource(code, name, "/groovy/script"), false);
+      COMPILE_COUNT.incrementAndGet();
+      COMPILE_TIME.addAndGet(System.nanoTime() - start);
+      return klass;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void setClassCacheEntry(Class cls) {
+      // script classes are cached by the helper, instead of clearing the whole class cache after
+      // each compilation, never cache them here so that they can be unloaded once not used
+    }
+  }
+
+  /** The binding used by reusable script instances, delegates to the bindings of evaluation. */
+  private static final class ScriptBinding extends Binding {
+
+    private Bindings bindings;
+
+    @Override
+    public Object getVariable(String name) {
+      try {
+        return bindings.get(name);
+      } catch (MissingPropertyException e) {
+      }
+      return null;
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+      bindings.put(name, value);
+    }
+
+    @Override
+    public boolean hasVariable(String name) {
+      return bindings.containsKey(name);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Map getVariables() {
+      return bindings;
+    }
+  }
+
   static {
     config.getOptimizationOptions().put("indy", Boolean.TRUE);
     config.getOptimizationOptions().put("int", Boolean.FALSE);
@@ -90,24 +226,23 @@ public class GroovyScriptHelper extends AbstractScriptHelper {
       cacheExpireTime = DEFAULT_CACHE_EXPIRE_TIME;
     }
 
-    GCL = new GroovyClassLoader(JpaScanner.getClassLoader(), config);
+    GCL = new ScriptClassLoader(JpaScanner.getClassLoader(), config);
 
+    // scripts compiled in advance are not kept in this cache, so its size is only used by
+    // the scripts not known in advance
     SCRIPT_CACHE =
         CacheBuilder.newBuilder()
             .maximumSize(cacheSize)
             .expireAfterAccess(cacheExpireTime, TimeUnit.MINUTES)
-            .build(
-                new CacheLoader<String, Class<?>>() {
-
-                  @Override
-                  public Class<?> load(String code) throws Exception {
-                    try {
-                      return GCL.parseClass(code);
-                    } finally {
-                      GCL.clearCache();
-                    }
+            .recordStats()
+            .removalListener(
+                notification -> {
+                  if (notification.wasEvicted()) {
+                    EVICTIONS.incrementAndGet();
+                    GENERATION.incrementAndGet();
                   }
-                });
+                })
+            .build(CacheLoader.from(GCL::compile));
   }
 
   public GroovyScriptHelper(Bindings bindings) {
@@ -118,22 +253,206 @@ public class GroovyScriptHelper extends AbstractScriptHelper {
     this(new ScriptBindings(context));
   }
 
+  /**
+   * Compile the given scripts in advance.
+   *
+   * <p>The compiled scripts are kept for the given owner until the owner is compiled again with a
+   * different set of scripts. Scripts that fail to compile are ignored, they will report their
+   * error when evaluated.
+   *
+   * @param owner the owner of the scripts, e.g. an action name
+   * @param scripts the scripts to compile
+   */
+  public static void compile(String owner, Collection<String> scripts) {
+    final Map<String, Class<?>> compiled = new HashMap<>();
+    for (String script : scripts) {
+      if (compiled.containsKey(script)) {
+        continue;
+      }
+      Class<?> klass = COMPILED.get(script);
+      if (klass == null) {
+        klass = SCRIPT_CACHE.getIfPresent(script);
+      }
+      if (klass == null) {
+        try {
+          klass = GCL.compile(script);
+        } catch (Exception e) {
+          LOG.warn("Unable to compile script of {}: {}", owner, script);
+          continue;
+        }
+      }
+      compiled.put(script, klass);
+    }
+
+    final Map<String, Class<?>> old =
+        compiled.isEmpty() ? OWNERS.remove(owner) : OWNERS.put(owner, compiled);
+
+    COMPILED.putAll(compiled);
+    SCRIPT_CACHE.invalidateAll(compiled.keySet());
+
+    if (old != null) {
+      old.keySet()
+          .stream()
+          .filter(key -> !compiled.containsKey(key))
+          .forEach(GroovyScriptHelper::release);
+    }
+  }
+
+  /**
+   * Remove the scripts compiled for the given owner.
+   *
+   * @param owner the owner of the scripts
+   */
+  public static void invalidate(String owner) {
+    final Map<String, Class<?>> old = OWNERS.remove(owner);
+    if (old != null) {
+      old.keySet().forEach(GroovyScriptHelper::release);
+    }
+  }
+
+  private static void release(String script) {
+    // the script may still be used by other owners
+    if (OWNERS.values().stream().noneMatch(scripts -> scripts.containsKey(script))
+        && COMPILED.remove(script) != null) {
+      GENERATION.incrementAndGet();
+    }
+  }
+
+  /**
+   * Get the script cache statistics.
+   *
+   * @return the current {@link ScriptStats}
+   */
+  public static ScriptStats getStats() {
+    return new ScriptStats(SCRIPT_CACHE.stats());
+  }
+
+  /** Statistics of script compilation and caching. */
+  public static final class ScriptStats {
+
+    private final long hits;
+    private final long misses;
+    private final long compiled;
+    private final long compileCount;
+    private final long compileTime;
+    private final long evictions;
+    private final long cacheSize;
+
+    private ScriptStats(CacheStats stats) {
+      this.hits = stats.hitCount() + COMPILED_HITS.get();
+      this.misses = stats.missCount();
+      this.compiled = COMPILED.size();
+      this.compileCount = COMPILE_COUNT.get();
+      this.compileTime = COMPILE_TIME.get();
+      this.evictions = EVICTIONS.get();
+      this.cacheSize = SCRIPT_CACHE.size();
+    }
+
+    /**
+     * Get the number of evaluations of already compiled scripts.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+      return hits;
+    }
+
+    /**
+     * Get the number of evaluations that required to compile the script.
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+      return misses;
+    }
+
+    /**
+     * Get the ratio of evaluations of already compiled scripts.
+     *
+     * @return hit rate, 1.0 if no script is evaluated yet
+     */
+    public double getHitRate() {
+      final long total = hits + misses;
+      return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of scripts compiled in advance.
+     *
+     * @return number of scripts compiled in advance
+     */
+    public long getCompiledCount() {
+      return compiled;
+    }
+
+    /**
+     * Get the number of scripts in the cache of scripts not compiled in advance.
+     *
+     * @return cache size
+     */
+    public long getCacheSize() {
+      return cacheSize;
+    }
+
+    /**
+     * Get the total number of script compilations.
+     *
+     * @return compile count
+     */
+    public long getCompileCount() {
+      return compileCount;
+    }
+
+    /**
+     * Get the average compilation time.
+     *
+     * @return average compile time in milliseconds
+     */
+    public double getAverageCompileTime() {
+      return compileCount == 0 ? 0 : compileTime / 1_000_000.0 / compileCount;
+    }
+
+    /**
+     * Get the number of scripts evicted from the cache.
+     *
+     * @return eviction count
+     */
+    public long getEvictionCount() {
+      return evictions;
+    }
+  }
+
+  private static Class<?> find(String expr) throws ExecutionException {
+    final Class<?> klass = COMPILED.get(expr);
+    if (klass != null) {
+      COMPILED_HITS.incrementAndGet();
+      return klass;
+    }
+    return SCRIPT_CACHE.get(expr);
+  }
+
   @Override
   public Object eval(String expr, Bindings bindings) throws Exception {
-    Class<?> klass = SCRIPT_CACHE.get(expr);
-    Script script = (Script) klass.newInstance();
-    script.setBinding(
-        new Binding(bindings) {
-
-          @Override
-          public Object getVariable(String name) {
-            try {
-              return super.getVariable(name);
-            } catch (MissingPropertyException e) {
-            }
-            return null;
-          }
-        });
-    return script.run();
+    final Class<?> klass = find(expr);
+    final boolean reusable = STATELESS.get(klass);
+    final Map<Class<?>, Script> idle = THREAD_SCRIPTS_CACHE.get().current();
+
+    // an instance is removed while in use, so nested evaluations use a new instance
+    Script script = reusable ? idle.remove(klass) : null;
+    if (script == null) {
+      script = (Script) klass.newInstance();
+      script.setBinding(new ScriptBinding());
+    }
+
+    final ScriptBinding binding = (ScriptBinding) script.getBinding();
+    binding.bindings = bindings;
+    try {
+      return script.run();
+    } finally {
+      binding.bindings = null;
+      if (reusable) {
+        idle.put(klass, script);
+      }
+    }
   }
 }
@@ -0,0 +1,168 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.auth;
+
+import com.axelor.JpaTest;
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.mail.db.MailMessage;
+import com.axelor.script.CompositeScriptHelper;
+import com.axelor.script.ScriptHelper;
+import com.axelor.team.db.TeamTask;
+import com.google.inject.persist.Transactional;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AuditTrackerTest extends JpaTest {
+
+  private static final Logger log = LoggerFactory.getLogger(AuditTrackerTest.class);
+
+  private static final int COUNT = 500;
+
+  private long countMessages(List<Long> ids) {
+    return all(MailMessage.class)
+        .filter("self.relatedModel = :model AND self.relatedId IN (:ids)")
+        .bind("model", TeamTask.class.getName())
+        .bind("ids", ids)
+        .count();
+  }
+
+  private void awaitMessages(List<Long> ids, long expected) throws InterruptedException {
+    final long timeout = System.currentTimeMillis() + 10000;
+    while (countMessages(ids) < expected && System.currentTimeMillis() < timeout) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(expected, countMessages(ids));
+  }
+
+  private MailMessage findUpdate(Long id) {
+    return all(MailMessage.class)
+        .filter(
+            "self.relatedModel = :model AND self.relatedId = :id "
+                + "AND self.parent IS NOT NULL")
+        .bind("model", TeamTask.class.getName())
+        .bind("id", id)
+        .fetchOne();
+  }
+
+  @Transactional
+  protected User createUser() {
+    final User user = new User("tracker", "Tracker");
+    user.setPassword("tracker");
+    return JPA.save(user);
+  }
+
+  @Test
+  public void testTrackAsync() throws Exception {
+    final List<Long> ids = new ArrayList<>();
+
+    AuditTracker.setAsync(true);
+    try {
+      JPA.runInTransaction(
+          () -> {
+            for (int i = 0; i < 10; i++) {
+              final TeamTask task = new TeamTask();
+              task.setName("Async task " + i);
+              task.setPriority("normal");
+              ids.add(JPA.save(task).getId());
+            }
+          });
+
+      // the messages are written by the background writer after commit
+      awaitMessages(ids, 10);
+
+      JPA.runInTransaction(() -> JPA.find(TeamTask.class, ids.get(0)).setPriority("urgent"));
+
+      awaitMessages(ids, 11);
+    } finally {
+      AuditTracker.setAsync(false);
+    }
+
+    final MailMessage update = findUpdate(ids.get(0));
+
+    Assert.assertNotNull(update);
+    Assert.assertTrue(update.getBody().contains("Urgent"));
+  }
+
+  @Test
+  public void testTrackUser() throws Exception {
+    final User user = createUser();
+
+    // evaluate on another thread, like the background writer, without session user
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final boolean matched =
+          executor
+              .submit(
+                  () -> {
+                    final ScriptHelper helper =
+                        new CompositeScriptHelper(
+                            AuditTracker.createBindings(new HashMap<>(), user));
+                    return helper.test("__user__?.code == 'tracker'");
+                  })
+              .get();
+      Assert.assertTrue(matched);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTrackBatch() {
+    final List<Long> ids = new ArrayList<>();
+
+    final long start = System.currentTimeMillis();
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < COUNT; i++) {
+            final TeamTask task = new TeamTask();
+            task.setName("Task " + i);
+            task.setPriority("normal");
+            ids.add(JPA.save(task).getId());
+          }
+        });
+    final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    log.info("Tracked {} records in {} ms", COUNT, elapsed);
+
+    // a "Task created" message for each record
+    Assert.assertEquals(COUNT, countMessages(ids));
+
+    // updates are tracked against the first message of each record
+    JPA.runInTransaction(
+        () -> {
+          for (Long id : ids.subList(0, 10)) {
+            JPA.find(TeamTask.class, id).setPriority("urgent");
+          }
+        });
+
+    Assert.assertEquals(COUNT + 10, countMessages(ids));
+
+    final MailMessage update = findUpdate(ids.get(0));
+
+    Assert.assertNotNull(update);
+    Assert.assertTrue(update.getBody().contains("Urgent"));
+  }
+}
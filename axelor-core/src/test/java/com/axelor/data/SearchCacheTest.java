@@ -0,0 +1,130 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data;
+
+import com.axelor.JpaTest;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.test.db.Title;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchCacheTest extends JpaTest {
+
+  private static final String SEARCH = "self.code = :code";
+
+  private Model find(SearchCache cache, String code, boolean index) {
+    final Map<String, Object> params = new HashMap<>();
+    params.put("code", code);
+    final Supplier<Model> search =
+        () -> all(Title.class).filter(SEARCH).bind(params).autoFlush(false).fetchOne();
+    return cache.find(Title.class, SEARCH, params, index, search);
+  }
+
+  private List<? extends Model> findAll(SearchCache cache, String code) {
+    final String filter = "self.code LIKE :code";
+    final Map<String, Object> params = new HashMap<>();
+    params.put("code", code);
+    final Supplier<List<? extends Model>> search =
+        () -> all(Title.class).filter(filter).bind(params).autoFlush(false).fetch();
+    return cache.findAll(Title.class, filter, params, search);
+  }
+
+  private void createTitle(String code, String name) {
+    JPA.runInTransaction(
+        () -> {
+          final Title title = new Title();
+          title.setCode(code);
+          title.setName(name);
+          JPA.save(title);
+        });
+  }
+
+  @After
+  public void cleanup() {
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery("DELETE FROM Title self WHERE self.code LIKE 'dr%'")
+                .executeUpdate());
+  }
+
+  @Test
+  public void testSearch() {
+    final SearchCache cache = new SearchCache();
+    final Model first = find(cache, "mr", false);
+
+    Assert.assertNotNull(first);
+    Assert.assertEquals(1, cache.getMisses());
+
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(first.getId(), find(cache, "mr", false).getId());
+    }
+
+    Assert.assertEquals(10, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testIndex() {
+    final SearchCache cache = new SearchCache();
+
+    Assert.assertNotNull(find(cache, "mr", true));
+    Assert.assertNotNull(find(cache, "mrs", true));
+    Assert.assertNotNull(find(cache, "mr", true));
+
+    Assert.assertEquals(2, cache.getIndexHits());
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(0, cache.getMisses());
+  }
+
+  @Test
+  public void testCreated() {
+    final SearchCache cache = new SearchCache();
+
+    Assert.assertNull(find(cache, "dr", true));
+
+    // the record created by the import must be found
+    createTitle("dr", "Dr.");
+
+    Assert.assertNotNull(find(cache, "dr", true));
+    Assert.assertEquals(2, cache.getMisses());
+
+    cache.invalidate();
+
+    Assert.assertNotNull(find(cache, "dr", false));
+    Assert.assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void testFindAllCreated() {
+    final SearchCache cache = new SearchCache();
+
+    createTitle("dr", "Dr.");
+    Assert.assertEquals(1, findAll(cache, "dr%").size());
+
+    // records matching the same search created by the import must be found
+    createTitle("drs", "Drs.");
+    Assert.assertEquals(2, findAll(cache, "dr%").size());
+  }
+}
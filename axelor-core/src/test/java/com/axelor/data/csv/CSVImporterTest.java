@@ -0,0 +1,171 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data.csv;
+
+import com.axelor.JpaTest;
+import com.axelor.data.Listener;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.test.db.Title;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CSVImporterTest extends JpaTest {
+
+  private static final int RECORDS = 1000;
+
+  // the row that fails to import, with a groovy error that doesn't break the transaction
+  private static final int BAD_ROW = 13;
+
+  private static final String CONFIG =
+      "<csv-inputs xmlns='http://axelor.com/xml/ns/data-import'>\n"
+          + "  <input file='%s.csv' type='com.axelor.test.db.Title' partition='code'>\n"
+          + "    <bind to='code' column='code'/>\n"
+          + "    <bind to='name' eval=\"label == 'bad' ? Integer.parseInt(label) : label\"/>\n"
+          + "  </input>\n"
+          + "</csv-inputs>\n";
+
+  private static Path dir;
+
+  /** Counts the listener events of an import. */
+  private static final class Counter implements Listener {
+
+    private final AtomicInteger imported = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger success = new AtomicInteger();
+
+    @Override
+    public void imported(Model bean) {
+      imported.incrementAndGet();
+    }
+
+    @Override
+    public void imported(Integer total, Integer success) {
+      this.total.addAndGet(total);
+      this.success.addAndGet(success);
+    }
+
+    @Override
+    public void handle(Model bean, Exception e) {
+      failed.incrementAndGet();
+    }
+  }
+
+  @BeforeClass
+  public static void generate() throws IOException {
+    dir = Files.createTempDirectory("csv-import");
+    for (String name : new String[] {"sequential", "parallel"}) {
+      try (Writer writer = Files.newBufferedWriter(dir.resolve(name + ".csv"))) {
+        writer.write("code,label\n");
+        for (int i = 0; i < RECORDS; i++) {
+          final String label = i == BAD_ROW ? "bad" : String.format("Title %s %d", name, i);
+          writer.write(String.format("csv-%s-%d,%s\n", name, i, label));
+        }
+      }
+      Files.write(
+          dir.resolve(name + ".xml"),
+          String.format(CONFIG, name).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @AfterClass
+  public static void cleanup() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @After
+  public void removeTitles() {
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery("DELETE FROM Title self WHERE self.code LIKE 'csv-%'")
+                .executeUpdate());
+  }
+
+  private Counter run(String name, int threads) {
+    final Path errors = dir.resolve(name + "-errors");
+    final CSVImporter importer =
+        new CSVImporter(dir.resolve(name + ".xml").toString(), dir.toString(), errors.toString());
+    final Counter counter = new Counter();
+
+    importer.setThreads(threads);
+    importer.addListener(counter);
+    importer.run();
+
+    return counter;
+  }
+
+  private long count(String name) {
+    return all(Title.class).filter("self.code LIKE ?", "csv-" + name + "-%").count();
+  }
+
+  private boolean logged(String name) throws IOException {
+    try (Stream<Path> files = Files.walk(dir.resolve(name + "-errors"))) {
+      final List<Path> found = files.filter(Files::isRegularFile).collect(Collectors.toList());
+      for (Path file : found) {
+        if (new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("\"bad\"")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testThreads() throws IOException {
+    final Counter sequential = run("sequential", 1);
+    final Counter parallel = run("parallel", 4);
+
+    Assert.assertEquals(RECORDS - 1, count("sequential"));
+    Assert.assertEquals(count("sequential"), count("parallel"));
+
+    Assert.assertEquals(sequential.total.get(), parallel.total.get());
+    Assert.assertEquals(sequential.success.get(), parallel.success.get());
+
+    // the bad row is reported, the other rows of its batch are imported
+    Assert.assertEquals(1, parallel.failed.get());
+    Assert.assertTrue(logged("parallel"));
+
+    // imported rows are notified once, after commit
+    Assert.assertEquals(RECORDS - 1, parallel.imported.get());
+    Assert.assertEquals(RECORDS - 1, parallel.success.get());
+    Assert.assertEquals(RECORDS, parallel.total.get());
+
+    Assert.assertEquals(
+        "Title parallel 42",
+        all(Title.class).filter("self.code = ?", "csv-parallel-42").fetchOne().getName());
+  }
+}
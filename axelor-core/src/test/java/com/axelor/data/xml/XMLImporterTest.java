@@ -0,0 +1,156 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.data.xml;
+
+import com.axelor.JpaTest;
+import com.axelor.data.Listener;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.test.db.Title;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class XMLImporterTest extends JpaTest {
+
+  private static final Logger log = LoggerFactory.getLogger(XMLImporterTest.class);
+
+  // increase with -Dxml.import.records to import larger files
+  private static final int RECORDS = Integer.getInteger("xml.import.records", 5000);
+
+  private static final String CONFIG =
+      "<xml-inputs xmlns='http://axelor.com/xml/ns/data-import'>\n"
+          + "  <input file='titles.xml' root='titles'>\n"
+          + "    <bind node='%s' type='com.axelor.test.db.Title' search='self.code = :code'>\n"
+          + "      <bind node='@code' to='code'/>\n"
+          + "      <bind node='name/text()' to='name'/>\n"
+          + "    </bind>\n"
+          + "  </input>\n"
+          + "</xml-inputs>\n";
+
+  private static Path dir;
+
+  @BeforeClass
+  public static void generate() throws IOException {
+    dir = Files.createTempDirectory("xml-import");
+    try (Writer writer = Files.newBufferedWriter(dir.resolve("titles.xml"))) {
+      writer.write("<?xml version='1.0' encoding='UTF-8'?>\n<titles>\n");
+      for (int i = 0; i < RECORDS; i++) {
+        writer.write(String.format("  <title code='x%d'><name>Title %d</name></title>\n", i, i));
+      }
+      writer.write("</titles>\n");
+    }
+    // the predicate is not supported by the streaming binder
+    write("stream.xml", "title");
+    write("xpath.xml", "title[@code]");
+  }
+
+  private static void write(String name, String node) throws IOException {
+    Files.write(dir.resolve(name), String.format(CONFIG, node).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @AfterClass
+  public static void cleanup() throws IOException {
+    for (String name : new String[] {"titles.xml", "stream.xml", "xpath.xml"}) {
+      Files.deleteIfExists(dir.resolve(name));
+    }
+    Files.deleteIfExists(dir);
+  }
+
+  @After
+  public void removeTitles() {
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery("DELETE FROM Title self WHERE self.code LIKE 'x%'")
+                .executeUpdate());
+  }
+
+  private int run(String config) {
+    final XMLImporter importer = new XMLImporter(dir.resolve(config).toString(), dir.toString());
+    final AtomicInteger count = new AtomicInteger();
+
+    importer.addListener(
+        new Listener() {
+
+          @Override
+          public void imported(Model bean) {
+            count.incrementAndGet();
+          }
+
+          @Override
+          public void imported(Integer total, Integer success) {}
+
+          @Override
+          public void handle(Model bean, Exception e) {
+            Assert.fail(e.getMessage());
+          }
+        });
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+
+    final long start = System.currentTimeMillis();
+    importer.run();
+    final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+
+    log.info(
+        "Imported {} records with {} in {} ms ({} records/s), peak heap {} MB",
+        count.get(),
+        config,
+        elapsed,
+        count.get() * 1000L / elapsed,
+        peak / (1024 * 1024));
+
+    return count.get();
+  }
+
+  @Test
+  public void testStream() {
+    Assert.assertEquals(RECORDS, run("stream.xml"));
+    Assert.assertEquals(RECORDS, all(Title.class).filter("self.code LIKE 'x%'").count());
+
+    final Title title = all(Title.class).filter("self.code = 'x42'").fetchOne();
+    Assert.assertEquals("Title 42", title.getName());
+
+    // the records found by the xpath binding must be the same
+    Assert.assertEquals(RECORDS, run("xpath.xml"));
+    Assert.assertEquals(RECORDS, all(Title.class).filter("self.code LIKE 'x%'").count());
+  }
+}
@@ -47,6 +47,17 @@ public class MapperTest extends JpaTest {
     Assert.assertEquals(id, mapper.get(contact, "id"));
   }
 
+  @Test
+  public void testAccessor() {
+
+    Contact contact = all(Contact.class).fetchOne();
+
+    Assert.assertEquals(contact.getFirstName(), mapper.getAccessor("firstName").apply(contact));
+    Assert.assertEquals(contact.getId(), mapper.getAccessor("id").apply(contact));
+    Assert.assertSame(mapper.getAccessor("id"), mapper.getAccessor("id"));
+    Assert.assertNull(mapper.getAccessor("unknownField"));
+  }
+
   @Test
   public void testSet() {
 
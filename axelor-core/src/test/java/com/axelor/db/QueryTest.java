@@ -27,10 +27,13 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -90,6 +93,39 @@ public class QueryTest extends JpaTest {
     Assert.assertEquals(first.size(), second.size());
   }
 
+  @Test
+  @SuppressWarnings("all")
+  public void testSelectCollections() {
+    final Statistics stats =
+        getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    Assert.assertTrue(all(Contact.class).count() > 1);
+
+    stats.setStatisticsEnabled(true);
+    try {
+      // number of statements should not depend on the number of records
+      Assert.assertEquals(countSelectStatements(stats, 1), countSelectStatements(stats, 0));
+    } finally {
+      stats.setStatisticsEnabled(false);
+    }
+  }
+
+  @SuppressWarnings("all")
+  private long countSelectStatements(Statistics stats, int limit) {
+    getEntityManager().clear();
+    stats.clear();
+
+    final List<Map> data =
+        all(Contact.class).select("firstName", "addresses", "circles").fetch(limit, 0);
+
+    Assert.assertFalse(data.isEmpty());
+    for (Map item : data) {
+      Assert.assertTrue(item.get("addresses") instanceof List);
+      Assert.assertTrue(item.get("circles") instanceof List);
+    }
+
+    return stats.getPrepareStatementCount();
+  }
+
   @Test
   @Transactional
   public void testBulkRemove() {
@@ -105,9 +141,39 @@ public class QueryTest extends JpaTest {
             });
     final Query<Contact> q =
         all(Contact.class).filter("self.firstName in (:names)").bind("names", names);
+    final Circle circle = all(Circle.class).fetchOne();
     final long count = q.count();
     final long removed = q.remove();
     Assert.assertEquals(count, removed);
+
+    // other records of the unit of work are still managed
+    Assert.assertTrue(JPA.em().contains(circle));
+  }
+
+  @Test
+  @Transactional
+  public void testBulkRemoveInBatch() {
+    final List<String> names = Arrays.asList("Batch Remove 1", "Batch Remove 2", "Batch Remove 3");
+    names
+        .stream()
+        .forEach(
+            name -> {
+              Contact c = new Contact();
+              c.setFirstName(name);
+              c.setLastName(name);
+              JPA.em().persist(c);
+            });
+    final List<Long> progress = new ArrayList<>();
+    final Query<Contact> q =
+        all(Contact.class)
+            .filter("self.firstName in (:names)")
+            .bind("names", names)
+            .batchSize(2)
+            .batchProgress(progress::add);
+    final long removed = q.remove();
+    Assert.assertEquals(3, removed);
+    Assert.assertEquals(Arrays.asList(2L, 3L), progress);
+    Assert.assertEquals(0, q.count());
   }
 
   @Test
@@ -20,12 +20,23 @@ package com.axelor.db;
 import com.axelor.JpaTest;
 import com.axelor.meta.db.MetaSequence;
 import com.google.inject.persist.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SequenceTest extends JpaTest {
 
+  private final Logger log = LoggerFactory.getLogger(SequenceTest.class);
+
   @Before
   public void setUp() {
     if (Query.of(MetaSequence.class).count() == 0) {
@@ -44,4 +55,60 @@ public class SequenceTest extends JpaTest {
 
     Assert.assertEquals("EMP_00100_ID", JpaSequence.nextValue("seq.emp.id"));
   }
+
+  @Test
+  public void testPooled() throws Exception {
+    final int nodes = 4;
+    final int threads = 4;
+    final int count = 500;
+
+    final List<JpaSequenceBlocks> allNodes = new ArrayList<>();
+    for (int i = 0; i < nodes; i++) {
+      allNodes.add(new JpaSequenceBlocks());
+    }
+
+    final Set<String> values = ConcurrentHashMap.newKeySet();
+    final ExecutorService executor = Executors.newFixedThreadPool(nodes * threads);
+    final List<Future<?>> futures = new ArrayList<>();
+
+    final long start = System.nanoTime();
+    for (JpaSequenceBlocks node : allNodes) {
+      for (int i = 0; i < threads; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int n = 0; n < count; n++) {
+                    Assert.assertTrue(values.add(node.next("seq.pool.id")));
+                  }
+                }));
+      }
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    final long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    final int total = nodes * threads * count;
+
+    log.info(
+        "pooled sequence: {} values in {} ms ({} values/s)",
+        total,
+        elapsed,
+        total * 1000L / elapsed);
+
+    Assert.assertEquals(total, values.size());
+    Assert.assertTrue(values.contains("POOL_000001"));
+  }
+
+  @Test
+  public void testPooledReset() {
+    final String first = JpaSequence.nextValue("seq.pool.id");
+    Assert.assertTrue(first.startsWith("POOL_"));
+    Assert.assertNotEquals(first, JpaSequence.nextValue("seq.pool.id"));
+
+    JPA.runInTransaction(() -> JpaSequence.nextValue("seq.pool.id", 100000));
+
+    Assert.assertEquals("POOL_100000", JpaSequence.nextValue("seq.pool.id"));
+  }
 }
@@ -20,6 +20,7 @@ package com.axelor.i18n;
 import static org.junit.Assert.assertEquals;
 
 import com.axelor.JpaTest;
+import com.axelor.db.JPA;
 import com.axelor.meta.db.MetaTranslation;
 import com.axelor.meta.db.repo.MetaTranslationRepository;
 import com.google.inject.persist.Transactional;
@@ -70,4 +71,40 @@ public class I18nTest extends JpaTest {
     assertEquals(
         "5 records selected.", I18n.get("{0} record selected.", "{0} records selected.", 5));
   }
+
+  @Transactional
+  protected void update(String key, String newKey, String message) {
+    final MetaTranslation obj = translations.all().filter("self.key = ?", key).fetchOne();
+    obj.setKey(newKey);
+    obj.setMessage(message);
+  }
+
+  @Test
+  public void testUpdate() {
+    assertEquals("Hello...", I18n.get("Hello World!!!"));
+
+    // committed changes are used at once
+    update("Hello World!!!", "Hello World!!!", "Hello!!!");
+    assertEquals("Hello!!!", I18n.get("Hello World!!!"));
+
+    // rolled back changes are not used
+    try {
+      JPA.runInTransaction(
+          () -> {
+            update("Hello World!!!", "Hello World!!!", "Rolled back");
+            JPA.em().flush();
+            throw new IllegalStateException();
+          });
+    } catch (IllegalStateException e) {
+    }
+    assertEquals("Hello!!!", I18n.get("Hello World!!!"));
+
+    // the old key of a renamed translation is removed
+    update("Hello World!!!", "Hello World", "Hello!!!");
+    assertEquals("Hello World!!!", I18n.get("Hello World!!!"));
+    assertEquals("Hello!!!", I18n.get("Hello World"));
+
+    update("Hello World", "Hello World!!!", "Hello...");
+    assertEquals("Hello...", I18n.get("Hello World!!!"));
+  }
 }
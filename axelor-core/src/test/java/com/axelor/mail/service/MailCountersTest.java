@@ -0,0 +1,201 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.mail.service;
+
+import com.axelor.JpaTest;
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.mail.MailConstants;
+import com.axelor.mail.db.MailCounter;
+import com.axelor.mail.db.MailFlags;
+import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.db.repo.MailFlagsRepository;
+import com.axelor.mail.db.repo.MailFollowerRepository;
+import com.axelor.mail.db.repo.MailMessageRepository;
+import com.axelor.rpc.Request;
+import com.axelor.rpc.Resource;
+import com.axelor.rpc.Response;
+import com.axelor.test.db.Title;
+import com.google.inject.persist.Transactional;
+import java.util.HashMap;
+import java.util.Map;
+import javax.inject.Inject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MailCountersTest extends JpaTest {
+
+  @Inject private MailCounters counters;
+
+  @Inject private MailMessageRepository messages;
+
+  @Inject private MailFlagsRepository flags;
+
+  @Inject private MailFollowerRepository followers;
+
+  @Inject private Resource<MailFlags> resource;
+
+  @Transactional
+  protected User createUser(String code) {
+    final User user = new User(code, code);
+    user.setPassword(code);
+    return JPA.save(user);
+  }
+
+  @Transactional
+  protected Title createTitle(String code) {
+    final Title title = new Title();
+    title.setCode(code);
+    title.setName(code);
+    return JPA.save(title);
+  }
+
+  @Transactional
+  protected MailMessage createMessage(Title title) {
+    final MailMessage message = new MailMessage();
+    message.setSubject("Hello...");
+    message.setBody("Hello!!!");
+    message.setType(MailConstants.MESSAGE_TYPE_COMMENT);
+    message.setRelatedModel(Title.class.getName());
+    message.setRelatedId(title.getId());
+    message.setRelatedName(title.getName());
+    return messages.save(message);
+  }
+
+  @Transactional
+  protected void setFlags(MailMessage message, User user, boolean read, boolean archived) {
+    MailFlags found = flags.findBy(message, user);
+    if (found == null) {
+      found = new MailFlags();
+      found.setMessage(message);
+      found.setUser(user);
+    }
+    found.setIsRead(read);
+    found.setIsStarred(true);
+    found.setIsArchived(archived);
+    flags.save(found);
+  }
+
+  private void assertCounts(User user, long inbox, long unread, long important, long archived) {
+    final MailCounters.Counts counts = counters.get(user);
+    Assert.assertEquals(inbox, counts.getInbox());
+    Assert.assertEquals(unread, counts.getUnread());
+    Assert.assertEquals(important, counts.getImportant());
+    Assert.assertEquals(archived, counts.getArchived());
+  }
+
+  @Test
+  public void testCounters() {
+    final User user = createUser("counters");
+    final Title title = createTitle("counters");
+
+    assertCounts(user, 0, 0, 0, 0);
+    Assert.assertEquals(1, all(MailCounter.class).count());
+
+    followers.follow(title, user);
+    final MailMessage message = createMessage(title);
+    assertCounts(user, 1, 1, 0, 0);
+
+    setFlags(message, user, true, false);
+    assertCounts(user, 1, 0, 1, 0);
+
+    setFlags(message, user, true, true);
+    assertCounts(user, 0, 0, 0, 1);
+
+    // replies of other users are not counted
+    createMessage(title);
+    assertCounts(user, 0, 0, 0, 1);
+
+    setFlags(message, user, false, false);
+    assertCounts(user, 1, 1, 1, 0);
+    Assert.assertEquals(0, counters.reconcile());
+
+    followers.unfollow(title, user);
+    assertCounts(user, 0, 0, 0, 0);
+
+    followers.follow(title, user);
+    assertCounts(user, 1, 1, 1, 0);
+    Assert.assertEquals(0, counters.reconcile());
+
+    // out of date counters are fixed by reconciliation
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery("UPDATE MailCounter self SET self.unreadCount = 5")
+                .executeUpdate());
+
+    Assert.assertEquals(1, counters.reconcile());
+    assertCounts(user, 1, 1, 1, 0);
+  }
+
+  private MailFlags saveFlags(Map<String, Object> values) {
+    final Request request = new Request();
+    request.setModel(MailFlags.class.getName());
+    request.setData(values);
+    final Response response = resource.save(request);
+    Assert.assertEquals(Response.STATUS_SUCCESS, response.getStatus());
+    return all(MailFlags.class)
+        .filter("self.id = ?", ((Map<?, ?>) response.getItem(0)).get("id"))
+        .fetchOne();
+  }
+
+  private Map<String, Object> ref(Long id) {
+    final Map<String, Object> values = new HashMap<>();
+    values.put("id", id);
+    return values;
+  }
+
+  private Map<String, Object> values(MailFlags found, boolean read, boolean starred) {
+    final Map<String, Object> values = new HashMap<>();
+    values.put("id", found.getId());
+    values.put("version", found.getVersion());
+    values.put("isRead", read);
+    values.put("isStarred", starred);
+    values.put("isArchived", false);
+    return values;
+  }
+
+  @Test
+  public void testResourceSave() {
+    final User user = createUser("counters-web");
+    final Title title = createTitle("counters-web");
+
+    followers.follow(title, user);
+    final MailMessage message = createMessage(title);
+    assertCounts(user, 1, 1, 0, 0);
+
+    // the web client saves the flags with the changes flushed before the repository is called
+    final Map<String, Object> values = new HashMap<>();
+    values.put("message", ref(message.getId()));
+    values.put("user", ref(user.getId()));
+    values.put("isRead", true);
+    values.put("isStarred", false);
+    values.put("isArchived", false);
+
+    MailFlags found = saveFlags(values);
+    assertCounts(user, 1, 0, 0, 0);
+
+    found = saveFlags(values(found, true, true));
+    assertCounts(user, 1, 0, 1, 0);
+
+    saveFlags(values(found, false, true));
+    assertCounts(user, 1, 1, 1, 0);
+
+    Assert.assertEquals(0, counters.reconcile());
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.mail.service;
+
+import com.axelor.JpaTest;
+import com.axelor.db.Model;
+import com.axelor.mail.ImapAccount;
+import com.axelor.mail.MailConstants;
+import com.axelor.mail.MailReader;
+import com.axelor.mail.MailSender;
+import com.axelor.mail.SmtpAccount;
+import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.db.repo.MailAddressRepository;
+import com.axelor.mail.db.repo.MailMessageRepository;
+import com.axelor.meta.db.MetaAttachment;
+import com.axelor.test.db.Contact;
+import com.google.inject.persist.Transactional;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.inject.Inject;
+import javax.mail.Message.RecipientType;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MailServiceTest extends JpaTest {
+
+  private static final Logger log = LoggerFactory.getLogger(MailServiceTest.class);
+
+  private static final int MESSAGES = 250;
+
+  @Rule public final GreenMailRule server = new GreenMailRule(ServerSetupTest.SMTP_IMAP);
+
+  @Inject private MailServiceImpl service;
+
+  @Inject private QueueMailService queueService;
+
+  @Inject private MailMessageRepository messages;
+
+  @Inject private MailAddressRepository addresses;
+
+  public static class QueueMailService extends MailServiceImpl {
+
+    private final MailSender sender =
+        new MailSender(
+            new SmtpAccount("127.0.0.1", "" + ServerSetupTest.SMTP.getPort(), "test", "test"));
+
+    @Override
+    protected MailSender getMailSender(MailMessage message, Model entity) {
+      return sender;
+    }
+  }
+
+  @Transactional
+  protected MailMessage createParent() {
+    return createMessage("Hello...", null);
+  }
+
+  @Transactional
+  protected MailMessage createMessage(String subject, String recipient) {
+    final Contact contact = all(Contact.class).fetchOne();
+    final MailMessage message = new MailMessage();
+    if (recipient != null) {
+      message.addRecipient(addresses.findOrCreate(recipient));
+    }
+    message.setSubject(subject);
+    message.setBody("Hello!!!");
+    message.setType(MailConstants.MESSAGE_TYPE_COMMENT);
+    message.setRelatedModel(Contact.class.getName());
+    message.setRelatedId(contact.getId());
+    message.setRelatedName(contact.getFullName());
+    return messages.save(message);
+  }
+
+  private MimeMessage createReply(Session session, String parentId, int n) throws Exception {
+    final MimeMessage reply = new MimeMessage(session);
+    reply.setFrom(new InternetAddress("you@localhost"));
+    reply.setRecipient(RecipientType.TO, new InternetAddress("test@localhost"));
+    reply.setSubject("Re: Hello... " + n);
+    reply.setHeader("In-Reply-To", parentId);
+
+    final MimeBodyPart text = new MimeBodyPart();
+    text.setText("This is a reply " + n);
+
+    final MimeMultipart content = new MimeMultipart();
+    content.addBodyPart(text);
+
+    // every tenth reply comes with an attachment
+    if (n % 10 == 0) {
+      final MimeBodyPart file = new MimeBodyPart();
+      file.setText("Attachment " + n);
+      file.setFileName("reply-" + n + ".txt");
+      file.setDisposition(Part.ATTACHMENT);
+      content.addBodyPart(file);
+    }
+
+    reply.setContent(content);
+    reply.saveChanges();
+    return reply;
+  }
+
+  private long countReplies(MailMessage parent) {
+    return messages
+        .all()
+        .filter("self.type = :type AND self.relatedId = :id")
+        .bind("type", MailConstants.MESSAGE_TYPE_EMAIL)
+        .bind("id", parent.getRelatedId())
+        .count();
+  }
+
+  @Test
+  public void testFetch() throws Exception {
+    final MailMessage parent = createParent();
+    final GreenMailUser user = server.setUser("test@localhost", "test", "test");
+    final Session session = Session.getInstance(new Properties());
+
+    for (int i = 0; i < MESSAGES; i++) {
+      user.deliver(createReply(session, parent.getMessageId(), i));
+    }
+
+    final ImapAccount account =
+        new ImapAccount("127.0.0.1", "" + ServerSetupTest.IMAP.getPort(), "test", "test");
+    final MailReader reader = new MailReader(account);
+
+    final long start = System.currentTimeMillis();
+    service.fetch(reader);
+    final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    log.info(
+        "Fetched {} messages in {} ms ({} messages/s)",
+        MESSAGES,
+        elapsed,
+        MESSAGES * 1000L / elapsed);
+
+    Assert.assertEquals(MESSAGES, countReplies(parent));
+    Assert.assertEquals(
+        MESSAGES / 10,
+        all(MetaAttachment.class)
+            .filter("self.objectName = :model")
+            .bind("model", MailMessage.class.getName())
+            .count());
+
+    // already fetched messages are not imported again
+    user.deliver(createReply(session, parent.getMessageId(), MESSAGES + 1));
+    service.fetch(reader);
+
+    Assert.assertEquals(MESSAGES + 1, countReplies(parent));
+  }
+
+  @Transactional
+  protected void sendQueued(String subject, String recipient) {
+    queueService.send(createMessage(subject, recipient));
+  }
+
+  @Test
+  public void testSendQueue() throws Exception {
+    server.setUser("you@localhost", "test", "test");
+
+    for (int i = 0; i < MESSAGES / 10; i++) {
+      queueService.send(createMessage("Queued " + i, "you@localhost"));
+    }
+
+    // queued in the caller's transaction, sent once it is committed
+    sendQueued("Queued in transaction", "you@localhost");
+
+    final int count = MESSAGES / 10 + 1;
+
+    Assert.assertTrue(server.waitForIncomingEmail(10000, count));
+
+    // sent messages are removed from the queue once delivered
+    final long timeout = System.currentTimeMillis() + 10000;
+    while ((queueService.getQueueStats().getSent() < count || queueService.getQueueDepth() > 0)
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(100);
+    }
+
+    Assert.assertEquals(count, queueService.getQueueStats().getSent());
+    Assert.assertEquals(0, queueService.getQueueStats().getFailed());
+    Assert.assertEquals(0, queueService.getQueueDepth());
+
+    log.info(
+        "Sent {} queued messages, average latency {} ms",
+        queueService.getQueueStats().getSent(),
+        queueService.getQueueStats().getAverageLatency());
+  }
+
+  @Test
+  public void testThreadDetails() {
+    final MailMessage parent = createParent();
+    final MailMessage root = parent.getRoot() == null ? parent : parent.getRoot();
+    final List<MailMessage> thread = new ArrayList<>();
+
+    thread.add(root);
+    thread.addAll(
+        messages.all().filter("self.root.id = ?", root.getId()).order("-createdOn").fetch());
+
+    // the details loaded for the whole thread must be the same as the ones of single messages
+    final List<Map<String, Object>> details = messages.details(thread, Collections.emptyMap());
+
+    Assert.assertEquals(thread.size(), details.size());
+    for (int i = 0; i < thread.size(); i++) {
+      Assert.assertEquals(messages.details(thread.get(i)), details.get(i));
+    }
+  }
+}
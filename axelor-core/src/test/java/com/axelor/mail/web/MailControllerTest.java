@@ -0,0 +1,187 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.mail.web;
+
+import com.axelor.JpaTest;
+import com.axelor.auth.AuthService;
+import com.axelor.auth.AuthUtils;
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.mail.MailConstants;
+import com.axelor.mail.db.MailFlags;
+import com.axelor.mail.db.MailMessage;
+import com.axelor.mail.db.repo.MailFlagsRepository;
+import com.axelor.mail.db.repo.MailFollowerRepository;
+import com.axelor.mail.db.repo.MailMessageRepository;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import com.axelor.test.db.Title;
+import com.google.inject.persist.Transactional;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MailControllerTest extends JpaTest {
+
+  @Inject private MailController controller;
+
+  @Inject private AuthService authService;
+
+  @Inject private MailMessageRepository messages;
+
+  @Inject private MailFlagsRepository flags;
+
+  @Inject private MailFollowerRepository followers;
+
+  @Transactional
+  protected User createUser() {
+    final User user = new User("mailer", "Mailer");
+    user.setPassword("mailer");
+    authService.encrypt(user);
+    return JPA.save(user);
+  }
+
+  @Transactional
+  protected Title createTitle(String code) {
+    final Title title = new Title();
+    title.setCode(code);
+    title.setName(code);
+    return JPA.save(title);
+  }
+
+  @Transactional
+  protected MailMessage createMessage(Title title, MailMessage parent) {
+    final MailMessage message = new MailMessage();
+    message.setSubject(parent == null ? "Hello..." : "Re: Hello...");
+    message.setBody("Hello!!!");
+    message.setType(MailConstants.MESSAGE_TYPE_COMMENT);
+    message.setRelatedModel(Title.class.getName());
+    message.setRelatedId(title.getId());
+    message.setRelatedName(title.getName());
+    message.setParent(parent);
+    return messages.save(message);
+  }
+
+  @Transactional
+  protected void markRead(MailMessage message, User user) {
+    final MailFlags found = new MailFlags();
+    found.setMessage(message);
+    found.setUser(user);
+    found.setIsRead(true);
+    flags.save(found);
+  }
+
+  @After
+  public void logout() {
+    AuthUtils.getSubject().logout();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Map<String, Object>> data(ActionResponse response) {
+    return (List<Map<String, Object>>) response.getData();
+  }
+
+  private Map<Object, Map<String, Object>> byId(List<Map<String, Object>> items) {
+    final Map<Object, Map<String, Object>> found = new HashMap<>();
+    for (Map<String, Object> item : items) {
+      found.put(item.get("id"), item);
+    }
+    return found;
+  }
+
+  private List<Object> ids(Object items) {
+    final List<Object> ids = new ArrayList<>();
+    for (Object item : (List<?>) items) {
+      ids.add(((Map<?, ?>) item).get("id"));
+    }
+    return ids;
+  }
+
+  private List<Object> replies(MailMessage message) {
+    final ActionRequest request = new ActionRequest();
+    final ActionResponse response = new ActionResponse();
+    request.setRecords(Collections.singletonList(message.getId()));
+    controller.replies(request, response);
+    for (Map<String, Object> item : data(response)) {
+      Assert.assertEquals(true, item.get("$thread"));
+    }
+    return ids(data(response));
+  }
+
+  @Test
+  public void testThreads() {
+    final User user = createUser();
+    final Title title = createTitle("mail-thread");
+    final Title other = createTitle("mail-empty");
+
+    followers.follow(title, user);
+    followers.follow(other, user);
+
+    final MailMessage root = createMessage(title, null);
+    final MailMessage first = createMessage(title, root);
+    final MailMessage second = createMessage(title, root);
+    final MailMessage nested = createMessage(title, first);
+    final MailMessage empty = createMessage(other, null);
+
+    markRead(second, user);
+
+    AuthUtils.getSubject().login(new UsernamePasswordToken("mailer", "mailer"));
+
+    final ActionRequest request = new ActionRequest();
+    final ActionResponse response = new ActionResponse();
+    controller.inbox(request, response);
+
+    final Map<Object, Map<String, Object>> found = byId(data(response));
+
+    // the unread replies, nested ones included, are given with the thread
+    final Map<String, Object> thread = found.get(root.getId());
+    Assert.assertNotNull(thread);
+    Assert.assertEquals(title.getName(), thread.get("$name"));
+    Assert.assertEquals(true, thread.get("$thread"));
+    Assert.assertEquals(3, thread.get("$numReplies"));
+    Assert.assertEquals(true, thread.get("$hasMore"));
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(first.getId(), nested.getId())),
+        new HashSet<>(ids(thread.get("$children"))));
+
+    final Map<String, Object> alone = found.get(empty.getId());
+    Assert.assertNotNull(alone);
+    Assert.assertEquals(0, alone.get("$numReplies"));
+    Assert.assertEquals(false, alone.get("$hasMore"));
+    Assert.assertTrue(((List<?>) alone.get("$children")).isEmpty());
+
+    // all the replies, read or not, each followed by its own replies
+    final List<Object> all = replies(root);
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(first.getId(), second.getId(), nested.getId())),
+        new HashSet<>(all));
+    Assert.assertEquals(all.indexOf(first.getId()) + 1, all.indexOf(nested.getId()));
+
+    Assert.assertEquals(Collections.singletonList(nested.getId()), replies(first));
+    Assert.assertTrue(replies(second).isEmpty());
+  }
+}
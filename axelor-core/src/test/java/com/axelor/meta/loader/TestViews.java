@@ -19,10 +19,12 @@ package com.axelor.meta.loader;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import com.axelor.common.ResourceUtils;
 import com.axelor.meta.MetaTest;
+import com.axelor.meta.db.MetaView;
 import com.axelor.meta.schema.ObjectViews;
 import com.axelor.meta.schema.views.AbstractView;
 import com.axelor.meta.schema.views.FormInclude;
@@ -130,4 +132,29 @@ public class TestViews extends MetaTest {
       assertEquals(form1.getName(), included.getName());
     }
   }
+
+  @Test
+  @Transactional
+  public void testCache() throws Exception {
+
+    try (InputStream is = ResourceUtils.getResourceStream("com/axelor/meta/Include.xml")) {
+      loader.process(is, new Module("test"), false);
+
+      final AbstractView first = XMLViews.findView("contact-form1", null, null, "test");
+      final AbstractView second = XMLViews.findView("contact-form1", null, null, "test");
+
+      // cached views are parsed again, so callers can't change each other's copy
+      assertNotNull(first);
+      assertNotSame(first, second);
+      assertEquals(first.getViewId(), second.getViewId());
+
+      final MetaView view = all(MetaView.class).filter("self.id = ?", first.getViewId()).fetchOne();
+      view.setHelpLink("https://example.com/help");
+
+      XMLViews.invalidate(view.getName(), view.getModel());
+
+      final AbstractView third = XMLViews.findView("contact-form1", null, null, "test");
+      assertEquals("https://example.com/help", third.getHelpLink());
+    }
+  }
 }
@@ -18,13 +18,20 @@
 package com.axelor.report;
 
 import com.axelor.JpaTest;
+import com.axelor.report.ReportGenerator.RenderStats;
 import com.axelor.test.GuiceModules;
 import com.axelor.test.db.Contact;
 import com.axelor.test.db.repo.ContactRepository;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Future;
 import javax.inject.Inject;
 import org.eclipse.birt.report.engine.api.IReportEngine;
 import org.eclipse.birt.report.model.api.IResourceLocator;
@@ -83,4 +90,28 @@ public class ReportTest extends JpaTest {
       Assert.assertTrue(html.contains(contact.getFullName()));
     }
   }
+
+  @Test
+  public void testRenderAsync() throws Exception {
+    final Map<String, Object> params = new HashMap<>();
+    final List<Future<File>> futures = new ArrayList<>();
+
+    // the design is opened once and shared by concurrent renders
+    for (int i = 0; i < 5; i++) {
+      futures.add(generator.generateAsync(DESIGN, "html", params, Locale.ENGLISH));
+    }
+
+    for (Future<File> future : futures) {
+      final File file = future.get();
+      try {
+        Assert.assertTrue(file.length() > 0);
+      } finally {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+
+    final long count =
+        ReportGenerator.getStats().values().stream().mapToLong(RenderStats::getCount).sum();
+    Assert.assertTrue(count >= futures.size());
+  }
 }
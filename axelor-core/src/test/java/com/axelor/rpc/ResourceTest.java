@@ -18,6 +18,7 @@
 package com.axelor.rpc;
 
 import com.axelor.db.JPA;
+import com.axelor.db.internal.DBHelper;
 import com.axelor.test.db.Address;
 import com.axelor.test.db.Circle;
 import com.axelor.test.db.Contact;
@@ -27,14 +28,24 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.inject.persist.Transactional;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ResourceTest extends RpcTest {
 
+  private static final Logger log = LoggerFactory.getLogger(ResourceTest.class);
+
+  // queries of a bulk save not depending on the number of records
+  private static final int BULK_SAVE_QUERIES = 10;
+
   @Inject Resource<Contact> resource;
 
   @Inject ContactRepository contacts;
@@ -60,6 +71,23 @@ public class ResourceTest extends RpcTest {
     Assert.assertTrue(res.getData() instanceof List);
   }
 
+  @Test
+  public void testSearchWithoutCount() throws Exception {
+
+    Request req = new Request();
+    req.setModel(Contact.class.getName());
+    req.setData(Maps.newHashMap(ImmutableMap.of("_countMode", "none")));
+    req.setLimit(1);
+    req.setOffset(0);
+
+    Response res = resource.search(req);
+    long count = contacts.all().count();
+
+    Assert.assertEquals(Math.min(count, 1), ((List<?>) res.getData()).size());
+    Assert.assertEquals(-1, res.getTotal());
+    Assert.assertEquals(count > 1, res.getHasMore());
+  }
+
   @Test
   @SuppressWarnings("all")
   @Transactional
@@ -130,4 +158,78 @@ public class ResourceTest extends RpcTest {
     Assert.assertSame(c, c.getAddresses().get(0).getContact());
     Assert.assertNull(n.getAddresses().get(0).getContact());
   }
+
+  @Transactional
+  protected List<Long> createContacts(int count) {
+    final List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Contact contact = new Contact();
+      contact.setFirstName("Bulk");
+      contact.setLastName("Contact " + i);
+      contact.setEmail("bulk." + i + "@example.com");
+      ids.add(contacts.save(contact).getId());
+    }
+    return ids;
+  }
+
+  @Test
+  @SuppressWarnings("all")
+  @Transactional
+  public void testBulkSave() throws Exception {
+
+    final int count = 100;
+    final List<Long> ids = createContacts(count);
+    final Title title = JPA.all(Title.class).fetchOne();
+
+    JPA.flush();
+    JPA.clear();
+
+    final List<Object> records = new ArrayList<>();
+    for (Long id : ids) {
+      final Contact contact = JPA.find(Contact.class, id);
+      final Map<String, Object> record = Maps.newHashMap();
+      record.put("id", contact.getId());
+      record.put("version", contact.getVersion());
+      record.put("lastName", contact.getLastName() + " (updated)");
+      record.put("title", ImmutableMap.of("id", title.getId()));
+      records.add(record);
+    }
+
+    JPA.clear();
+
+    final Request req = new Request();
+    req.setRecords(records);
+
+    final Statistics stats =
+        JPA.em().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    final boolean enabled = stats.isStatisticsEnabled();
+
+    stats.setStatisticsEnabled(true);
+    stats.clear();
+    try {
+      final Response res = resource.save(req);
+      Assert.assertEquals(count, ((List) res.getData()).size());
+      JPA.flush();
+    } finally {
+      stats.setStatisticsEnabled(enabled);
+    }
+
+    final long queries = stats.getPrepareStatementCount();
+    log.info("Saved {} records with {} statements", count, queries);
+
+    // records and references are loaded with one query per entity class and the changes are
+    // flushed with one statement per jdbc batch
+    final int batchSize = Math.max(1, DBHelper.getJdbcBatchSize());
+    final int batches = (count + batchSize - 1) / batchSize;
+    Assert.assertTrue(
+        String.format("%d statements, expected at most %d", queries, BULK_SAVE_QUERIES + batches),
+        queries <= BULK_SAVE_QUERIES + batches);
+
+    JPA.clear();
+    for (Long id : ids) {
+      final Contact contact = JPA.find(Contact.class, id);
+      Assert.assertTrue(contact.getLastName().endsWith("(updated)"));
+      Assert.assertEquals(title.getId(), contact.getTitle().getId());
+    }
+  }
 }
@@ -24,12 +24,18 @@ import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class TestEL extends ScriptTest {
 
+  private static final Logger log = LoggerFactory.getLogger(TestEL.class);
+
   private static final int COUNT = 1000;
 
+  private static final int CONDITIONS = 100_000;
+
   private static final String EXPR_INTERPOLATION =
       "fmt:text('(%s) = %s %s (%s) = (%s) ', title.name, firstName, lastName, fullName, __user__)";
 
@@ -130,4 +136,30 @@ public class TestEL extends ScriptTest {
       Assert.assertNotNull(result);
     }
   }
+
+  @Test
+  public void test20_conditions() {
+    final String[] conditions = {
+      "id != null && lastName == 'NAME'",
+      "firstName == null || empty title",
+      "!(title.code == 'mr') || not empty fullName",
+      "is(__ref__, Contact) && id > 0"
+    };
+
+    final Context context = context();
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < CONDITIONS; i++) {
+      // a new helper for each evaluation, as done by actions
+      final ScriptHelper helper = new ELScriptHelper(context);
+      Assert.assertNotNull(helper.eval(conditions[i % conditions.length]));
+    }
+    final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    log.info(
+        "Evaluated {} conditions in {} ms ({} evaluations/s, parse cache hit rate {})",
+        CONDITIONS,
+        elapsed,
+        CONDITIONS * 1000L / elapsed,
+        ELScriptHelper.getStats().hitRate());
+  }
 }
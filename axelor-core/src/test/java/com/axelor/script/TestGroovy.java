@@ -19,6 +19,7 @@ package com.axelor.script;
 
 import com.axelor.rpc.Context;
 import com.axelor.test.db.Contact;
+import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -138,4 +139,39 @@ public class TestGroovy extends ScriptTest {
       Assert.assertNotNull(result);
     }
   }
+
+  @Test
+  public void test20_precompiled() {
+    final String owner = "test-precompiled";
+    final String expr = "firstName + ' ' + lastName + ' (precompiled)'";
+    GroovyScriptHelper.compile(owner, Arrays.asList(expr, "id > 0"));
+
+    final GroovyScriptHelper.ScriptStats stats = GroovyScriptHelper.getStats();
+    final long compiled = stats.getCompileCount();
+    final long hits = stats.getHitCount();
+
+    final GroovyScriptHelper helper = new GroovyScriptHelper(context());
+    for (int i = 0; i < COUNT; i++) {
+      Assert.assertEquals("John NAME (precompiled)", helper.eval(expr));
+      Assert.assertTrue(helper.test("id > 0"));
+    }
+
+    // no compilation on evaluation of precompiled scripts
+    Assert.assertEquals(compiled, GroovyScriptHelper.getStats().getCompileCount());
+    Assert.assertEquals(hits + 2 * COUNT, GroovyScriptHelper.getStats().getHitCount());
+
+    GroovyScriptHelper.invalidate(owner);
+    Assert.assertEquals("John NAME (precompiled)", helper.eval(expr));
+  }
+
+  @Test
+  public void test21_script_state() {
+    final String expr = "@groovy.transform.Field int count = 0; count += 1; count";
+    final GroovyScriptHelper helper = new GroovyScriptHelper(context());
+
+    // scripts with fields are not reused, so their state is not kept between evaluations
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(1, helper.eval(expr));
+    }
+  }
 }
@@ -20,6 +20,8 @@ package com.axelor.web;
 import com.axelor.app.AppSettings;
 import com.axelor.db.search.SearchService;
 import com.axelor.db.tenants.TenantModule;
+import com.axelor.i18n.I18nBundle;
+import com.axelor.mail.service.MailService;
 import com.axelor.meta.loader.ModuleManager;
 import com.axelor.quartz.JobRunner;
 import javax.inject.Inject;
@@ -42,6 +44,8 @@ public class AppInitializer extends HttpServlet {
 
   @Inject private SearchService searchService;
 
+  @Inject private MailService mailService;
+
   @Override
   public void init() throws ServletException {
     LOGGER.info("Initializing...");
@@ -52,6 +56,12 @@ public class AppInitializer extends HttpServlet {
       LOGGER.error(e.getMessage(), e);
     }
 
+    // load translations in background
+    I18nBundle.preload();
+
+    // send the emails left in the outgoing queue
+    mailService.dispatch();
+
     // initialize search index
     if (searchService.isEnabled()) {
       try {
@@ -938,6 +938,9 @@
 
       canNext: function() {
         var page = this._page;
+        if (page.hasMore !== undefined) {
+          return page.hasMore;
+        }
         return page.to < page.total;
       },
 
@@ -954,6 +957,12 @@
         page.to = page.from + records.length;
         page.total = res.total === undefined ? page.total : res.total;
         page.size = records.length;
+        page.hasMore = res.hasMore;
+
+        // searched without count, the total is only known to be more than the page end
+        if (res.hasMore !== undefined) {
+          page.total = page.to + (res.hasMore ? 1 : 0);
+        }
 
         return page;
       },
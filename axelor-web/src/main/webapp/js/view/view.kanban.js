@@ -108,6 +108,9 @@ function BaseCardsCtrl(type, $scope, $element) {
     var page = ds._page;
     if (page && page.from !== undefined) {
       if (page.total === 0) return null;
+      if (page.hasMore !== undefined) {
+        return _t("{0} to {1}", page.from + 1, page.to);
+      }
       return _t("{0} to {1} of {2}", page.from + 1, page.to, page.total);
     }
   };
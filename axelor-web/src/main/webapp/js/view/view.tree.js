@@ -465,6 +465,9 @@ function Loader(scope, node, DataSource) {
   this.pagerText = function() {
     if (page && page.from !== undefined) {
       if (page.total === 0) return null;
+      if (page.hasMore !== undefined) {
+        return _t("{0} to {1}", page.from + 1, page.to);
+      }
       return _t("{0} to {1} of {2}", page.from + 1, page.to, page.total);
     }
   };